@@ -0,0 +1,48 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.time.Instant;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Seeds the persistence unit of {@link BenchmarkPersistenceUnit} with departments and users.
+ */
+public final class BenchmarkData
+{
+  public static final int DEPARTMENT_COUNT = 50;
+
+  /**
+   * Persists {@value #DEPARTMENT_COUNT} departments and the users spread over them in one transaction, and clears the
+   * entity manager.
+   * <p>
+   * Every tenth user has no age, and the others are 20 to 59 years old.
+   */
+  public static void persistUsers(
+    EntityManager entityManager,
+    int userCount
+  )
+  {
+    final var createdAt = Instant.now();
+    entityManager.getTransaction().begin();
+    for(var i = 0; i < DEPARTMENT_COUNT; ++i)
+    {
+      entityManager.persist(new Department("department" + i, "Department " + i, createdAt));
+    }
+    for(var i = 0; i < userCount; ++i)
+    {
+      entityManager.persist(new User(
+        "user" + i,
+        "User " + i,
+        (0 == i % 10 ? null : 20 + (i % 40)),
+        "department" + (i % DEPARTMENT_COUNT),
+        createdAt));
+    }
+    entityManager.getTransaction().commit();
+    entityManager.clear();
+  }
+
+  private BenchmarkData()
+  {
+    // Does nothing.
+  }
+}
@@ -0,0 +1,130 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import kaphein.jpa.mql.MqlExpressions;
+
+/**
+ * Generates MQL filters on {@link User} whose size is controlled by benchmark parameters.
+ */
+public final class BenchmarkFilters
+{
+  /**
+   * @param termCount
+   *          The number of value operator terms on the root entity.
+   * @param inCardinality
+   *          The number of values of a {@code $in} operator. {@code 0} omits the operator.
+   * @param existsDepth
+   *          The nesting depth of correlated {@code $jpqlExists} clauses.
+   */
+  public static Map<String, Object> createFilter(
+    int termCount,
+    int inCardinality,
+    int existsDepth
+  )
+  {
+    final var terms = new ArrayList<Object>();
+    for(var i = 0; i < termCount; ++i)
+    {
+      switch(i % 4)
+      {
+      case 0:
+        terms.add(MqlExpressions.of("u.age", MqlExpressions.of("$gte", 20 + i)));
+        break;
+      case 1:
+        terms.add(MqlExpressions.of("u.userName", MqlExpressions.of(
+          "$like", "%user" + i + "%",
+          "$caseSensitive", false)));
+        break;
+      case 2:
+        terms.add(MqlExpressions.of("u.createdAt", MqlExpressions.of("$lt", "2020-01-01T00:00:00Z")));
+        break;
+      default:
+        terms.add(MqlExpressions.of("u.modifiedAt", MqlExpressions.of("$isNull", false)));
+      }
+    }
+
+    final var where = new LinkedHashMap<String, Object>();
+    if(!terms.isEmpty())
+    {
+      where.put("$and", terms);
+    }
+    if(inCardinality > 0)
+    {
+      final var ids = new ArrayList<Object>(inCardinality);
+      for(var i = 0; i < inCardinality; ++i)
+      {
+        ids.add("user" + i);
+      }
+      where.put("u.id", MqlExpressions.of("$in", ids));
+    }
+    if(existsDepth > 0)
+    {
+      where.put("$jpqlExists", createExistsClause(1, existsDepth, "u"));
+    }
+
+    return MqlExpressions.of(
+      "$entityName", "User",
+      "$alias", "u",
+      "$jpqlWhere", where);
+  }
+
+  public static String createJsonFilter(
+    int termCount,
+    int inCardinality,
+    int existsDepth
+  )
+  {
+    try
+    {
+      return OBJECT_MAPPER.writeValueAsString(createFilter(termCount, inCardinality, existsDepth));
+    }
+    catch(final JsonProcessingException jpe)
+    {
+      throw new IllegalStateException(jpe);
+    }
+  }
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private static Map<String, Object> createExistsClause(
+    int level,
+    int depth,
+    String outerAlias
+  )
+  {
+    final var isDepartment = 0 != (level & 0x01);
+    final var alias = (isDepartment ? "d" : "u") + level;
+
+    final var where = new LinkedHashMap<String, Object>();
+    if(isDepartment)
+    {
+      where.put(alias + ".id", MqlExpressions.of("$eq", MqlExpressions.of("$attrPath", outerAlias + ".departmentId")));
+      where.put(alias + ".departmentName", MqlExpressions.of("$like", "%dept%"));
+    }
+    else
+    {
+      where.put(alias + ".departmentId", MqlExpressions.of("$eq", MqlExpressions.of("$attrPath", outerAlias + ".id")));
+      where.put(alias + ".age", MqlExpressions.of("$gt", 10));
+    }
+    if(level < depth)
+    {
+      where.put("$jpqlExists", createExistsClause(level + 1, depth, alias));
+    }
+
+    return MqlExpressions.of(
+      "$entityName", (isDepartment ? "Department" : "User"),
+      "$alias", alias,
+      "$jpqlWhere", where);
+  }
+
+  private BenchmarkFilters()
+  {
+    // Does nothing.
+  }
+}
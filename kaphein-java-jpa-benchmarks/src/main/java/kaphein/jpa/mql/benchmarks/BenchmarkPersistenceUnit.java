@@ -0,0 +1,33 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.util.Map;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+
+/**
+ * The in-memory H2 persistence unit used by benchmarks.
+ */
+public final class BenchmarkPersistenceUnit
+{
+  public static final String NAME = "kaphein-java-jpa-benchmarks";
+
+  public static EntityManagerFactory createEntityManagerFactory()
+  {
+    return Persistence.createEntityManagerFactory(NAME);
+  }
+
+  /**
+   * @param properties
+   *          Properties that override the ones of the persistence unit.
+   */
+  public static EntityManagerFactory createEntityManagerFactory(Map<String, ?> properties)
+  {
+    return Persistence.createEntityManagerFactory(NAME, properties);
+  }
+
+  private BenchmarkPersistenceUnit()
+  {
+    // Does nothing.
+  }
+}
@@ -0,0 +1,61 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+@Table(name = "t_department")
+@Entity
+public class Department
+{
+  protected Department()
+  {
+    // Empty.
+  }
+
+  public Department(
+    String id,
+    String departmentName,
+    Instant createdAt
+  )
+  {
+    this.id = id;
+    this.departmentName = departmentName;
+    this.createdAt = createdAt;
+  }
+
+  public String getId()
+  {
+    return id;
+  }
+
+  public String getDepartmentName()
+  {
+    return departmentName;
+  }
+
+  public Instant getCreatedAt()
+  {
+    return createdAt;
+  }
+
+  public Instant getModifiedAt()
+  {
+    return modifiedAt;
+  }
+
+  @Id
+  @Column(length = 32, nullable = false)
+  private String id;
+
+  @Column(length = 128)
+  private String departmentName;
+
+  @Column(nullable = false)
+  private Instant createdAt;
+
+  private Instant modifiedAt;
+}
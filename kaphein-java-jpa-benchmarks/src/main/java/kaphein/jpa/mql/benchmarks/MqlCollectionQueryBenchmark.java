@@ -0,0 +1,147 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.persistence.EntityManagerFactory;
+import kaphein.jpa.core.Sort;
+import kaphein.jpa.mql.MqlCollectionQuery;
+import kaphein.jpa.mql.MqlExpressions;
+import kaphein.jpa.mql.MqlQueryBuilder;
+
+/**
+ * Filters, sorts and pages a list of users that are not persisted with a {@link MqlCollectionQuery}, sequentially and
+ * on the common fork/join pool.
+ * <p>
+ * {@code topK} selects a page by the bounded heap, {@code fullSort} sorts all matching users, and
+ * {@code sortedStream} is the baseline of a sequential stream that sorts all matching users before skipping to the
+ * page.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class MqlCollectionQueryBenchmark
+{
+  @Param({"1000000"})
+  public int userCount;
+
+  @Param({"sequential", "parallel"})
+  public String execution;
+
+  @Setup
+  public void setUp()
+  {
+    entityManagerFactory = BenchmarkPersistenceUnit.createEntityManagerFactory();
+
+    final var random = new Random(0);
+    final var createdAt = Instant.now();
+    users = new ArrayList<>(userCount);
+    for(var i = 0; i < userCount; ++i)
+    {
+      users.add(new User(
+        "user" + i,
+        "User " + random.nextInt(userCount),
+        (0 == random.nextInt(10) ? null : 20 + random.nextInt(40)),
+        "department" + random.nextInt(50),
+        createdAt));
+    }
+
+    final var parallelThreshold = ("parallel".equals(execution)
+      ? MqlCollectionQuery.DEFAULT_PARALLEL_THRESHOLD
+      : Integer.MAX_VALUE);
+    pageQuery = newBuilder(parallelThreshold)
+      .limit(PAGE_SIZE)
+      .offset(PAGE_OFFSET)
+      .compileCollectionQuery();
+    allQuery = newBuilder(parallelThreshold).compileCollectionQuery();
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    entityManagerFactory.close();
+  }
+
+  @Benchmark
+  public long count()
+  {
+    return pageQuery.count(users);
+  }
+
+  @Benchmark
+  public List<User> topK()
+  {
+    return pageQuery.getResultList(users);
+  }
+
+  @Benchmark
+  public List<User> fullSort()
+  {
+    return allQuery.getResultList(users);
+  }
+
+  @Benchmark
+  public List<User> sortedStream()
+  {
+    return users
+      .stream()
+      .filter(pageQuery.getPredicate())
+      .sorted(pageQuery.getComparator())
+      .skip(PAGE_OFFSET)
+      .limit(PAGE_SIZE)
+      .collect(Collectors.toList());
+  }
+
+  private MqlQueryBuilder<User> newBuilder(int parallelThreshold)
+  {
+    return new MqlQueryBuilder<User>()
+      .metamodel(entityManagerFactory.getMetamodel())
+      .entityJavaType(User.class)
+      .orderByTerms(ORDER_BY_TERMS)
+      .parallelThreshold(parallelThreshold)
+      .filter(FILTER);
+  }
+
+  private static final int PAGE_SIZE = 20;
+
+  private static final int PAGE_OFFSET = 100;
+
+  private static final Map<String, Object> FILTER = MqlExpressions.of(
+    "$alias", "u",
+    "$jpqlWhere", MqlExpressions.of(
+      "u.age", MqlExpressions.of("$gte", 30),
+      "u.userName", MqlExpressions.of("$like", "%1%")));
+
+  private static final List<Sort.Order> ORDER_BY_TERMS = List.of(
+    new Sort.Order("u.age", true, Sort.NullOrder.LAST),
+    new Sort.Order("u.userName"));
+
+  private EntityManagerFactory entityManagerFactory;
+
+  private List<User> users;
+
+  private MqlCollectionQuery<User> pageQuery;
+
+  private MqlCollectionQuery<User> allQuery;
+}
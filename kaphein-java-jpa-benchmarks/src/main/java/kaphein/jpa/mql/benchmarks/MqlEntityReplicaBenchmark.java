@@ -0,0 +1,130 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import kaphein.jpa.core.Sort;
+import kaphein.jpa.mql.MqlEntityReplica;
+import kaphein.jpa.mql.MqlExpressions;
+import kaphein.jpa.mql.MqlPage;
+import kaphein.jpa.mql.MqlQueryBuilder;
+import kaphein.jpa.mql.MqlQueryPlanCache;
+
+/**
+ * Selects a page of users of a department and an age range by a {@link MqlEntityReplica} with a hash index on the
+ * department and a sorted index on the age, by scanning all loaded users, and by the query executed against an
+ * in-memory H2/Hibernate persistence unit.
+ * <p>
+ * Each operation compiles the filter as a request would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MqlEntityReplicaBenchmark
+{
+  @Setup
+  public void setUp()
+  {
+    entityManagerFactory = BenchmarkPersistenceUnit.createEntityManagerFactory();
+    entityManager = entityManagerFactory.createEntityManager();
+    queryPlanCache = new MqlQueryPlanCache();
+
+    BenchmarkData.persistUsers(entityManager, USER_COUNT);
+
+    users = entityManager
+      .createQuery("SELECT u FROM User u", User.class)
+      .getResultList();
+    entityManager.clear();
+
+    replica = new MqlEntityReplica<>(
+      entityManagerFactory.getMetamodel().entity(User.class),
+      List.of("departmentId"),
+      List.of("age"));
+    replica.reload(users);
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    entityManager.close();
+    entityManagerFactory.close();
+  }
+
+  @Benchmark
+  public MqlPage<User> replica()
+  {
+    return replica.getPage(newBuilder().compileCollectionQuery());
+  }
+
+  @Benchmark
+  public MqlPage<User> scan()
+  {
+    return newBuilder()
+      .compileCollectionQuery()
+      .getPage(users);
+  }
+
+  @Benchmark
+  public List<? extends User> database()
+  {
+    final var result = newBuilder()
+      .entityManager(entityManager)
+      .queryPlanCache(queryPlanCache)
+      .countQuery(false)
+      .build()
+      .getResultList();
+    entityManager.clear();
+
+    return result;
+  }
+
+  private MqlQueryBuilder<User> newBuilder()
+  {
+    return new MqlQueryBuilder<User>()
+      .metamodel(entityManagerFactory.getMetamodel())
+      .entityJavaType(User.class)
+      .filter(FILTER)
+      .orderByTerms(List.of(new Sort.Order("u.userName")))
+      .limit(PAGE_SIZE);
+  }
+
+  private static final int USER_COUNT = 20000;
+
+  private static final int PAGE_SIZE = 20;
+
+  private static final Map<String, Object> FILTER = MqlExpressions.of(
+    "$alias", "u",
+    "$jpqlWhere", MqlExpressions.of(
+      "u.departmentId", MqlExpressions.of("$eq", "department7"),
+      "$and", List.of(
+        MqlExpressions.of("u.age", MqlExpressions.of("$gte", 30)),
+        MqlExpressions.of("u.age", MqlExpressions.of("$lt", 40)))));
+
+  private EntityManagerFactory entityManagerFactory;
+
+  private EntityManager entityManager;
+
+  private MqlQueryPlanCache queryPlanCache;
+
+  private List<User> users;
+
+  private MqlEntityReplica<User> replica;
+}
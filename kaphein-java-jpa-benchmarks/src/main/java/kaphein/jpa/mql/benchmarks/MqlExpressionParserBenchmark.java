@@ -0,0 +1,78 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.persistence.EntityManagerFactory;
+import kaphein.jpa.mql.MqlCompiledQuery;
+import kaphein.jpa.mql.MqlQueryBuilder;
+import kaphein.jpa.mql.MqlQueryPlanCache;
+
+/**
+ * Measures the parsing of map filters by {@link MqlQueryBuilder#compile()} on a warm {@link MqlQueryPlanCache}.
+ * <p>
+ * The queries of the filter are taken from the cache, so no query is emitted. The filter is not optimized.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MqlExpressionParserBenchmark
+{
+  @Param({"1", "8", "32"})
+  public int termCount;
+
+  @Param({"0", "100", "1000"})
+  public int inCardinality;
+
+  @Param({"0", "1", "3"})
+  public int existsDepth;
+
+  @Setup
+  public void setUp()
+  {
+    entityManagerFactory = BenchmarkPersistenceUnit.createEntityManagerFactory();
+    filter = BenchmarkFilters.createFilter(termCount, inCardinality, existsDepth);
+    queryPlanCache = new MqlQueryPlanCache();
+    parse();
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    entityManagerFactory.close();
+  }
+
+  @Benchmark
+  public MqlCompiledQuery<User> parse()
+  {
+    return new MqlQueryBuilder<User>()
+      .metamodel(entityManagerFactory.getMetamodel())
+      .entityJavaType(User.class)
+      .filterOptimization(false)
+      .queryPlanCache(queryPlanCache)
+      .filter(filter)
+      .compile();
+  }
+
+  private EntityManagerFactory entityManagerFactory;
+
+  private Map<String, Object> filter;
+
+  private MqlQueryPlanCache queryPlanCache;
+}
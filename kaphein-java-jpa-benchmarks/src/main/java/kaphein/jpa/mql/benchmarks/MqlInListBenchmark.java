@@ -0,0 +1,143 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import kaphein.jpa.mql.MqlExpressions;
+import kaphein.jpa.mql.MqlQueryBuilder;
+import kaphein.jpa.mql.MqlQueryPlanCache;
+
+/**
+ * Executes {@code $in} filters of random cardinalities against an in-memory H2/Hibernate persistence unit with each
+ * IN-list strategy.
+ * <p>
+ * The SQL texts prepared by Hibernate are fed to a {@link StatementCacheSimulator}, and its hits and misses are
+ * reported as the {@code statementCacheHits} and {@code statementCacheMisses} secondary results. The hit rate is
+ * {@code hits / (hits + misses)}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MqlInListBenchmark
+{
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class StatementCacheCounters
+  {
+    public long statementCacheHits;
+
+    public long statementCacheMisses;
+
+    @Setup(Level.Iteration)
+    public void reset()
+    {
+      statementCacheHits = 0;
+      statementCacheMisses = 0;
+    }
+  }
+
+  /**
+   * {@code NONE}, {@code PADDING}, or {@code PADDING_CHUNKED} that splits lists into chunks of 256 values.
+   */
+  @Param({"NONE", "PADDING", "PADDING_CHUNKED"})
+  public String strategy;
+
+  @Param({"100", "1000"})
+  public int maxInCardinality;
+
+  /**
+   * The default of {@code preparedStatementCacheQueries} of the PostgreSQL JDBC driver.
+   */
+  @Param({"256"})
+  public int statementCacheSize;
+
+  @Setup
+  public void setUp()
+  {
+    statementCacheSimulator = new StatementCacheSimulator(statementCacheSize);
+    entityManagerFactory = BenchmarkPersistenceUnit.createEntityManagerFactory(Map.of(
+      "hibernate.session_factory.statement_inspector",
+      statementCacheSimulator));
+    entityManager = entityManagerFactory.createEntityManager();
+    queryPlanCache = new MqlQueryPlanCache();
+    random = new Random(0x5EEDL);
+
+    ids = new ArrayList<>(maxInCardinality);
+    for(var i = 0; i < maxInCardinality; ++i)
+    {
+      ids.add("user" + i);
+    }
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    entityManager.close();
+    entityManagerFactory.close();
+  }
+
+  @Benchmark
+  public List<? extends User> execute(StatementCacheCounters counters)
+  {
+    final var hitCount = statementCacheSimulator.getHitCount();
+    final var missCount = statementCacheSimulator.getMissCount();
+
+    final var inCardinality = 1 + random.nextInt(maxInCardinality);
+    final var filter = MqlExpressions.of(
+      "$entityName", "User",
+      "$alias", "u",
+      "$jpqlWhere", MqlExpressions.of("u.id", MqlExpressions.of("$in", ids.subList(0, inCardinality))));
+
+    final var items = new MqlQueryBuilder<User>()
+      .entityManager(entityManager)
+      .entityJavaType(User.class)
+      .queryPlanCache(queryPlanCache)
+      .inListPadding(!"NONE".equals(strategy))
+      .inListChunkSize(("PADDING_CHUNKED".equals(strategy) ? 256 : null))
+      .countQuery(false)
+      .filter(filter)
+      .build()
+      .getItemQuery()
+      .getResultList();
+
+    counters.statementCacheHits += statementCacheSimulator.getHitCount() - hitCount;
+    counters.statementCacheMisses += statementCacheSimulator.getMissCount() - missCount;
+
+    return items;
+  }
+
+  private StatementCacheSimulator statementCacheSimulator;
+
+  private EntityManagerFactory entityManagerFactory;
+
+  private EntityManager entityManager;
+
+  private MqlQueryPlanCache queryPlanCache;
+
+  private Random random;
+
+  private List<Object> ids;
+}
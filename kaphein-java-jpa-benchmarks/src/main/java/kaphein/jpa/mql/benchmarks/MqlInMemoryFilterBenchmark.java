@@ -0,0 +1,149 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import kaphein.jpa.mql.MqlExpressions;
+import kaphein.jpa.mql.MqlQueryBuilder;
+import kaphein.jpa.mql.MqlQueryPlanCache;
+
+/**
+ * Filters users with their departments by a predicate compiled from the filter, and by the query executed against an
+ * in-memory H2/Hibernate persistence unit.
+ * <p>
+ * The users are loaded once and detached, so the in-memory benchmarks measure only the evaluation of the filter, and
+ * {@code compileAndFilter} adds the parsing and compilation of the filter. The {@code generated} benchmarks use the
+ * predicate classes of {@link MqlQueryBuilder#predicateClassGeneration(boolean)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MqlInMemoryFilterBenchmark
+{
+  @Setup
+  public void setUp()
+  {
+    entityManagerFactory = BenchmarkPersistenceUnit.createEntityManagerFactory();
+    entityManager = entityManagerFactory.createEntityManager();
+    queryPlanCache = new MqlQueryPlanCache();
+
+    BenchmarkData.persistUsers(entityManager, USER_COUNT);
+
+    users = entityManager
+      .createQuery("SELECT u FROM User u LEFT JOIN FETCH u.department", User.class)
+      .getResultList();
+    entityManager.clear();
+
+    predicate = newBuilder().compilePredicate();
+    generatedPredicate = newBuilder()
+      .predicateClassGeneration(true)
+      .compilePredicate();
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    entityManager.close();
+    entityManagerFactory.close();
+  }
+
+  @Benchmark
+  public List<User> filter()
+  {
+    return users
+      .stream()
+      .filter(predicate)
+      .collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public List<User> compileAndFilter()
+  {
+    return users
+      .stream()
+      .filter(newBuilder().compilePredicate())
+      .collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public List<User> generatedFilter()
+  {
+    return users
+      .stream()
+      .filter(generatedPredicate)
+      .collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public List<User> generatedCompileAndFilter()
+  {
+    return users
+      .stream()
+      .filter(newBuilder().predicateClassGeneration(true).compilePredicate())
+      .collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public List<? extends User> database()
+  {
+    final var result = newBuilder()
+      .entityManager(entityManager)
+      .queryPlanCache(queryPlanCache)
+      .build()
+      .getResultList();
+    entityManager.clear();
+
+    return result;
+  }
+
+  private MqlQueryBuilder<User> newBuilder()
+  {
+    return new MqlQueryBuilder<User>()
+      .metamodel(entityManagerFactory.getMetamodel())
+      .entityJavaType(User.class)
+      .countQuery(false)
+      .filter(FILTER);
+  }
+
+  private static final int USER_COUNT = 5000;
+
+  private static final Map<String, Object> FILTER = MqlExpressions.of(
+    "$alias", "u",
+    "$jpqlWhere", MqlExpressions.of(
+      "u.age", MqlExpressions.of("$gte", 30, "$lt", 50),
+      "$or", List.of(
+        MqlExpressions.of("u.userName", MqlExpressions.of("$like", "%1%")),
+        MqlExpressions.of("u.department.departmentName", MqlExpressions.of("$in", List.of("Department 2", "Department 3"))))));
+
+  private EntityManagerFactory entityManagerFactory;
+
+  private EntityManager entityManager;
+
+  private MqlQueryPlanCache queryPlanCache;
+
+  private List<User> users;
+
+  private Predicate<User> predicate;
+
+  private Predicate<User> generatedPredicate;
+}
@@ -0,0 +1,122 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.persistence.EntityManagerFactory;
+import kaphein.jpa.mql.MqlCompiledQuery;
+import kaphein.jpa.mql.MqlQueryBuilder;
+import kaphein.jpa.mql.MqlQueryPlanCache;
+
+/**
+ * Compares the map front-end (JSON to maps to AST) with the streaming JSON parser of
+ * {@link MqlQueryBuilder#filter(byte[])} (JSON to AST).
+ * <p>
+ * The filters are compiled on a warm {@link MqlQueryPlanCache}, so no query is emitted.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MqlJsonFrontEndBenchmark
+{
+  @Param({"8"})
+  public int termCount;
+
+  @Param({"10", "1000", "10000"})
+  public int inCardinality;
+
+  @Param({"1"})
+  public int existsDepth;
+
+  @Setup
+  public void setUp()
+  {
+    entityManagerFactory = BenchmarkPersistenceUnit.createEntityManagerFactory();
+    objectMapper = new ObjectMapper();
+    jsonFilter = BenchmarkFilters
+      .createJsonFilter(termCount, inCardinality, existsDepth)
+      .getBytes(StandardCharsets.UTF_8);
+    directJsonFilter = ByteBuffer
+      .allocateDirect(jsonFilter.length)
+      .put(jsonFilter)
+      .flip();
+    queryPlanCache = new MqlQueryPlanCache();
+    streamFrontEnd();
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    entityManagerFactory.close();
+  }
+
+  @Benchmark
+  public MqlCompiledQuery<User> mapFrontEnd() throws Exception
+  {
+    final Map<String, Object> mapFilter = objectMapper.readValue(jsonFilter, MAP_TYPE);
+
+    return newBuilder()
+      .filter(mapFilter)
+      .compile();
+  }
+
+  @Benchmark
+  public MqlCompiledQuery<User> streamFrontEnd()
+  {
+    return newBuilder()
+      .filter(jsonFilter)
+      .compile();
+  }
+
+  @Benchmark
+  public MqlCompiledQuery<User> streamFrontEndDirectByteBuffer()
+  {
+    return newBuilder()
+      .filter(directJsonFilter)
+      .compile();
+  }
+
+  private MqlQueryBuilder<User> newBuilder()
+  {
+    return new MqlQueryBuilder<User>()
+      .metamodel(entityManagerFactory.getMetamodel())
+      .entityJavaType(User.class)
+      .filterOptimization(false)
+      .queryPlanCache(queryPlanCache);
+  }
+
+  private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>()
+  {
+  };
+
+  private EntityManagerFactory entityManagerFactory;
+
+  private ObjectMapper objectMapper;
+
+  private byte[] jsonFilter;
+
+  private ByteBuffer directJsonFilter;
+
+  private MqlQueryPlanCache queryPlanCache;
+}
@@ -0,0 +1,151 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Tuple;
+import kaphein.jpa.core.Sort;
+import kaphein.jpa.mql.MqlExpressions;
+import kaphein.jpa.mql.MqlProjection;
+import kaphein.jpa.mql.MqlQueryBuilder;
+import kaphein.jpa.mql.MqlQueryPlanCache;
+
+/**
+ * Renders the four columns of a user list from entities, tuples and DTOs fetched from an in-memory H2/Hibernate
+ * persistence unit.
+ * <p>
+ * Entities are hydrated, snapshotted for dirty checking and their departments are loaded through lazy proxies, while
+ * projections select only the columns. The persistence context is cleared after each invocation, so the allocation
+ * rate ({@code gc.alloc.rate.norm}) reflects the heap used per page.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MqlProjectionBenchmark
+{
+  @Param({"20", "1000"})
+  public int pageSize;
+
+  @Setup
+  public void setUp()
+  {
+    entityManagerFactory = BenchmarkPersistenceUnit.createEntityManagerFactory();
+    entityManager = entityManagerFactory.createEntityManager();
+    queryPlanCache = new MqlQueryPlanCache();
+
+    BenchmarkData.persistUsers(entityManager, USER_COUNT);
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    entityManager.close();
+    entityManagerFactory.close();
+  }
+
+  @Benchmark
+  public List<UserRow> entity()
+  {
+    final var users = newBuilder()
+      .build()
+      .getItemQuery()
+      .getResultList();
+
+    final var rows = new ArrayList<UserRow>(users.size());
+    for(final var user : users)
+    {
+      final var department = user.getDepartment();
+      rows.add(new UserRow(
+        user.getId(),
+        user.getUserName(),
+        user.getAge(),
+        (null == department ? null : department.getDepartmentName())));
+    }
+    entityManager.clear();
+
+    return rows;
+  }
+
+  @Benchmark
+  public List<UserRow> tuple()
+  {
+    final var tuples = newBuilder()
+      .build(MqlProjection.tuple(PROJECTED_PATHS))
+      .getItemQuery()
+      .getResultList();
+
+    final var rows = new ArrayList<UserRow>(tuples.size());
+    for(final Tuple tuple : tuples)
+    {
+      rows.add(new UserRow(
+        tuple.get("id", String.class),
+        tuple.get("userName", String.class),
+        tuple.get("age", Integer.class),
+        tuple.get("department_departmentName", String.class)));
+    }
+    entityManager.clear();
+
+    return rows;
+  }
+
+  @Benchmark
+  public List<? extends UserRow> dto()
+  {
+    final var rows = newBuilder()
+      .build(MqlProjection.constructor(UserRow.class, PROJECTED_PATHS))
+      .getItemQuery()
+      .getResultList();
+    entityManager.clear();
+
+    return rows;
+  }
+
+  private MqlQueryBuilder<User> newBuilder()
+  {
+    return new MqlQueryBuilder<User>()
+      .entityManager(entityManager)
+      .entityJavaType(User.class)
+      .queryPlanCache(queryPlanCache)
+      .orderByTerms(ORDER_BY_TERMS)
+      .limit(pageSize)
+      .countQuery(false)
+      .filter(MqlExpressions.of(
+        "$alias", "u",
+        "$jpqlWhere", MqlExpressions.of("u.age", MqlExpressions.of("$gte", 20))));
+  }
+
+  private static final int USER_COUNT = 5000;
+
+  private static final String[] PROJECTED_PATHS = {
+    "u.id",
+    "u.userName",
+    "u.age",
+    "u.department.departmentName"};
+
+  private static final List<Sort.Order> ORDER_BY_TERMS = List.of(new Sort.Order("u.id"));
+
+  private EntityManagerFactory entityManagerFactory;
+
+  private EntityManager entityManager;
+
+  private MqlQueryPlanCache queryPlanCache;
+}
@@ -0,0 +1,126 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import kaphein.jpa.core.Sort;
+import kaphein.jpa.mql.MqlCompiledQuery;
+import kaphein.jpa.mql.MqlQueryBuildResult;
+import kaphein.jpa.mql.MqlQueryBuilder;
+import kaphein.jpa.mql.MqlQueryPlanCache;
+
+/**
+ * Measures {@link MqlQueryBuilder#build()} end to end against an in-memory H2/Hibernate persistence unit.
+ * <p>
+ * Queries are created but not executed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MqlQueryBuilderBenchmark
+{
+  @Param({"1", "8", "32"})
+  public int termCount;
+
+  @Param({"0", "100", "1000"})
+  public int inCardinality;
+
+  @Param({"0", "1", "3"})
+  public int existsDepth;
+
+  @Setup
+  public void setUp()
+  {
+    entityManagerFactory = BenchmarkPersistenceUnit.createEntityManagerFactory();
+    entityManager = entityManagerFactory.createEntityManager();
+    jsonFilter = BenchmarkFilters.createJsonFilter(termCount, inCardinality, existsDepth);
+    queryPlanCache = new MqlQueryPlanCache();
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    entityManager.close();
+    entityManagerFactory.close();
+  }
+
+  @Benchmark
+  public MqlQueryBuildResult<User> buildMapFilter()
+  {
+    return newBuilder()
+      .filter(createMapFilter())
+      .build();
+  }
+
+  @Benchmark
+  public MqlQueryBuildResult<User> buildJsonFilter()
+  {
+    return newBuilder()
+      .filter(jsonFilter)
+      .build();
+  }
+
+  @Benchmark
+  public MqlQueryBuildResult<User> buildJsonFilterWithPlanCache()
+  {
+    return newBuilder()
+      .queryPlanCache(queryPlanCache)
+      .filter(jsonFilter)
+      .build();
+  }
+
+  @Benchmark
+  public MqlCompiledQuery<User> compileJsonFilter()
+  {
+    return newBuilder()
+      .filter(jsonFilter)
+      .compile();
+  }
+
+  private MqlQueryBuilder<User> newBuilder()
+  {
+    return new MqlQueryBuilder<User>()
+      .entityManager(entityManager)
+      .entityJavaType(User.class)
+      .orderByTerms(ORDER_BY_TERMS)
+      .limit(20)
+      .offset(40);
+  }
+
+  private Map<String, Object> createMapFilter()
+  {
+    // The parser adds missing keys to the filter, so use a new one on every invocation.
+    return BenchmarkFilters.createFilter(termCount, inCardinality, existsDepth);
+  }
+
+  private static final List<Sort.Order> ORDER_BY_TERMS = List.of(
+    new Sort.Order("u.age", true),
+    new Sort.Order("u.id", false));
+
+  private EntityManagerFactory entityManagerFactory;
+
+  private EntityManager entityManager;
+
+  private String jsonFilter;
+
+  private MqlQueryPlanCache queryPlanCache;
+}
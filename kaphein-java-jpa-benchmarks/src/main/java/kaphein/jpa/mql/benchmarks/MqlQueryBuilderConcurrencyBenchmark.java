@@ -0,0 +1,99 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import kaphein.jpa.mql.MqlQueryBuildResult;
+import kaphein.jpa.mql.MqlQueryBuilder;
+
+/**
+ * Measures the throughput of {@link MqlQueryBuilder#build()} on concurrent threads that share an
+ * {@link EntityManagerFactory}.
+ * <p>
+ * Shared sources of contention (such as a {@link java.security.SecureRandom} behind node ids) show up as a throughput
+ * that does not scale with the number of threads. Compare with {@code -t 1}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class MqlQueryBuilderConcurrencyBenchmark
+{
+  @State(Scope.Benchmark)
+  public static class SharedState
+  {
+    @Param({"8"})
+    public int termCount;
+
+    @Param({"100"})
+    public int inCardinality;
+
+    @Param({"1"})
+    public int existsDepth;
+
+    @Setup
+    public void setUp()
+    {
+      entityManagerFactory = BenchmarkPersistenceUnit.createEntityManagerFactory();
+      jsonFilter = BenchmarkFilters.createJsonFilter(termCount, inCardinality, existsDepth);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+      entityManagerFactory.close();
+    }
+
+    private EntityManagerFactory entityManagerFactory;
+
+    private String jsonFilter;
+  }
+
+  @State(Scope.Thread)
+  public static class ThreadState
+  {
+    @Setup
+    public void setUp(SharedState sharedState)
+    {
+      entityManager = sharedState.entityManagerFactory.createEntityManager();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+      entityManager.close();
+    }
+
+    private EntityManager entityManager;
+  }
+
+  @Benchmark
+  public MqlQueryBuildResult<User> build(
+    SharedState sharedState,
+    ThreadState threadState
+  )
+  {
+    return new MqlQueryBuilder<User>()
+      .entityManager(threadState.entityManager)
+      .entityJavaType(User.class)
+      .filter(sharedState.jsonFilter)
+      .build();
+  }
+}
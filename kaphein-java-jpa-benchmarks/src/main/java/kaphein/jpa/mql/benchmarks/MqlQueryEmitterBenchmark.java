@@ -0,0 +1,73 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.persistence.EntityManagerFactory;
+import kaphein.jpa.mql.MqlCompiledQuery;
+import kaphein.jpa.mql.MqlQueryBuilder;
+
+/**
+ * Measures the emission of queries by {@link MqlQueryBuilder#compile()} without a query plan cache.
+ * <p>
+ * The filter is parsed on each invocation as well and is not optimized, so the cost of the emission is the difference
+ * from {@link MqlExpressionParserBenchmark} with the same parameters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MqlQueryEmitterBenchmark
+{
+  @Param({"1", "8", "32"})
+  public int termCount;
+
+  @Param({"0", "100", "1000"})
+  public int inCardinality;
+
+  @Param({"0", "1", "3"})
+  public int existsDepth;
+
+  @Setup
+  public void setUp()
+  {
+    entityManagerFactory = BenchmarkPersistenceUnit.createEntityManagerFactory();
+    filter = BenchmarkFilters.createFilter(termCount, inCardinality, existsDepth);
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    entityManagerFactory.close();
+  }
+
+  @Benchmark
+  public MqlCompiledQuery<User> emit()
+  {
+    return new MqlQueryBuilder<User>()
+      .metamodel(entityManagerFactory.getMetamodel())
+      .entityJavaType(User.class)
+      .filterOptimization(false)
+      .filter(filter)
+      .compile();
+  }
+
+  private EntityManagerFactory entityManagerFactory;
+
+  private Map<String, Object> filter;
+}
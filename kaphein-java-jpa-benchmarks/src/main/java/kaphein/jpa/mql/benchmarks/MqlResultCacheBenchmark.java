@@ -0,0 +1,118 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import kaphein.jpa.core.Sort;
+import kaphein.jpa.mql.MqlExpressions;
+import kaphein.jpa.mql.MqlPage;
+import kaphein.jpa.mql.MqlQueryBuilder;
+import kaphein.jpa.mql.MqlQueryPlanCache;
+import kaphein.jpa.mql.MqlResultCache;
+
+/**
+ * Selects a counted page of users of departments matched by a sub query against an in-memory H2/Hibernate persistence
+ * unit, with id-first pagination, with and without a {@link MqlResultCache}.
+ * <p>
+ * A cached page still fetches its users by the cached ids, so the difference is the id query and the count query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MqlResultCacheBenchmark
+{
+  @Setup
+  public void setUp()
+  {
+    entityManagerFactory = BenchmarkPersistenceUnit.createEntityManagerFactory();
+    entityManager = entityManagerFactory.createEntityManager();
+    queryPlanCache = new MqlQueryPlanCache();
+    resultCache = new MqlResultCache();
+
+    BenchmarkData.persistUsers(entityManager, USER_COUNT);
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    entityManager.close();
+    entityManagerFactory.close();
+  }
+
+  @Benchmark
+  public MqlPage<User> uncached()
+  {
+    final var page = newBuilder()
+      .idFirstPagination(true)
+      .build()
+      .getPage();
+    entityManager.clear();
+
+    return page;
+  }
+
+  @Benchmark
+  public MqlPage<User> cached()
+  {
+    final var page = newBuilder()
+      .resultCache(resultCache)
+      .build()
+      .getPage();
+    entityManager.clear();
+
+    return page;
+  }
+
+  private MqlQueryBuilder<User> newBuilder()
+  {
+    return new MqlQueryBuilder<User>()
+      .entityManager(entityManager)
+      .entityJavaType(User.class)
+      .queryPlanCache(queryPlanCache)
+      .filter(FILTER)
+      .orderByTerms(List.of(new Sort.Order("u.userName")))
+      .limit(PAGE_SIZE)
+      .offset(PAGE_SIZE);
+  }
+
+  private static final int USER_COUNT = 20000;
+
+  private static final int PAGE_SIZE = 20;
+
+  private static final Map<String, Object> FILTER = MqlExpressions.of(
+    "$alias", "u",
+    "$jpqlWhere", MqlExpressions.of(
+      "u.age", MqlExpressions.of("$gte", 30),
+      "$jpqlExists", MqlExpressions.of(
+        "$entityName", "Department",
+        "$alias", "d",
+        "$jpqlWhere", MqlExpressions.of(
+          "d.id", MqlExpressions.of("$eq", MqlExpressions.of("$attrPath", "u.departmentId")),
+          "d.departmentName", MqlExpressions.of("$like", "%1%")))));
+
+  private EntityManagerFactory entityManagerFactory;
+
+  private EntityManager entityManager;
+
+  private MqlQueryPlanCache queryPlanCache;
+
+  private MqlResultCache resultCache;
+}
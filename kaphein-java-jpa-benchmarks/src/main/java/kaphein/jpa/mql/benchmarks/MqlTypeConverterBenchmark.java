@@ -0,0 +1,126 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import kaphein.jpa.mql.MqlCompiledQuery;
+import kaphein.jpa.mql.MqlExpressions;
+import kaphein.jpa.mql.MqlQueryBuildResult;
+import kaphein.jpa.mql.MqlQueryBuilder;
+
+/**
+ * Measures the conversion of the values of a {@code $in} operator by {@link MqlCompiledQuery#bind(EntityManager, List)}.
+ * <p>
+ * {@code bindUnconverted} binds the values as they are parsed from JSON, and {@code bindConverted} binds values that
+ * are already of the java type of the attribute, so the cost of the conversion is the difference of the two.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MqlTypeConverterBenchmark
+{
+  @Param({"100", "10000"})
+  public int inCardinality;
+
+  @Param({"Integer", "String", "Instant"})
+  public String elementType;
+
+  @Setup
+  public void setUp()
+  {
+    String attrPath = null;
+    final var values = new ArrayList<Object>(inCardinality);
+    final var convertedValues = new ArrayList<Object>(inCardinality);
+    for(var i = 0; i < inCardinality; ++i)
+    {
+      switch(elementType)
+      {
+      case "Integer":
+        // Large integers are parsed as longs from JSON.
+        attrPath = "u.age";
+        values.add((long)i);
+        convertedValues.add(i);
+        break;
+      case "String":
+        attrPath = "u.userName";
+        values.add("user" + i);
+        convertedValues.add("user" + i);
+        break;
+      case "Instant":
+        attrPath = "u.createdAt";
+        values.add(Instant.ofEpochSecond(1577836800L + i).toString());
+        convertedValues.add(Instant.ofEpochSecond(1577836800L + i));
+        break;
+      default:
+        throw new IllegalArgumentException(elementType);
+      }
+    }
+
+    entityManagerFactory = BenchmarkPersistenceUnit.createEntityManagerFactory();
+    entityManager = entityManagerFactory.createEntityManager();
+    compiledQuery = new MqlQueryBuilder<User>()
+      .metamodel(entityManagerFactory.getMetamodel())
+      .entityJavaType(User.class)
+      .filterOptimization(false)
+      .inListChunkSize(null)
+      .filter(MqlExpressions.of(
+        "$alias", "u",
+        "$jpqlWhere", MqlExpressions.of(attrPath, MqlExpressions.of("$in", values))))
+      .compile();
+    if(1 != compiledQuery.getParameterSlots().size())
+    {
+      throw new IllegalStateException("The $in values must be bound to one parameter");
+    }
+    parameterValues = List.of(values);
+    convertedParameterValues = List.of(convertedValues);
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    entityManager.close();
+    entityManagerFactory.close();
+  }
+
+  @Benchmark
+  public MqlQueryBuildResult<User> bindUnconverted()
+  {
+    return compiledQuery.bind(entityManager, parameterValues);
+  }
+
+  @Benchmark
+  public MqlQueryBuildResult<User> bindConverted()
+  {
+    return compiledQuery.bind(entityManager, convertedParameterValues);
+  }
+
+  private EntityManagerFactory entityManagerFactory;
+
+  private EntityManager entityManager;
+
+  private MqlCompiledQuery<User> compiledQuery;
+
+  private List<?> parameterValues;
+
+  private List<?> convertedParameterValues;
+}
@@ -0,0 +1,68 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Simulates a bounded LRU statement cache of a JDBC driver or a database by inspecting the SQL texts that Hibernate
+ * prepares.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public final class StatementCacheSimulator implements StatementInspector
+{
+  private static final long serialVersionUID = 1L;
+
+  public StatementCacheSimulator(int capacity)
+  {
+    if(capacity < 1)
+    {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+
+    statements = new LinkedHashMap<>(16, 0.75F, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest)
+      {
+        return size() > capacity;
+      }
+    };
+  }
+
+  @Override
+  public String inspect(String sql)
+  {
+    if(null == statements.get(sql))
+    {
+      statements.put(sql, Boolean.TRUE);
+      ++missCount;
+    }
+    else
+    {
+      ++hitCount;
+    }
+
+    return sql;
+  }
+
+  public long getHitCount()
+  {
+    return hitCount;
+  }
+
+  public long getMissCount()
+  {
+    return missCount;
+  }
+
+  private final LinkedHashMap<String, Boolean> statements;
+
+  private long hitCount;
+
+  private long missCount;
+}
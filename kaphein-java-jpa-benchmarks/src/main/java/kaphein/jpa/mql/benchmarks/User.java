@@ -0,0 +1,92 @@
+package kaphein.jpa.mql.benchmarks;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+
+@Table(name = "t_user")
+@Entity
+public class User
+{
+  protected User()
+  {
+    // Empty.
+  }
+
+  public User(
+    String id,
+    String userName,
+    Integer age,
+    String departmentId,
+    Instant createdAt
+  )
+  {
+    this.id = id;
+    this.userName = userName;
+    this.age = age;
+    this.departmentId = departmentId;
+    this.createdAt = createdAt;
+  }
+
+  public String getId()
+  {
+    return id;
+  }
+
+  public String getUserName()
+  {
+    return userName;
+  }
+
+  public Integer getAge()
+  {
+    return age;
+  }
+
+  public String getDepartmentId()
+  {
+    return departmentId;
+  }
+
+  public Instant getCreatedAt()
+  {
+    return createdAt;
+  }
+
+  public Instant getModifiedAt()
+  {
+    return modifiedAt;
+  }
+
+  public Department getDepartment()
+  {
+    return department;
+  }
+
+  @Id
+  @Column(length = 32, nullable = false)
+  private String id;
+
+  @Column(length = 64)
+  private String userName;
+
+  private Integer age;
+
+  @Column(length = 32)
+  private String departmentId;
+
+  @Column(nullable = false)
+  private Instant createdAt;
+
+  private Instant modifiedAt;
+
+  @ManyToOne(fetch = FetchType.LAZY)
+  @JoinColumn(name = "departmentId", insertable = false, updatable = false)
+  private Department department;
+}
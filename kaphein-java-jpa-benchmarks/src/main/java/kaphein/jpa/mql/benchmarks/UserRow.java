@@ -0,0 +1,48 @@
+package kaphein.jpa.mql.benchmarks;
+
+/**
+ * The columns of a user list rendered by {@link MqlProjectionBenchmark}.
+ */
+public class UserRow
+{
+  public UserRow(
+    String id,
+    String userName,
+    Integer age,
+    String departmentName
+  )
+  {
+    this.id = id;
+    this.userName = userName;
+    this.age = age;
+    this.departmentName = departmentName;
+  }
+
+  public String getId()
+  {
+    return id;
+  }
+
+  public String getUserName()
+  {
+    return userName;
+  }
+
+  public Integer getAge()
+  {
+    return age;
+  }
+
+  public String getDepartmentName()
+  {
+    return departmentName;
+  }
+
+  private final String id;
+
+  private final String userName;
+
+  private final Integer age;
+
+  private final String departmentName;
+}
@@ -0,0 +1,192 @@
+package kaphein.jpa.core;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.Metamodel;
+import jakarta.persistence.metamodel.SingularAttribute;
+
+/**
+ * An index of a {@link Metamodel} for resolving entity names and attribute paths in constant time.
+ * <p>
+ * Instances are thread-safe. Entity types are indexed on creation, and attribute paths are resolved on the first
+ * lookup and memoized.
+ */
+public final class MetamodelIndex
+{
+  /**
+   * @return The index of the metamodel that is created once and shared while the metamodel is reachable.
+   */
+  public static MetamodelIndex of(Metamodel metamodel)
+  {
+    AssertArg.isNotNull(metamodel, "metamodel");
+
+    final var lastIndex = lastIndexRef.get();
+    if(null != lastIndex && lastIndex.metamodel == metamodel)
+    {
+      return lastIndex;
+    }
+
+    MetamodelIndex index = null;
+    synchronized(INDEXES)
+    {
+      index = Optional
+        .ofNullable(INDEXES.get(metamodel))
+        .map(SoftReference::get)
+        .orElse(null);
+      if(null == index)
+      {
+        index = new MetamodelIndex(metamodel);
+        INDEXES.put(metamodel, new SoftReference<>(index));
+      }
+    }
+    lastIndexRef = new WeakReference<>(index);
+
+    return index;
+  }
+
+  private MetamodelIndex(Metamodel metamodel)
+  {
+    this.metamodel = metamodel;
+
+    final var entities = metamodel.getEntities();
+    final var entityTypesByName = new HashMap<String, EntityType<?>>(entities.size() * 2);
+    final var entityTypesByJavaType = new HashMap<Class<?>, EntityType<?>>(entities.size() * 2);
+    for(final var entityType : entities)
+    {
+      entityTypesByName.putIfAbsent(entityType.getName(), entityType);
+      entityTypesByJavaType.putIfAbsent(entityType.getJavaType(), entityType);
+    }
+    this.entityTypesByName = Collections.unmodifiableMap(entityTypesByName);
+    this.entityTypesByJavaType = Collections.unmodifiableMap(entityTypesByJavaType);
+
+    attributesByPathByType = new ConcurrentHashMap<>();
+  }
+
+  public Metamodel getMetamodel()
+  {
+    return metamodel;
+  }
+
+  public Optional<EntityType<?>> findEntityTypeByEntityName(String entityName)
+  {
+    return Optional.ofNullable(entityTypesByName.get(entityName));
+  }
+
+  @SuppressWarnings("unchecked")
+  public <E> Optional<EntityType<E>> findEntityTypeByJavaType(Class<E> javaType)
+  {
+    return Optional.ofNullable((EntityType<E>)entityTypesByJavaType.get(javaType));
+  }
+
+  /**
+   * @param attributePath
+   *          A dot-separated path of attribute names that starts from {@code type}.
+   * @return The attributes on the path, in order.
+   * @throws InvalidAttributePathException
+   *           If an attribute does not exist or a non-last attribute is not of a managed type.
+   */
+  public List<Attribute<?, ?>> findAttributesOrThrow(
+    ManagedType<?> type,
+    String attributePath
+  )
+  {
+    AssertArg.isNotNull(type, "type");
+    AssertArg.isNotBlank(attributePath, "attributePath");
+
+    final var attributesByPath = attributesByPathByType.computeIfAbsent(
+      type,
+      (t) -> new ConcurrentHashMap<>());
+
+    var attrs = attributesByPath.get(attributePath);
+    if(null == attrs)
+    {
+      // Failures are not memoized to keep the memo bounded by the model.
+      attrs = resolveAttributes(type, attributePath);
+      attributesByPath.putIfAbsent(attributePath, attrs);
+    }
+
+    return attrs;
+  }
+
+  /**
+   * @return The java type of the last attribute on the path.
+   * @throws InvalidAttributePathException
+   *           If the path cannot be resolved.
+   */
+  public Class<?> findJavaTypeOrThrow(
+    ManagedType<?> type,
+    String attributePath
+  )
+  {
+    final var attrs = findAttributesOrThrow(type, attributePath);
+
+    return attrs
+      .get(attrs.size() - 1)
+      .getJavaType();
+  }
+
+  private static List<Attribute<?, ?>> resolveAttributes(
+    ManagedType<?> type,
+    String attributePath
+  )
+  {
+    final var names = attributePath.split("\\.");
+    final var attrs = new ArrayList<Attribute<?, ?>>(names.length);
+
+    ManagedType<?> currentType = type;
+    for(var i = 0; i < names.length; ++i)
+    {
+      if(null == currentType)
+      {
+        throw new InvalidAttributePathException(type, attributePath);
+      }
+
+      Attribute<?, ?> attr = null;
+      try
+      {
+        attr = currentType.getAttribute(names[i]);
+      }
+      catch(final IllegalArgumentException iae)
+      {
+        throw new InvalidAttributePathException(type, attributePath);
+      }
+      attrs.add(attr);
+
+      currentType = null;
+      if(attr instanceof SingularAttribute<?, ?>)
+      {
+        final var attrType = ((SingularAttribute<?, ?>)attr).getType();
+        if(attrType instanceof ManagedType<?>)
+        {
+          currentType = (ManagedType<?>)attrType;
+        }
+      }
+    }
+
+    return Collections.unmodifiableList(attrs);
+  }
+
+  private static final Map<Metamodel, SoftReference<MetamodelIndex>> INDEXES = new WeakHashMap<>();
+
+  private static volatile WeakReference<MetamodelIndex> lastIndexRef = new WeakReference<>(null);
+
+  private final Metamodel metamodel;
+
+  private final Map<String, EntityType<?>> entityTypesByName;
+
+  private final Map<Class<?>, EntityType<?>> entityTypesByJavaType;
+
+  private final ConcurrentHashMap<ManagedType<?>, ConcurrentHashMap<String, List<Attribute<?, ?>>>> attributesByPathByType;
+}
@@ -13,11 +13,9 @@ public class MetamodelUtils
     String entityName
   )
   {
-    return metamodel
-      .getEntities()
-      .stream()
-      .filter(e -> e.getName().equals(entityName))
-      .findFirst();
+    return MetamodelIndex
+      .of(metamodel)
+      .findEntityTypeByEntityName(entityName);
   }
 
   public static final EntityType<?> findEntityTypeByEntityNameOrThrow(
@@ -30,7 +30,7 @@ class MqlAstNode implements Iterable<MqlAstNode>
 
   MqlAstNode(
     MqlAstNodeRegistry nodeRegistry,
-    String id,
+    int id,
     Kind kind,
     String label
   )
@@ -47,7 +47,7 @@ class MqlAstNode implements Iterable<MqlAstNode>
 
   MqlAstNode(
     MqlAstNodeRegistry nodeRegistry,
-    String id,
+    int id,
     Kind kind,
     String label,
     Object value
@@ -65,7 +65,7 @@ class MqlAstNode implements Iterable<MqlAstNode>
 
   private MqlAstNode(
     MqlAstNodeRegistry nodeRegistry,
-    String id,
+    int id,
     MqlAstNode parent,
     List<MqlAstNode> children,
     Kind kind,
@@ -94,7 +94,7 @@ class MqlAstNode implements Iterable<MqlAstNode>
     return nodeRegistry;
   }
 
-  public String getId()
+  public int getId()
   {
     return id;
   }
@@ -156,7 +156,8 @@ class MqlAstNode implements Iterable<MqlAstNode>
 
   public boolean hasChild(MqlAstNode child)
   {
-    return findChildIndexOf(child) >= 0;
+    // A child is always linked to its parent, so the membership can be determined without searching the children.
+    return null != child && this == child.parent;
   }
 
   void addChild(MqlAstNode c)
@@ -167,11 +168,6 @@ class MqlAstNode implements Iterable<MqlAstNode>
     }
 
     if(!hasChild(c))
-    {
-      children.add(c);
-    }
-
-    if(!equals(c.getParent()))
     {
       c.setParent(this);
     }
@@ -185,11 +181,6 @@ class MqlAstNode implements Iterable<MqlAstNode>
     }
 
     if(hasChild(c))
-    {
-      children.remove(c);
-    }
-
-    if(equals(c.getParent()))
     {
       c.setParent(null);
     }
@@ -359,23 +350,40 @@ class MqlAstNode implements Iterable<MqlAstNode>
   private void setParent(MqlAstNode parent)
   {
     final var oldParent = this.parent;
+    if(oldParent != parent)
+    {
+      if(null != oldParent)
+      {
+        oldParent.unlinkChild(this);
+      }
 
-    this.parent = parent;
+      this.parent = parent;
 
-    if(null != oldParent && oldParent != parent && oldParent.hasChild(this))
-    {
-      oldParent.removeChild(this);
+      if(null != parent)
+      {
+        parent.children.add(this);
+      }
     }
+  }
 
-    if(null != parent && !parent.hasChild(this))
+  private void unlinkChild(MqlAstNode child)
+  {
+    // Children are usually removed from the last one, so it is searched backward.
+    for(var i = children.size(); i > 0;)
     {
-      parent.addChild(this);
+      --i;
+      if(child == children.get(i))
+      {
+        children.remove(i);
+
+        break;
+      }
     }
   }
 
   private final MqlAstNodeRegistry nodeRegistry;
 
-  private final String id;
+  private final int id;
 
   private MqlAstNode parent;
 
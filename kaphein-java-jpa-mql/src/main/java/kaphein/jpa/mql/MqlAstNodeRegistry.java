@@ -1,16 +1,20 @@
 package kaphein.jpa.mql;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.Arrays;
 
 import kaphein.jpa.mql.MqlAstNode.Kind;
 
+/**
+ * Issues node ids that are sequential from {@code 0} and local to the registry.
+ * <p>
+ * Ids can be used as indices of arrays that have {@link #size()} elements.
+ */
 class MqlAstNodeRegistry
 {
   MqlAstNodeRegistry()
   {
-    nodeMap = new HashMap<>();
+    nodes = new MqlAstNode[INITIAL_CAPACITY];
+    nodeCount = 0;
   }
 
   public MqlAstNode create(
@@ -18,16 +22,11 @@ class MqlAstNodeRegistry
     String label
   )
   {
-    final var id = UUID.randomUUID().toString();
-    final var node = new MqlAstNode(
+    return register(new MqlAstNode(
       this,
-      id,
+      nodeCount,
       kind,
-      label);
-
-    nodeMap.put(id, node);
-
-    return node;
+      label));
   }
 
   public MqlAstNode create(
@@ -36,23 +35,41 @@ class MqlAstNodeRegistry
     Object value
   )
   {
-    final var id = UUID.randomUUID().toString();
-    final var node = new MqlAstNode(
+    return register(new MqlAstNode(
       this,
-      id,
+      nodeCount,
       kind,
       label,
-      value);
+      value));
+  }
 
-    nodeMap.put(id, node);
+  public MqlAstNode get(int id)
+  {
+    return (id >= 0 && id < nodeCount ? nodes[id] : null);
+  }
 
-    return node;
+  /**
+   * @return The number of nodes created by the registry, which is greater than any issued id.
+   */
+  public int size()
+  {
+    return nodeCount;
   }
 
-  public MqlAstNode get(String id)
+  private static final int INITIAL_CAPACITY = 32;
+
+  private MqlAstNode register(MqlAstNode node)
   {
-    return nodeMap.get(id);
+    if(nodeCount >= nodes.length)
+    {
+      nodes = Arrays.copyOf(nodes, nodes.length << 1);
+    }
+    nodes[nodeCount++] = node;
+
+    return node;
   }
 
-  private final Map<String, MqlAstNode> nodeMap;
+  private MqlAstNode[] nodes;
+
+  private int nodeCount;
 }
@@ -0,0 +1,714 @@
+package kaphein.jpa.mql;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import kaphein.jpa.core.AssertArg;
+import kaphein.jpa.core.InvalidAttributePathException;
+import kaphein.jpa.core.JpaEntityAttributePath;
+import kaphein.jpa.core.MetamodelIndex;
+
+/**
+ * Rewrites a parsed MQL expression into an equivalent one that emits a smaller query.
+ * <p>
+ * The rules are applied bottom-up.
+ * <ul>
+ * <li>Nested clauses of the same kind are flattened, and clauses of a single term are unwrapped.</li>
+ * <li>Duplicate terms are removed.</li>
+ * <li>{@code $eq} and {@code $in} terms on the same path of a {@code $or} clause are merged into a {@code $in} term,
+ * and {@code $ne} and {@code $nin} terms of a {@code $and} clause into a {@code $nin} term.</li>
+ * <li>Range comparisons on the same numeric or temporal path of a {@code $and} clause are merged into an interval.</li>
+ * <li>Contradictions such as an empty {@code $in} list or an empty interval are replaced with a {@code false} clause,
+ * which is propagated to the enclosing clauses.</li>
+ * </ul>
+ * A {@code false} clause is emitted as {@code 1 = 0}, and a {@code $and} clause without terms is always true.
+ */
+class MqlAstOptimizer
+{
+  static final String FALSE_CLAUSE_LABEL = "false";
+
+  static boolean isFalse(MqlAstNode node)
+  {
+    return MqlAstNode.Kind.CLAUSE.equals(node.getKind())
+      && FALSE_CLAUSE_LABEL.equals(node.getLabel());
+  }
+
+  MqlAstOptimizer(MqlQueryEmitterConfig<?> config)
+  {
+    AssertArg.isNotNull(config, "config");
+
+    metamodelIndex = MetamodelIndex.of(config.getMetamodel());
+    typeConverter = config.getTypeConverter();
+  }
+
+  void optimize(MqlAstNode rootNode)
+  {
+    AssertArg.isNotNull(rootNode, "rootNode");
+
+    // Children are rewritten before their parents, so a clause sees the rewritten terms.
+    final var nodes = new ArrayList<MqlAstNode>(rootNode.getNodeRegistry().size());
+    rootNode
+      .postOrderIterator()
+      .forEachRemaining(nodes::add);
+
+    for(final var node : nodes)
+    {
+      switch(node.getKind())
+      {
+      case VALUE_OPERATOR:
+        optimizeValueOperator(node);
+        break;
+      case CLAUSE:
+        switch(node.getLabel())
+        {
+        case "and":
+        case "or":
+          optimizeConditionClause(node);
+          break;
+        case "nJpqlExists":
+        case "jpqlExists":
+          optimizeSubQueryClause(node);
+          break;
+        default:
+          // Does nothing.
+        }
+        break;
+      default:
+        // Does nothing.
+      }
+    }
+  }
+
+  private void optimizeValueOperator(MqlAstNode node)
+  {
+    switch(node.getLabel())
+    {
+    case "nin":
+    case "in":
+      if(1 == node.getChildCount())
+      {
+        // x IN () is false, and x NOT IN () is true.
+        setConstant(node, "nin".equals(node.getLabel()));
+      }
+      break;
+    default:
+      // Does nothing.
+    }
+  }
+
+  private void optimizeSubQueryClause(MqlAstNode node)
+  {
+    final var parentNode = node.getParent();
+    if(null == parentNode || MqlAstNode.Kind.ROOT.equals(parentNode.getKind()) || node.getChildCount() < 3)
+    {
+      return;
+    }
+
+    final var queryNode = node.getChildNodeAt(2);
+    if(1 == queryNode.getChildCount() && isFalse(queryNode.getChildNodeAt(0)))
+    {
+      // EXISTS over no rows is false, and NOT EXISTS is true.
+      setConstant(node, "nJpqlExists".equals(node.getLabel()));
+    }
+  }
+
+  private void optimizeConditionClause(MqlAstNode node)
+  {
+    final var clauseName = node.getLabel();
+    final var conjunctive = "and".equals(clauseName);
+
+    Boolean constant = null;
+    final var terms = new ArrayList<MqlAstNode>(node.getChildCount());
+    for(var i = 0; null == constant && i < node.getChildCount(); ++i)
+    {
+      var termNode = node.getChildNodeAt(i);
+      while(isConditionClause(termNode) && 1 == termNode.getChildCount())
+      {
+        termNode = termNode.getChildNodeAt(0);
+      }
+
+      if(isTrue(termNode))
+      {
+        constant = (conjunctive ? null : Boolean.TRUE);
+      }
+      else if(isFalse(termNode))
+      {
+        constant = (conjunctive ? Boolean.FALSE : null);
+      }
+      else if(MqlAstNode.Kind.CLAUSE.equals(termNode.getKind()) && "comment".equals(termNode.getLabel()))
+      {
+        // Comments are not emitted.
+      }
+      else if(MqlAstNode.Kind.CLAUSE.equals(termNode.getKind()) && clauseName.equals(termNode.getLabel()))
+      {
+        for(var j = 0; j < termNode.getChildCount(); ++j)
+        {
+          terms.add(termNode.getChildNodeAt(j));
+        }
+      }
+      else
+      {
+        terms.add(termNode);
+      }
+    }
+
+    if(null == constant)
+    {
+      removeDuplicates(terms);
+
+      if(conjunctive)
+      {
+        mergeEqualities(terms, "ne", "nin");
+        if(!mergeRanges(node, terms))
+        {
+          constant = Boolean.FALSE;
+        }
+      }
+      else
+      {
+        mergeEqualities(terms, "eq", "in");
+      }
+    }
+    if(null == constant && terms.isEmpty())
+    {
+      // An empty conjunction is true, and an empty disjunction is false.
+      constant = conjunctive;
+    }
+
+    removeChildren(node);
+    if(null == constant)
+    {
+      for(final var termNode : terms)
+      {
+        node.addChild(termNode);
+      }
+    }
+    else
+    {
+      setConstant(node, constant);
+    }
+  }
+
+  private static void removeDuplicates(List<MqlAstNode> terms)
+  {
+    if(terms.size() < 2)
+    {
+      return;
+    }
+
+    final var termKeys = new HashSet<List<Object>>();
+    terms.removeIf(termNode -> !termKeys.add(createStructureKey(termNode)));
+  }
+
+  /**
+   * Merges the terms that compare the same path with literals for equality into a list term.
+   */
+  private static void mergeEqualities(
+    List<MqlAstNode> terms,
+    String scalarOpName,
+    String listOpName
+  )
+  {
+    final var firstTermsByPath = new HashMap<String, MqlAstNode>();
+    final var valuesByPath = new LinkedHashMap<String, Set<Object>>();
+    final var mergedPaths = new HashSet<String>();
+    final var mergedTerms = new ArrayList<MqlAstNode>(terms.size());
+    for(final var termNode : terms)
+    {
+      final var path = findMergeablePath(termNode, scalarOpName, listOpName);
+      if(null == path)
+      {
+        mergedTerms.add(termNode);
+        continue;
+      }
+
+      var values = valuesByPath.get(path);
+      if(null == values)
+      {
+        values = new LinkedHashSet<>();
+        valuesByPath.put(path, values);
+        firstTermsByPath.put(path, termNode);
+        mergedTerms.add(termNode);
+      }
+      else
+      {
+        mergedPaths.add(path);
+      }
+
+      for(var i = 1; i < termNode.getChildCount(); ++i)
+      {
+        values.add(termNode.getChildNodeAt(i).getValue());
+      }
+      if(values.size() < termNode.getChildCount() - 1)
+      {
+        mergedPaths.add(path);
+      }
+    }
+
+    for(final var path : mergedPaths)
+    {
+      final var termNode = firstTermsByPath.get(path);
+      final var nodeRegistry = termNode.getNodeRegistry();
+      while(termNode.getChildCount() > 1)
+      {
+        termNode.removeChild(termNode.getChildNodeAt(termNode.getChildCount() - 1));
+      }
+
+      termNode.setLabel(listOpName);
+      for(final var value : valuesByPath.get(path))
+      {
+        termNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, value));
+      }
+    }
+
+    if(mergedTerms.size() < terms.size())
+    {
+      terms.clear();
+      terms.addAll(mergedTerms);
+    }
+  }
+
+  /**
+   * Merges the comparisons of the same path with literals into an interval.
+   *
+   * @return {@code false} if the terms contradict each other.
+   */
+  private boolean mergeRanges(
+    MqlAstNode clauseNode,
+    List<MqlAstNode> terms
+  )
+  {
+    final var termsByPath = new LinkedHashMap<String, List<MqlAstNode>>();
+    for(final var termNode : terms)
+    {
+      if(isRangeTerm(termNode))
+      {
+        termsByPath
+          .computeIfAbsent(termNode.getChildNodeAt(0).getValue().toString(), (k) -> new ArrayList<>())
+          .add(termNode);
+      }
+    }
+
+    final var removedTerms = new HashSet<MqlAstNode>();
+    for(final var pathTerms : termsByPath.values())
+    {
+      if(pathTerms.size() < 2)
+      {
+        continue;
+      }
+
+      final var values = convertRangeValues(clauseNode, pathTerms);
+      if(null == values)
+      {
+        continue;
+      }
+
+      MqlAstNode eqNode = null;
+      MqlAstNode lowerNode = null;
+      MqlAstNode upperNode = null;
+      Comparable<?> eqValue = null;
+      Comparable<?> lowerValue = null;
+      Comparable<?> upperValue = null;
+      for(var i = 0; i < pathTerms.size(); ++i)
+      {
+        final var termNode = pathTerms.get(i);
+        final var value = values.get(i);
+        switch(termNode.getLabel())
+        {
+        case "eq":
+          if(null != eqNode && 0 != compare(eqValue, value))
+          {
+            return false;
+          }
+          if(null == eqNode)
+          {
+            eqNode = termNode;
+            eqValue = value;
+          }
+          break;
+        case "gte":
+        case "gt":
+          if(null == lowerNode || isTighter(termNode, value, lowerValue, 1))
+          {
+            lowerNode = termNode;
+            lowerValue = value;
+          }
+          break;
+        case "lte":
+        case "lt":
+          if(null == upperNode || isTighter(termNode, value, upperValue, -1))
+          {
+            upperNode = termNode;
+            upperValue = value;
+          }
+          break;
+        default:
+          throw new IllegalStateException();
+        }
+      }
+
+      if(null != lowerNode && null != upperNode && !isWithin(lowerValue, lowerNode, upperValue, upperNode))
+      {
+        return false;
+      }
+      if(null != eqNode)
+      {
+        if(null != lowerNode && !isWithin(lowerValue, lowerNode, eqValue, eqNode))
+        {
+          return false;
+        }
+        if(null != upperNode && !isWithin(eqValue, eqNode, upperValue, upperNode))
+        {
+          return false;
+        }
+
+        // The equality implies the bounds.
+        lowerNode = null;
+        upperNode = null;
+      }
+
+      for(final var termNode : pathTerms)
+      {
+        if(termNode != eqNode && termNode != lowerNode && termNode != upperNode)
+        {
+          removedTerms.add(termNode);
+        }
+      }
+    }
+    terms.removeIf(removedTerms::contains);
+
+    return true;
+  }
+
+  /**
+   * @return The values converted to the java type of the path, or {@code null} if they cannot be ordered as the
+   *         database orders them.
+   */
+  private List<Comparable<?>> convertRangeValues(
+    MqlAstNode clauseNode,
+    List<MqlAstNode> pathTerms
+  )
+  {
+    final var path = (JpaEntityAttributePath)pathTerms
+      .get(0)
+      .getChildNodeAt(0)
+      .getValue();
+    final var javaType = findJavaTypeOf(clauseNode, path);
+    if(null == javaType || !ORDERED_JAVA_TYPES.contains(javaType))
+    {
+      return null;
+    }
+
+    final var values = new ArrayList<Comparable<?>>(pathTerms.size());
+    for(final var termNode : pathTerms)
+    {
+      Object value = null;
+      try
+      {
+        value = typeConverter.convertType(termNode.getChildNodeAt(1).getValue(), javaType);
+      }
+      catch(final RuntimeException re)
+      {
+        // Reported on binding.
+        return null;
+      }
+      if(!(value instanceof Comparable<?>))
+      {
+        return null;
+      }
+
+      values.add((Comparable<?>)value);
+    }
+
+    return values;
+  }
+
+  /**
+   * Finds the java type of the path from the sub queries that enclose {@code node}.
+   *
+   * @return {@code null} if the path cannot be resolved.
+   */
+  private Class<?> findJavaTypeOf(
+    MqlAstNode node,
+    JpaEntityAttributePath path
+  )
+  {
+    if(path.size() < 2)
+    {
+      return null;
+    }
+
+    final var alias = path.get(0);
+    for(var currentNode = node; null != currentNode; currentNode = currentNode.getParent())
+    {
+      if(!isSubQueryRootNode(currentNode) || currentNode.getChildCount() < 2)
+      {
+        continue;
+      }
+
+      final var entityNameNode = currentNode.getChildNodeAt(0);
+      final var aliasNode = currentNode.getChildNodeAt(1);
+      if(!"entityName".equals(entityNameNode.getLabel()) || !alias.equals(aliasNode.getValue()))
+      {
+        continue;
+      }
+
+      final var entityType = metamodelIndex
+        .findEntityTypeByEntityName((String)entityNameNode.getValue())
+        .orElse(null);
+      if(null == entityType)
+      {
+        return null;
+      }
+
+      try
+      {
+        return metamodelIndex.findJavaTypeOrThrow(entityType, String.join(".", path.subList(1, path.size())));
+      }
+      catch(final InvalidAttributePathException iape)
+      {
+        // Reported by the emitter.
+        return null;
+      }
+    }
+
+    return null;
+  }
+
+  private static String findMergeablePath(
+    MqlAstNode termNode,
+    String scalarOpName,
+    String listOpName
+  )
+  {
+    if(!isComparisonWithLiterals(termNode))
+    {
+      return null;
+    }
+
+    final var opName = termNode.getLabel();
+    if(scalarOpName.equals(opName))
+    {
+      if(2 != termNode.getChildCount() || !isBindableScalar(termNode.getChildNodeAt(1).getValue()))
+      {
+        return null;
+      }
+    }
+    else if(listOpName.equals(opName))
+    {
+      if(2 == termNode.getChildCount() && termNode.getChildNodeAt(1).getValue() instanceof MqlParameterReference)
+      {
+        return null;
+      }
+    }
+    else
+    {
+      return null;
+    }
+
+    return termNode
+      .getChildNodeAt(0)
+      .getValue()
+      .toString();
+  }
+
+  private static boolean isRangeTerm(MqlAstNode termNode)
+  {
+    if(!isComparisonWithLiterals(termNode) || 2 != termNode.getChildCount())
+    {
+      return false;
+    }
+
+    switch(termNode.getLabel())
+    {
+    case "eq":
+    case "gte":
+    case "gt":
+    case "lte":
+    case "lt":
+      return isBindableScalar(termNode.getChildNodeAt(1).getValue());
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * @return {@code true} if the first child is an attribute path and the other children are literals.
+   */
+  private static boolean isComparisonWithLiterals(MqlAstNode node)
+  {
+    if(!MqlAstNode.Kind.VALUE_OPERATOR.equals(node.getKind())
+      || node.getChildCount() < 1
+      || !MqlAstNode.Kind.ATTRIBUTE_PATH.equals(node.getChildNodeAt(0).getKind()))
+    {
+      return false;
+    }
+
+    for(var i = 1; i < node.getChildCount(); ++i)
+    {
+      if(!MqlAstNode.Kind.LITERAL.equals(node.getChildNodeAt(i).getKind()))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static boolean isBindableScalar(Object value)
+  {
+    return null != value
+      && !(value instanceof MqlParameterReference)
+      && !(value instanceof Collection<?>)
+      && !(value instanceof Map<?, ?>)
+      && !value.getClass().isArray();
+  }
+
+  /**
+   * @param direction
+   *          {@code 1} for a lower bound, {@code -1} for an upper bound.
+   */
+  private static boolean isTighter(
+    MqlAstNode boundNode,
+    Comparable<?> value,
+    Comparable<?> currentValue,
+    int direction
+  )
+  {
+    final var result = compare(value, currentValue) * direction;
+
+    return result > 0 || (0 == result && isExclusive(boundNode));
+  }
+
+  /**
+   * @return {@code true} if a value can be greater than or equal to the lower bound and less than or equal to the
+   *         upper bound at once.
+   */
+  private static boolean isWithin(
+    Comparable<?> lowerValue,
+    MqlAstNode lowerNode,
+    Comparable<?> upperValue,
+    MqlAstNode upperNode
+  )
+  {
+    final var result = compare(lowerValue, upperValue);
+
+    return result < 0 || (0 == result && !isExclusive(lowerNode) && !isExclusive(upperNode));
+  }
+
+  private static boolean isExclusive(MqlAstNode termNode)
+  {
+    return "gt".equals(termNode.getLabel()) || "lt".equals(termNode.getLabel());
+  }
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static int compare(
+    Comparable lhs,
+    Comparable rhs
+  )
+  {
+    return lhs.compareTo(rhs);
+  }
+
+  private static List<Object> createStructureKey(MqlAstNode termNode)
+  {
+    final var key = new ArrayList<Object>();
+    final var nodeIter = termNode.preOrderIterator();
+    while(nodeIter.hasNext())
+    {
+      final var node = nodeIter.next();
+      final var value = node.getValue();
+      key.add(node.getKind());
+      key.add(node.getLabel());
+      // Paths are compared by their texts.
+      key.add(value instanceof JpaEntityAttributePath ? value.toString() : value);
+      key.add(node.getChildCount());
+    }
+
+    return key;
+  }
+
+  private static boolean isConditionClause(MqlAstNode node)
+  {
+    return MqlAstNode.Kind.CLAUSE.equals(node.getKind())
+      && ("and".equals(node.getLabel()) || "or".equals(node.getLabel()));
+  }
+
+  private static boolean isSubQueryRootNode(MqlAstNode node)
+  {
+    return MqlAstNode.Kind.CLAUSE.equals(node.getKind())
+      && ("jpqlExists".equals(node.getLabel())
+        || "nJpqlExists".equals(node.getLabel()));
+  }
+
+  private static boolean isTrue(MqlAstNode node)
+  {
+    return MqlAstNode.Kind.CLAUSE.equals(node.getKind())
+      && "and".equals(node.getLabel())
+      && 0 == node.getChildCount();
+  }
+
+  /**
+   * Replaces the node with an empty {@code $and} clause if {@code value} is {@code true}, or a {@code false} clause
+   * otherwise.
+   */
+  private static void setConstant(
+    MqlAstNode node,
+    boolean value
+  )
+  {
+    removeChildren(node);
+    node.setKind(MqlAstNode.Kind.CLAUSE);
+    node.setLabel(value ? "and" : FALSE_CLAUSE_LABEL);
+    node.setValue(null);
+  }
+
+  private static void removeChildren(MqlAstNode node)
+  {
+    for(var i = node.getChildCount(); i > 0;)
+    {
+      --i;
+      node.removeChild(node.getChildNodeAt(i));
+    }
+  }
+
+  /**
+   * The java types whose natural order is the order of the database.
+   */
+  private static final Set<Class<?>> ORDERED_JAVA_TYPES = Set.of(
+    byte.class,
+    short.class,
+    int.class,
+    long.class,
+    float.class,
+    double.class,
+    Byte.class,
+    Short.class,
+    Integer.class,
+    Long.class,
+    Float.class,
+    Double.class,
+    BigInteger.class,
+    BigDecimal.class,
+    Instant.class,
+    LocalDate.class,
+    LocalDateTime.class,
+    LocalTime.class);
+
+  private final MetamodelIndex metamodelIndex;
+
+  private final MqlTypeConverter typeConverter;
+}
@@ -0,0 +1,163 @@
+package kaphein.jpa.mql;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.persistence.metamodel.Attribute;
+
+/**
+ * Reads an attribute of entities by a method handle that is resolved once per attribute and shared by all filters.
+ * <p>
+ * A public getter of the declaring class is preferred to the field so that lazy proxies are initialized.
+ */
+final class MqlAttributeAccessor
+{
+  static MqlAttributeAccessor of(Attribute<?, ?> attribute)
+  {
+    final var member = attribute.getJavaMember();
+    if(null == member)
+    {
+      throw new MqlException(String.format("Attribute %s has no java member to read", attribute.getName()));
+    }
+
+    return ACCESSORS.computeIfAbsent(member, (k) ->
+    {
+      final var accessMember = resolveAccessMember(k);
+
+      return new MqlAttributeAccessor(attribute.getName(), accessMember, createHandle(accessMember));
+    });
+  }
+
+  private MqlAttributeAccessor(
+    String attributeName,
+    Member accessMember,
+    MethodHandle handle
+  )
+  {
+    this.attributeName = attributeName;
+    this.accessMember = accessMember;
+    this.handle = handle;
+  }
+
+  public String getAttributeName()
+  {
+    return attributeName;
+  }
+
+  /**
+   * @return The getter {@link Method} or the {@link Field} that is read.
+   */
+  public Member getAccessMember()
+  {
+    return accessMember;
+  }
+
+  public Object read(Object target)
+  {
+    try
+    {
+      return (Object)handle.invokeExact(target);
+    }
+    catch(final RuntimeException | Error e)
+    {
+      throw e;
+    }
+    catch(final Throwable t)
+    {
+      throw new MqlException(String.format(
+        "Cannot read attribute %s of %s: %s",
+        attributeName,
+        target.getClass().getName(),
+        t.getMessage()));
+    }
+  }
+
+  private static Member resolveAccessMember(Member member)
+  {
+    if(member instanceof Method)
+    {
+      return member;
+    }
+
+    final var getter = findGetter(member.getDeclaringClass(), member.getName());
+    if(null != getter)
+    {
+      return getter;
+    }
+
+    if(member instanceof Field)
+    {
+      return member;
+    }
+
+    throw new MqlException(String.format("Cannot read member %s", member));
+  }
+
+  private static MethodHandle createHandle(Member accessMember)
+  {
+    MethodHandle handle = null;
+    try
+    {
+      final var lookup = MethodHandles.lookup();
+      if(accessMember instanceof Method)
+      {
+        final var method = (Method)accessMember;
+        method.setAccessible(true);
+        handle = lookup.unreflect(method);
+      }
+      else
+      {
+        final var field = (Field)accessMember;
+        field.setAccessible(true);
+        handle = lookup.unreflectGetter(field);
+      }
+    }
+    catch(final IllegalAccessException | RuntimeException e)
+    {
+      throw new MqlException(String.format("Cannot read member %s: %s", accessMember, e.getMessage()));
+    }
+
+    return handle.asType(MethodType.methodType(Object.class, Object.class));
+  }
+
+  private static Method findGetter(
+    Class<?> targetClass,
+    String attrName
+  )
+  {
+    final var suffix = Character.toUpperCase(attrName.charAt(0)) + attrName.substring(1);
+    for(final var prefix : GETTER_PREFIXES)
+    {
+      try
+      {
+        final var method = targetClass.getMethod(prefix + suffix);
+        if(!Modifier.isStatic(method.getModifiers()) && void.class != method.getReturnType())
+        {
+          return method;
+        }
+      }
+      catch(final NoSuchMethodException nsme)
+      {
+        // Does nothing.
+      }
+    }
+
+    return null;
+  }
+
+  private static final String[] GETTER_PREFIXES = {"get", "is"};
+
+  private static final ConcurrentHashMap<Member, MqlAttributeAccessor> ACCESSORS = new ConcurrentHashMap<>();
+
+  private final String attributeName;
+
+  private final Member accessMember;
+
+  private final MethodHandle handle;
+}
@@ -0,0 +1,289 @@
+package kaphein.jpa.mql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import kaphein.jpa.core.AssertArg;
+
+/**
+ * Filters, sorts and pages collections of entities in memory, e.g. snapshots held in an application cache.
+ * <p>
+ * The filter is evaluated by parallel streams on the common fork/join pool if a collection has at least
+ * {@link #getParallelThreshold()} items. If a limit is set, the items of the page are selected by a heap bounded to
+ * {@code offset + limit} items instead of sorting all matching items. Items that compare equal keep the order of the
+ * collection.
+ * <p>
+ * The associations that the filter and the order by terms read must be loaded before a collection is filtered in
+ * parallel, as lazy loading through a persistence context is not thread-safe.
+ *
+ * @see MqlQueryBuilder#compileCollectionQuery()
+ */
+public class MqlCollectionQuery<E>
+{
+  /**
+   * The default minimum size of a collection that is filtered by parallel streams.
+   */
+  public static final int DEFAULT_PARALLEL_THRESHOLD = 8192;
+
+  /**
+   * @param comparator
+   *          {@code null} if there is no order by term.
+   * @param indexConditions
+   *          The conditions that every matching item satisfies, which {@link MqlEntityReplica} answers by its indexes.
+   */
+  MqlCollectionQuery(
+    Predicate<E> predicate,
+    Comparator<E> comparator,
+    List<MqlIndexCondition> indexConditions,
+    int limit,
+    int offset,
+    int parallelThreshold
+  )
+  {
+    this.predicate = AssertArg.isNotNull(predicate, "predicate");
+    this.comparator = comparator;
+    this.indexConditions = AssertArg.isNotNull(indexConditions, "indexConditions");
+    this.limit = limit;
+    this.offset = offset;
+    this.parallelThreshold = parallelThreshold;
+  }
+
+  public Predicate<E> getPredicate()
+  {
+    return predicate;
+  }
+
+  /**
+   * @return The comparator of the order by terms, or {@code null} if there is none.
+   */
+  public Comparator<E> getComparator()
+  {
+    return comparator;
+  }
+
+  public int getLimit()
+  {
+    return limit;
+  }
+
+  public int getOffset()
+  {
+    return offset;
+  }
+
+  public int getParallelThreshold()
+  {
+    return parallelThreshold;
+  }
+
+  /**
+   * @return The matching items of the page in order.
+   */
+  public List<E> getResultList(Collection<? extends E> items)
+  {
+    return getPage(items).getItems();
+  }
+
+  /**
+   * @return The matching items of the page in order, and the exact count of all matching items.
+   */
+  public MqlPage<E> getPage(Collection<? extends E> items)
+  {
+    final var list = toRandomAccessList(AssertArg.isNotNull(items, "items"));
+    final var parallel = list.size() >= parallelThreshold;
+    final var pageEnd = (long)offset + limit;
+
+    if(null == comparator || pageEnd >= list.size())
+    {
+      final var matches = filter(list, parallel);
+      if(null != comparator)
+      {
+        sort(matches, parallel);
+      }
+
+      return createPage(matches, matches.size());
+    }
+
+    final var heap = (parallel ? IntStream.range(0, list.size()).parallel() : IntStream.range(0, list.size()))
+      .filter((index) -> predicate.test(list.get(index)))
+      .collect(
+        () -> new BoundedHeap<E>(list, comparator, (int)pageEnd),
+        BoundedHeap::offer,
+        BoundedHeap::merge);
+
+    return createPage(heap.toSortedList(), heap.getOfferedCount());
+  }
+
+  /**
+   * @return The number of the matching items.
+   */
+  public long count(Collection<? extends E> items)
+  {
+    final var stream = (AssertArg.isNotNull(items, "items").size() >= parallelThreshold
+      ? items.parallelStream()
+      : items.stream());
+
+    return stream
+      .filter(predicate)
+      .count();
+  }
+
+  List<MqlIndexCondition> getIndexConditions()
+  {
+    return indexConditions;
+  }
+
+  /**
+   * @param sortedMatches
+   *          The matching items in order, at least up to the end of the page.
+   */
+  private MqlPage<E> createPage(
+    List<E> sortedMatches,
+    long matchCount
+  )
+  {
+    final var from = Math.min(offset, sortedMatches.size());
+    final var to = (int)Math.min((long)offset + limit, sortedMatches.size());
+    final var items = new ArrayList<E>(sortedMatches.subList(from, to));
+
+    return new MqlPage<>(items, matchCount, true, offset + items.size() < matchCount);
+  }
+
+  private List<E> filter(
+    List<E> list,
+    boolean parallel
+  )
+  {
+    return (parallel ? list.parallelStream() : list.stream())
+      .filter(predicate)
+      .collect(Collectors.toCollection(ArrayList::new));
+  }
+
+  @SuppressWarnings("unchecked")
+  private void sort(
+    List<E> matches,
+    boolean parallel
+  )
+  {
+    if(parallel)
+    {
+      // Arrays.parallelSort is a stable merge sort like List.sort.
+      final var array = (E[])matches.toArray();
+      Arrays.parallelSort(array, comparator);
+      matches.clear();
+      matches.addAll(Arrays.asList(array));
+    }
+    else
+    {
+      matches.sort(comparator);
+    }
+  }
+
+  /**
+   * The items are only read, so the list of a subtype is used as is.
+   */
+  @SuppressWarnings("unchecked")
+  private List<E> toRandomAccessList(Collection<? extends E> items)
+  {
+    return (items instanceof List<?> && items instanceof RandomAccess
+      ? (List<E>)items
+      : new ArrayList<E>(items));
+  }
+
+  /**
+   * Keeps the indexes of the smallest items offered, ranking equal items by their indexes.
+   */
+  private static class BoundedHeap<E>
+  {
+    BoundedHeap(
+      List<E> items,
+      Comparator<E> comparator,
+      int capacity
+    )
+    {
+      this.items = items;
+      this.comparator = comparator;
+      this.capacity = capacity;
+      heap = new PriorityQueue<>(Math.min(capacity, 1024) + 1, (lhs, rhs) -> compareRanks(rhs, lhs));
+    }
+
+    void offer(int index)
+    {
+      ++offeredCount;
+      add(index);
+    }
+
+    void merge(BoundedHeap<E> other)
+    {
+      offeredCount += other.offeredCount;
+      other.heap.forEach(this::add);
+    }
+
+    long getOfferedCount()
+    {
+      return offeredCount;
+    }
+
+    List<E> toSortedList()
+    {
+      return heap
+        .stream()
+        .sorted(this::compareRanks)
+        .map(items::get)
+        .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private void add(int index)
+    {
+      if(heap.size() < capacity)
+      {
+        heap.add(index);
+      }
+      else if(!heap.isEmpty() && compareRanks(index, heap.peek()) < 0)
+      {
+        heap.poll();
+        heap.add(index);
+      }
+    }
+
+    private int compareRanks(
+      int lhs,
+      int rhs
+    )
+    {
+      final var result = comparator.compare(items.get(lhs), items.get(rhs));
+
+      return (0 != result ? result : Integer.compare(lhs, rhs));
+    }
+
+    private final List<E> items;
+
+    private final Comparator<E> comparator;
+
+    private final int capacity;
+
+    private final PriorityQueue<Integer> heap;
+
+    private long offeredCount;
+  }
+
+  private final Predicate<E> predicate;
+
+  private final Comparator<E> comparator;
+
+  private final List<MqlIndexCondition> indexConditions;
+
+  private final int limit;
+
+  private final int offset;
+
+  private final int parallelThreshold;
+}
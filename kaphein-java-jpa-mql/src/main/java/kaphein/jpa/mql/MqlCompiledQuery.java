@@ -0,0 +1,760 @@
+package kaphein.jpa.mql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import kaphein.jpa.core.AssertArg;
+
+/**
+ * A compiled MQL query that depends only on the {@link jakarta.persistence.metamodel.Metamodel}.
+ * <p>
+ * Instances are immutable and thread-safe. Compile once and call {@link #bind(EntityManager)} with a request-scoped
+ * {@link EntityManager} to create the item query and the count query. The count query is created on its first use.
+ * A filter with {@code $param} placeholders is bound with {@link #bind(EntityManager, Map)}.
+ */
+public class MqlCompiledQuery<E>
+{
+  /**
+   * The name of the parameter of the ids of a page with id-first pagination.
+   */
+  static final String IDS_PARAMETER_NAME = "__ids";
+
+  /**
+   * The number of ids by which the entities are fetched at a time when the items are streamed with id-first
+   * pagination.
+   */
+  static final int DEFAULT_ID_BATCH_SIZE = 100;
+
+  MqlCompiledQuery(
+    Class<? extends E> entityJavaType,
+    String itemQueryString,
+    String countQueryString,
+    String orderByClause,
+    List<MqlParameterSlot> parameterSlots,
+    List<?> parameterValues,
+    MqlTypeConverter typeConverter,
+    int limit,
+    int offset,
+    boolean countQueryEnabled,
+    List<MqlKeysetKey> keysetKeys,
+    boolean emptyResult,
+    MqlFetchPlan fetchPlan,
+    String idQueryString,
+    String itemByIdsQueryString,
+    boolean hasNextProbe,
+    MqlCountStrategy countStrategy,
+    String cappedCountQueryString,
+    Collection<Class<?>> touchedEntityJavaTypes,
+    MqlResultCache resultCache,
+    int countParameterCount,
+    boolean collectionFetched
+  )
+  {
+    this.entityJavaType = AssertArg.isNotNull(entityJavaType, "entityJavaType");
+    this.itemQueryString = AssertArg.isNotBlank(itemQueryString, "itemQueryString");
+    this.countQueryString = AssertArg.isNotBlank(countQueryString, "countQueryString");
+    this.orderByClause = (null == orderByClause ? "" : orderByClause);
+    this.parameterSlots = Collections.unmodifiableList(new ArrayList<>(AssertArg.isNotNull(
+      parameterSlots,
+      "parameterSlots")));
+    this.parameterValues = (null == parameterValues
+      ? null
+      : Collections.unmodifiableList(new ArrayList<>(parameterValues)));
+    this.typeConverter = AssertArg.isNotNull(typeConverter, "typeConverter");
+    this.limit = limit;
+    this.offset = offset;
+    this.countQueryEnabled = countQueryEnabled;
+    this.keysetKeys = (null == keysetKeys
+      ? null
+      : Collections.unmodifiableList(new ArrayList<>(keysetKeys)));
+    this.emptyResult = emptyResult;
+    this.fetchPlan = fetchPlan;
+    this.idQueryString = idQueryString;
+    this.itemByIdsQueryString = itemByIdsQueryString;
+    this.hasNextProbe = hasNextProbe;
+    this.countStrategy = AssertArg.isNotNull(countStrategy, "countStrategy");
+    this.cappedCountQueryString = cappedCountQueryString;
+    this.touchedEntityJavaTypes = Collections.unmodifiableList(new ArrayList<>(AssertArg.isNotNull(
+      touchedEntityJavaTypes,
+      "touchedEntityJavaTypes")));
+    this.resultCache = resultCache;
+    this.countParameterCount = countParameterCount;
+    this.collectionFetched = collectionFetched;
+  }
+
+  /**
+   * @return The java type of the items, which is the item type of the projection if the query was compiled with one.
+   */
+  public Class<? extends E> getEntityJavaType()
+  {
+    return entityJavaType;
+  }
+
+  public String getItemQueryString()
+  {
+    return itemQueryString;
+  }
+
+  public String getCountQueryString()
+  {
+    return countQueryString;
+  }
+
+  /**
+   * @return The {@code ORDER BY} clause of the item query, or an empty string if there is no order by term.
+   */
+  public String getOrderByClause()
+  {
+    return orderByClause;
+  }
+
+  public List<MqlParameterSlot> getParameterSlots()
+  {
+    return parameterSlots;
+  }
+
+  /**
+   * @return The unconverted parameter values in the order of {@link #getParameterSlots()}, or {@code null} if the
+   *         values have not been captured.
+   */
+  public List<?> getParameterValues()
+  {
+    return parameterValues;
+  }
+
+  public int getLimit()
+  {
+    return limit;
+  }
+
+  public int getOffset()
+  {
+    return offset;
+  }
+
+  /**
+   * @return {@code false} if the count query is not created on binding.
+   */
+  public boolean isCountQueryEnabled()
+  {
+    return countQueryEnabled;
+  }
+
+  /**
+   * @return {@code true} if the item query is ordered for keyset pagination.
+   */
+  public boolean isKeysetPagination()
+  {
+    return null != keysetKeys;
+  }
+
+  /**
+   * @return {@code true} if the filter is found to match no entity at the compilation, so the queries need not be
+   *         executed.
+   */
+  public boolean isEmptyResult()
+  {
+    return emptyResult;
+  }
+
+  /**
+   * @return {@code true} if the item query fetches one row more than the limit to tell whether a next page exists
+   *         instead of counting.
+   */
+  public boolean isHasNextProbe()
+  {
+    return hasNextProbe;
+  }
+
+  public MqlCountStrategy getCountStrategy()
+  {
+    return countStrategy;
+  }
+
+  /**
+   * @return {@code true} if a page is fetched in two phases: the ids of the page first, then the entities by the ids.
+   */
+  public boolean isIdFirstPagination()
+  {
+    return null != idQueryString;
+  }
+
+  /**
+   * @return The query that selects the ids of a page with id-first pagination, or {@code null}.
+   */
+  public String getIdQueryString()
+  {
+    return idQueryString;
+  }
+
+  /**
+   * @return The associations fetched by the item query, or {@code null} if none.
+   */
+  public MqlFetchPlan getFetchPlan()
+  {
+    return fetchPlan;
+  }
+
+  /**
+   * @return The cache of the ids of pages and the counts, or {@code null} if the results are not cached.
+   */
+  public MqlResultCache getResultCache()
+  {
+    return resultCache;
+  }
+
+  /**
+   * Creates the queries with the parameter values captured at the compilation.
+   */
+  public MqlQueryBuildResult<E> bind(EntityManager entityManager)
+  {
+    if(null == parameterValues)
+    {
+      throw new MqlException("The parameter values have not been captured");
+    }
+
+    return bind(entityManager, parameterValues);
+  }
+
+  /**
+   * @param parameterValues
+   *          Unconverted parameter values in the order of {@link #getParameterSlots()}.
+   */
+  public MqlQueryBuildResult<E> bind(
+    EntityManager entityManager,
+    List<?> parameterValues
+  )
+  {
+    AssertArg.isNotNull(entityManager, "entityManager");
+    AssertArg.isNotNull(parameterValues, "parameterValues");
+
+    final var convertedValues = convertParameterValues(parameterValues);
+
+    return new MqlQueryBuildResult<E>(
+      entityManager,
+      () -> createItemQuery(entityManager, convertedValues),
+      (countQueryEnabled ? () -> createCountQuery(entityManager, convertedValues) : null),
+      (countQueryEnabled ? () -> countItems(entityManager, convertedValues) : null),
+      (null == idQueryString ? null : () -> fetchItems(entityManager, convertedValues)),
+      (null == idQueryString ? null : (batchSize) -> streamItemsByIds(entityManager, convertedValues, batchSize)),
+      this::createPage,
+      keysetKeys,
+      emptyResult,
+      (getFetchLimit() > limit ? limit : null),
+      (collectionFetched && (limit < Integer.MAX_VALUE || offset > 0)));
+  }
+
+  /**
+   * Creates the queries with the captured parameter values whose {@code $param} placeholders are replaced with the
+   * values of {@code placeholderValues}.
+   * <p>
+   * A {@code null} placeholder value is bound as is and does not turn a comparison into a null check.
+   *
+   * @param placeholderValues
+   *          Unconverted values by placeholder name. Values are converted to the java type of each slot.
+   */
+  public MqlQueryBuildResult<E> bind(
+    EntityManager entityManager,
+    Map<String, ?> placeholderValues
+  )
+  {
+    return bind(entityManager, resolveParameterValues(placeholderValues));
+  }
+
+  /**
+   * @return The captured parameter values whose placeholders are replaced with the values of
+   *         {@code placeholderValues}.
+   */
+  List<Object> resolveParameterValues(Map<String, ?> placeholderValues)
+  {
+    AssertArg.isNotNull(placeholderValues, "placeholderValues");
+    if(null == parameterValues)
+    {
+      throw new MqlException("The parameter values have not been captured");
+    }
+
+    return resolveParameterValues(parameterSlots, parameterValues, placeholderValues);
+  }
+
+  Object[] convertParameterValues(List<?> parameterValues)
+  {
+    return convertParameterValues(parameterSlots, parameterValues, typeConverter);
+  }
+
+  /**
+   * Replaces the values of the placeholder slots with the values of {@code placeholderValues}.
+   * <p>
+   * Shared by the queries that bind the parameters of the slots issued by {@link MqlQueryEmitter}.
+   */
+  static List<Object> resolveParameterValues(
+    List<MqlParameterSlot> parameterSlots,
+    List<?> parameterValues,
+    Map<String, ?> placeholderValues
+  )
+  {
+    final var resolvedValues = new ArrayList<Object>(parameterValues.size());
+    for(var i = 0; i < parameterValues.size(); ++i)
+    {
+      final var placeholderName = parameterSlots
+        .get(i)
+        .getPlaceholderName();
+      if(null == placeholderName)
+      {
+        resolvedValues.add(parameterValues.get(i));
+      }
+      else if(placeholderValues.containsKey(placeholderName))
+      {
+        resolvedValues.add(placeholderValues.get(placeholderName));
+      }
+      else
+      {
+        throw new MqlException(String.format("Parameter %s is not bound", placeholderName));
+      }
+    }
+
+    return resolvedValues;
+  }
+
+  /**
+   * Converts the values to the java types of the slots.
+   */
+  static Object[] convertParameterValues(
+    List<MqlParameterSlot> parameterSlots,
+    List<?> parameterValues,
+    MqlTypeConverter typeConverter
+  )
+  {
+    if(parameterValues.size() != parameterSlots.size())
+    {
+      throw new MqlException(String.format(
+        "The query requires %d parameters, but %d were given",
+        parameterSlots.size(),
+        parameterValues.size()));
+    }
+
+    final var convertedValues = new Object[parameterSlots.size()];
+    for(var i = 0; i < convertedValues.length; ++i)
+    {
+      convertedValues[i] = parameterSlots
+        .get(i)
+        .convert(parameterValues.get(i), typeConverter);
+    }
+
+    return convertedValues;
+  }
+
+  TypedQuery<? extends E> createItemQuery(
+    EntityManager entityManager,
+    Object[] convertedValues
+  )
+  {
+    final var itemQuery = entityManager
+      .createQuery(itemQueryString, entityJavaType)
+      .setFirstResult(offset);
+    if(limit < Integer.MAX_VALUE)
+    {
+      // Hibernate does not end the stream of a fetched collection with the largest max results.
+      itemQuery.setMaxResults(getFetchLimit());
+    }
+    setParameters(itemQuery, convertedValues);
+    if(null != fetchPlan)
+    {
+      fetchPlan.applyTo(itemQuery, entityManager, entityJavaType);
+    }
+
+    return itemQuery;
+  }
+
+  /**
+   * Executes the item query, or the id query and the query by ids with id-first pagination.
+   */
+  List<? extends E> fetchItems(
+    EntityManager entityManager,
+    Object[] convertedValues
+  )
+  {
+    if(emptyResult)
+    {
+      return Collections.emptyList();
+    }
+
+    if(null == idQueryString)
+    {
+      return createItemQuery(entityManager, convertedValues).getResultList();
+    }
+
+    final var ids = fetchPageIds(entityManager, convertedValues);
+    if(ids.isEmpty())
+    {
+      return Collections.emptyList();
+    }
+
+    return fetchItemsByIds(entityManager, ids);
+  }
+
+  /**
+   * Selects the ids of the page by the id query, or takes them from the result cache.
+   */
+  private List<Object> fetchPageIds(
+    EntityManager entityManager,
+    Object[] convertedValues
+  )
+  {
+    if(null == resultCache)
+    {
+      return fetchIds(entityManager, convertedValues);
+    }
+
+    return resultCache.get(
+      Arrays.asList("ids", idQueryString, getFetchLimit(), offset, Arrays.asList(convertedValues)),
+      touchedEntityJavaTypes,
+      () -> List.copyOf(fetchIds(entityManager, convertedValues)));
+  }
+
+  /**
+   * Selects the ids of the items by the id query, or takes them from the result cache, and fetches the entities by the ids in batches with the fetch plan
+   * as the items are streamed, so collections fetched with the entities are not paginated in memory.
+   * <p>
+   * The ids are selected at once as the result set of the id query would be closed by the queries of the batches.
+   *
+   * @param batchSize
+   *          The number of ids by which the entities are fetched at a time, or {@code null} to use
+   *          {@link #DEFAULT_ID_BATCH_SIZE}.
+   */
+  Stream<E> streamItemsByIds(
+    EntityManager entityManager,
+    Object[] convertedValues,
+    Integer batchSize
+  )
+  {
+    final var ids = fetchPageIds(entityManager, convertedValues);
+    final var idBatchSize = (null == batchSize ? DEFAULT_ID_BATCH_SIZE : batchSize);
+    final var iter = new Iterator<E>()
+    {
+      @Override
+      public boolean hasNext()
+      {
+        while(!batchIter.hasNext() && nextIdIndex < ids.size())
+        {
+          final var batchIds = ids.subList(nextIdIndex, Math.min(nextIdIndex + idBatchSize, ids.size()));
+          nextIdIndex += batchIds.size();
+          batchIter = fetchItemsByIds(entityManager, batchIds).iterator();
+        }
+
+        return batchIter.hasNext();
+      }
+
+      @Override
+      public E next()
+      {
+        if(!hasNext())
+        {
+          throw new NoSuchElementException();
+        }
+
+        return batchIter.next();
+      }
+
+      private Iterator<E> batchIter = Collections.emptyIterator();
+
+      private int nextIdIndex;
+    };
+
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iter, Spliterator.ORDERED), false);
+  }
+
+  /**
+   * Fetches the entities by the ids with the fetch plan in the order of the ids.
+   */
+  private List<E> fetchItemsByIds(
+    EntityManager entityManager,
+    List<Object> ids
+  )
+  {
+    final var itemQuery = entityManager
+      .createQuery(itemByIdsQueryString, entityJavaType)
+      .setParameter(IDS_PARAMETER_NAME, ids);
+    if(null != fetchPlan)
+    {
+      fetchPlan.applyTo(itemQuery, entityManager, entityJavaType);
+    }
+
+    // Restores the order of the ids, which the query by ids does not keep.
+    final var persistenceUnitUtil = entityManager
+      .getEntityManagerFactory()
+      .getPersistenceUnitUtil();
+    final var itemsById = new HashMap<Object, E>();
+    for(final var item : itemQuery.getResultList())
+    {
+      itemsById.put(persistenceUnitUtil.getIdentifier(item), item);
+    }
+
+    final var items = new ArrayList<E>(ids.size());
+    for(final var id : ids)
+    {
+      final var item = itemsById.get(id);
+      if(null != item)
+      {
+        items.add(item);
+      }
+    }
+
+    return items;
+  }
+
+  /**
+   * Counts the items with the count strategy. A capped count exceeds the maximum count by one if more items match.
+   */
+  long countItems(
+    EntityManager entityManager,
+    Object[] convertedValues
+  )
+  {
+    // An estimate is not cached as it is cheap and follows the statistics of the database.
+    if(null == resultCache || MqlCountStrategy.Mode.ESTIMATED.equals(countStrategy.getMode()))
+    {
+      return queryCount(entityManager, convertedValues);
+    }
+
+    return resultCache.get(
+      Arrays.asList(
+        "count",
+        countQueryString,
+        countStrategy.getMode(),
+        countStrategy.getMaxCount(),
+        Arrays.asList(convertedValues).subList(0, countParameterCount)),
+      touchedEntityJavaTypes,
+      () -> queryCount(entityManager, convertedValues));
+  }
+
+  /**
+   * Trims the row fetched beyond the limit by has-next probing, and caps the total count.
+   *
+   * @param fetchedItems
+   *          The items fetched by {@link #fetchItems(EntityManager, Object[])} or the item query.
+   * @param totalCount
+   *          The count by {@link #countItems(EntityManager, Object[])}, or {@code null} if the count query is
+   *          disabled.
+   */
+  MqlPage<E> createPage(
+    List<? extends E> fetchedItems,
+    Long totalCount
+  )
+  {
+    var items = fetchedItems;
+    var count = totalCount;
+    var totalCountExact = true;
+    Boolean hasNext = null;
+    if(null != totalCount)
+    {
+      final var fetchedCount = offset + (long)fetchedItems.size();
+      switch(countStrategy.getMode())
+      {
+      case CAPPED:
+        if(totalCount > countStrategy.getMaxCount())
+        {
+          // More items than the maximum count match, so the items up to the maximum count have next ones.
+          count = countStrategy.getMaxCount().longValue();
+          totalCountExact = false;
+          hasNext = (fetchedCount <= count ? true : null);
+        }
+        else
+        {
+          hasNext = fetchedCount < totalCount;
+        }
+        break;
+      case ESTIMATED:
+        totalCountExact = false;
+        break;
+      default:
+        hasNext = fetchedCount < totalCount;
+      }
+      if(countParameterCount < parameterSlots.size())
+      {
+        // The count covers all pages, and the position of the cursor among them is unknown.
+        hasNext = (fetchedItems.size() < limit ? false : null);
+      }
+    }
+    if(hasNextProbe)
+    {
+      hasNext = fetchedItems.size() > limit;
+      if(hasNext)
+      {
+        items = fetchedItems.subList(0, limit);
+      }
+    }
+
+    return new MqlPage<>(items, count, totalCountExact, hasNext);
+  }
+
+  TypedQuery<Long> createCountQuery(
+    EntityManager entityManager,
+    Object[] convertedValues
+  )
+  {
+    final var countQuery = entityManager.createQuery(countQueryString, Long.class);
+    setParameters(countQuery, convertedValues, countParameterCount);
+
+    return countQuery;
+  }
+
+  /**
+   * Creates a copy that shares the compiled texts and slots of this query.
+   */
+  MqlCompiledQuery<E> with(
+    List<?> parameterValues,
+    MqlQueryEmitterConfig<?> config
+  )
+  {
+    return new MqlCompiledQuery<>(
+      entityJavaType,
+      itemQueryString,
+      countQueryString,
+      orderByClause,
+      parameterSlots,
+      parameterValues,
+      config.getTypeConverter(),
+      config.getLimit(),
+      config.getOffset(),
+      config.isCountQueryEnabled(),
+      keysetKeys,
+      emptyResult,
+      fetchPlan,
+      idQueryString,
+      itemByIdsQueryString,
+      config.isHasNextProbe(),
+      config.getCountStrategy(),
+      cappedCountQueryString,
+      touchedEntityJavaTypes,
+      config.getResultCache(),
+      countParameterCount,
+      collectionFetched);
+  }
+
+  /**
+   * @return The limit plus the row that tells whether a next page exists with has-next probing.
+   */
+  private int getFetchLimit()
+  {
+    return ((hasNextProbe && limit < Integer.MAX_VALUE) ? limit + 1 : limit);
+  }
+
+  private List<Object> fetchIds(
+    EntityManager entityManager,
+    Object[] convertedValues
+  )
+  {
+    final var idQuery = entityManager
+      .createQuery(idQueryString, Object.class)
+      .setMaxResults(getFetchLimit())
+      .setFirstResult(offset);
+    setParameters(idQuery, convertedValues);
+
+    return idQuery.getResultList();
+  }
+
+  private long queryCount(
+    EntityManager entityManager,
+    Object[] convertedValues
+  )
+  {
+    switch(countStrategy.getMode())
+    {
+    case CAPPED:
+    {
+      final var cappedCountQuery = entityManager
+        .createQuery(cappedCountQueryString, Object.class)
+        .setMaxResults(countStrategy.getMaxCount() + 1);
+      setParameters(cappedCountQuery, convertedValues, countParameterCount);
+
+      return cappedCountQuery.getResultList().size();
+    }
+    case ESTIMATED:
+      return countStrategy
+        .getEstimator()
+        .estimate(entityManager, countQueryString, createCountQuery(entityManager, convertedValues));
+    default:
+      return createCountQuery(entityManager, convertedValues).getSingleResult();
+    }
+  }
+
+  private void setParameters(
+    TypedQuery<?> query,
+    Object[] convertedValues
+  )
+  {
+    setParameters(query, convertedValues, convertedValues.length);
+  }
+
+  /**
+   * Sets the leading {@code count} parameters, as the count queries do not take the parameters of the cursor.
+   */
+  private void setParameters(
+    TypedQuery<?> query,
+    Object[] convertedValues,
+    int count
+  )
+  {
+    for(var i = 0; i < count; ++i)
+    {
+      query.setParameter(parameterSlots.get(i).getName(), convertedValues[i]);
+    }
+  }
+
+  private final Class<? extends E> entityJavaType;
+
+  private final String itemQueryString;
+
+  private final String countQueryString;
+
+  private final String orderByClause;
+
+  private final List<MqlParameterSlot> parameterSlots;
+
+  private final List<?> parameterValues;
+
+  private final MqlTypeConverter typeConverter;
+
+  private final int limit;
+
+  private final int offset;
+
+  private final boolean countQueryEnabled;
+
+  private final List<MqlKeysetKey> keysetKeys;
+
+  private final boolean emptyResult;
+
+  private final MqlFetchPlan fetchPlan;
+
+  private final String idQueryString;
+
+  private final String itemByIdsQueryString;
+
+  private final boolean hasNextProbe;
+
+  private final MqlCountStrategy countStrategy;
+
+  private final String cappedCountQueryString;
+
+  private final List<Class<?>> touchedEntityJavaTypes;
+
+  private final MqlResultCache resultCache;
+
+  private final int countParameterCount;
+
+  private final boolean collectionFetched;
+}
@@ -0,0 +1,30 @@
+package kaphein.jpa.mql;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+/**
+ * Estimates the number of the items that match the filter instead of counting them, e.g. by the row estimate of the
+ * execution plan that a native {@code EXPLAIN} query returns, or by the statistics of the table.
+ *
+ * @see MqlCountStrategy#estimated(MqlCountEstimator)
+ */
+@FunctionalInterface
+public interface MqlCountEstimator
+{
+  /**
+   * @param entityManager
+   *          The entity manager that executes the count query.
+   * @param countQueryString
+   *          The JPQL of the exact count query.
+   * @param countQuery
+   *          The exact count query with the parameters set. It can be unwrapped to the query of the persistence provider,
+   *          or executed as a fallback.
+   * @return A non-negative estimate.
+   */
+  long estimate(
+    EntityManager entityManager,
+    String countQueryString,
+    TypedQuery<Long> countQuery
+  );
+}
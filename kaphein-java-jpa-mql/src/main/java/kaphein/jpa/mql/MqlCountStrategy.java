@@ -0,0 +1,128 @@
+package kaphein.jpa.mql;
+
+import java.util.Objects;
+
+import kaphein.jpa.core.AssertArg;
+
+/**
+ * How the total count of a page is obtained.
+ * <p>
+ * The total count of a capped or estimated strategy is not exact, which is reported by
+ * {@link MqlPage#isTotalCountExact()}. {@link MqlQueryBuildResult#getCountQuery()} always counts exactly.
+ */
+public final class MqlCountStrategy
+{
+  public static enum Mode
+  {
+    /**
+     * Executes {@code SELECT COUNT(*)}.
+     */
+    EXACT,
+
+    /**
+     * Selects the ids of at most one more item than the maximum count, and counts them.
+     */
+    CAPPED,
+
+    /**
+     * Asks a {@link MqlCountEstimator}.
+     */
+    ESTIMATED
+  }
+
+  public static MqlCountStrategy exact()
+  {
+    return EXACT;
+  }
+
+  /**
+   * Bounds the cost of counting to the maximum count. If more items match, the total count is the maximum count and
+   * reported as inexact, e.g. to display {@code 10,000+}.
+   */
+  public static MqlCountStrategy capped(int maxCount)
+  {
+    if(maxCount < 1 || maxCount == Integer.MAX_VALUE)
+    {
+      throw new IllegalArgumentException("maxCount must be positive and less than " + Integer.MAX_VALUE);
+    }
+
+    return new MqlCountStrategy(Mode.CAPPED, maxCount, null);
+  }
+
+  public static MqlCountStrategy estimated(MqlCountEstimator estimator)
+  {
+    return new MqlCountStrategy(Mode.ESTIMATED, null, AssertArg.isNotNull(estimator, "estimator"));
+  }
+
+  private MqlCountStrategy(
+    Mode mode,
+    Integer maxCount,
+    MqlCountEstimator estimator
+  )
+  {
+    this.mode = mode;
+    this.maxCount = maxCount;
+    this.estimator = estimator;
+  }
+
+  public Mode getMode()
+  {
+    return mode;
+  }
+
+  /**
+   * @return The maximum count of {@link Mode#CAPPED}, or {@code null} otherwise.
+   */
+  public Integer getMaxCount()
+  {
+    return maxCount;
+  }
+
+  /**
+   * @return The estimator of {@link Mode#ESTIMATED}, or {@code null} otherwise.
+   */
+  public MqlCountEstimator getEstimator()
+  {
+    return estimator;
+  }
+
+  @Override
+  public boolean equals(Object obj)
+  {
+    if(this == obj)
+    {
+      return true;
+    }
+
+    if(!(obj instanceof MqlCountStrategy))
+    {
+      return false;
+    }
+
+    final var other = (MqlCountStrategy)obj;
+
+    return mode.equals(other.mode)
+      && Objects.equals(maxCount, other.maxCount)
+      && Objects.equals(estimator, other.estimator);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Objects.hash(mode, maxCount, estimator);
+  }
+
+  @Override
+  public String toString()
+  {
+    return (Mode.CAPPED.equals(mode) ? String.format("%s(%d)", mode, maxCount) : mode.toString());
+  }
+
+  private static final MqlCountStrategy EXACT = new MqlCountStrategy(Mode.EXACT, null, null);
+
+  private final Mode mode;
+
+  private final Integer maxCount;
+
+  private final MqlCountEstimator estimator;
+}
@@ -0,0 +1,534 @@
+package kaphein.jpa.mql;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EntityType;
+import kaphein.jpa.core.AssertArg;
+import kaphein.jpa.core.EntityTypeUtils;
+
+/**
+ * An in-memory replica of the entities of a small, frequently read entity type, e.g. a reference table, that answers
+ * collection queries without the database.
+ * <p>
+ * Hash indexes answer {@code $eq} and {@code $in}, and sorted indexes also answer {@code $lt}, {@code $lte},
+ * {@code $gt} and {@code $gte} on basic attributes of the entity. The conditions of the top level conjunction of a
+ * filter on indexed attributes select the candidates by intersecting the matches of the indexes, and the whole filter
+ * is evaluated on the candidates. A filter without such conditions is evaluated on all entities.
+ * <p>
+ * The replica is refreshed by {@link #put(Object)} and {@link #remove(Object)}, which
+ * {@link MqlEntityReplicaListener} invokes from entity lifecycle callbacks. The entities are held as they are passed,
+ * so the associations that filters read must be loaded.
+ *
+ * @see MqlQueryBuilder#compileCollectionQuery()
+ */
+public class MqlEntityReplica<E>
+{
+  /**
+   * @param hashIndexedAttributeNames
+   *          The names of the attributes to answer {@code $eq} and {@code $in} by hash indexes.
+   * @param sortedIndexedAttributeNames
+   *          The names of the attributes to answer comparisons and {@code $in} by sorted indexes.
+   */
+  public MqlEntityReplica(
+    EntityType<E> entityType,
+    Collection<String> hashIndexedAttributeNames,
+    Collection<String> sortedIndexedAttributeNames
+  )
+  {
+    this.entityType = AssertArg.isNotNull(entityType, "entityType");
+    idAccessors = EntityTypeUtils
+      .findIdAttributes(entityType)
+      .stream()
+      .map(MqlAttributeAccessor::of)
+      .toArray(MqlAttributeAccessor[]::new);
+    entries = new LinkedHashMap<>();
+    indexes = new ArrayList<>();
+    hashIndexes = new HashMap<>();
+    sortedIndexes = new HashMap<>();
+
+    for(final var attributeName : AssertArg.isNotNull(hashIndexedAttributeNames, "hashIndexedAttributeNames"))
+    {
+      final var index = new Index(indexes.size(), findIndexableAttribute(attributeName), new HashMap<>());
+      indexes.add(index);
+      hashIndexes.put(attributeName, index);
+    }
+
+    for(final var attributeName : AssertArg.isNotNull(sortedIndexedAttributeNames, "sortedIndexedAttributeNames"))
+    {
+      final var attr = findIndexableAttribute(attributeName);
+      final var javaType = attr.getJavaType();
+      if(!javaType.isPrimitive() && !Comparable.class.isAssignableFrom(javaType))
+      {
+        throw new IllegalArgumentException(String.format(
+          "Attribute %s of %s is not comparable",
+          attributeName,
+          javaType.getName()));
+      }
+
+      final var index = new Index(indexes.size(), attr, new TreeMap<>(MqlPredicateCompiler::compareValues));
+      indexes.add(index);
+      sortedIndexes.put(attributeName, index);
+    }
+  }
+
+  public EntityType<E> getEntityType()
+  {
+    return entityType;
+  }
+
+  public int size()
+  {
+    synchronized(entries)
+    {
+      return entries.size();
+    }
+  }
+
+  /**
+   * Replaces all entities of the replica, e.g. on startup or after a transaction that changed the entity type has been
+   * rolled back.
+   */
+  public void reload(Collection<? extends E> entities)
+  {
+    AssertArg.isNotNull(entities, "entities");
+
+    synchronized(entries)
+    {
+      entries.clear();
+      for(final var index : indexes)
+      {
+        index.entries.clear();
+      }
+      for(final var entity : entities)
+      {
+        put(entity);
+      }
+    }
+  }
+
+  /**
+   * Adds the entity, or replaces the entity of the same id.
+   */
+  public void put(E entity)
+  {
+    AssertArg.isNotNull(entity, "entity");
+
+    final var id = readId(entity);
+    final var keys = new Object[indexes.size()];
+    for(final var index : indexes)
+    {
+      keys[index.position] = index.readKey(entity);
+    }
+
+    synchronized(entries)
+    {
+      final var previous = entries.get(id);
+      if(null != previous)
+      {
+        removeFromIndexes(previous);
+      }
+
+      final var entry = new Entry<E>(entity, (null == previous ? nextSequence++ : previous.sequence), keys);
+      entries.put(id, entry);
+      for(final var index : indexes)
+      {
+        index.add(entry);
+      }
+    }
+  }
+
+  /**
+   * Removes the entity of the same id as the entity.
+   */
+  public void remove(E entity)
+  {
+    AssertArg.isNotNull(entity, "entity");
+
+    final var id = readId(entity);
+    synchronized(entries)
+    {
+      final var previous = entries.remove(id);
+      if(null != previous)
+      {
+        removeFromIndexes(previous);
+      }
+    }
+  }
+
+  /**
+   * @return The matching entities of the page in order.
+   */
+  public List<E> getResultList(MqlCollectionQuery<E> query)
+  {
+    return query.getResultList(findCandidates(query));
+  }
+
+  /**
+   * @return The matching entities of the page in order, and the exact count of all matching entities.
+   */
+  public MqlPage<E> getPage(MqlCollectionQuery<E> query)
+  {
+    return query.getPage(findCandidates(query));
+  }
+
+  /**
+   * @return The number of the matching entities.
+   */
+  public long count(MqlCollectionQuery<E> query)
+  {
+    return query.count(findCandidates(query));
+  }
+
+  /**
+   * Called by {@link MqlEntityReplicaListener}.
+   */
+  void onSaved(Object entity)
+  {
+    if(entityType.getJavaType().isInstance(entity))
+    {
+      put(entityType.getJavaType().cast(entity));
+    }
+  }
+
+  /**
+   * Called by {@link MqlEntityReplicaListener}.
+   */
+  void onRemoved(Object entity)
+  {
+    if(entityType.getJavaType().isInstance(entity))
+    {
+      remove(entityType.getJavaType().cast(entity));
+    }
+  }
+
+  /**
+   * @return The entities that can match the filter of the query in the order they were added.
+   */
+  private List<E> findCandidates(MqlCollectionQuery<E> query)
+  {
+    AssertArg.isNotNull(query, "query");
+
+    // Ranges usually match more entities than values, so they are looked up last and test the candidates found by
+    // the values instead of collecting their matches.
+    final Comparator<MqlIndexCondition> valuesFirst = Comparator.comparing(
+      (condition) -> !MqlIndexCondition.Operator.IN.equals(condition.getOperator()));
+    final var conditions = query
+      .getIndexConditions()
+      .stream()
+      .sorted(valuesFirst)
+      .collect(Collectors.toList());
+
+    synchronized(entries)
+    {
+      Set<Entry<E>> candidates = null;
+      for(final var condition : conditions)
+      {
+        final var index = (MqlIndexCondition.Operator.IN.equals(condition.getOperator())
+          && hashIndexes.containsKey(condition.getAttributeName())
+          ? hashIndexes.get(condition.getAttributeName())
+          : sortedIndexes.get(condition.getAttributeName()));
+        if(null == index)
+        {
+          continue;
+        }
+
+        if(null == candidates)
+        {
+          candidates = index.find(condition);
+        }
+        else
+        {
+          candidates.removeIf((entry) -> !index.test(entry, condition));
+        }
+
+        if(candidates.isEmpty())
+        {
+          return new ArrayList<>();
+        }
+      }
+
+      if(null == candidates)
+      {
+        return entries
+          .values()
+          .stream()
+          .map((entry) -> entry.entity)
+          .collect(Collectors.toCollection(ArrayList::new));
+      }
+
+      return candidates
+        .stream()
+        .sorted(Comparator.comparingLong((entry) -> entry.sequence))
+        .map((entry) -> entry.entity)
+        .collect(Collectors.toCollection(ArrayList::new));
+    }
+  }
+
+  private void removeFromIndexes(Entry<E> entry)
+  {
+    for(final var index : indexes)
+    {
+      index.remove(entry);
+    }
+  }
+
+  private Object readId(E entity)
+  {
+    if(1 == idAccessors.length)
+    {
+      return idAccessors[0].read(entity);
+    }
+
+    return Arrays
+      .stream(idAccessors)
+      .map((accessor) -> accessor.read(entity))
+      .collect(Collectors.toList());
+  }
+
+  private Attribute<? super E, ?> findIndexableAttribute(String attributeName)
+  {
+    final var attr = entityType.getAttribute(attributeName);
+    if(!Attribute.PersistentAttributeType.BASIC.equals(attr.getPersistentAttributeType()))
+    {
+      throw new IllegalArgumentException(String.format(
+        "Attribute %s of %s cannot be indexed as it is not a basic attribute",
+        attributeName,
+        entityType.getName()));
+    }
+
+    return attr;
+  }
+
+  /**
+   * @return A key that is equal for numbers of the same value regardless of their types and scales.
+   */
+  private static Object toHashKey(Object value)
+  {
+    if(value instanceof BigDecimal)
+    {
+      return ((BigDecimal)value).stripTrailingZeros();
+    }
+
+    if(value instanceof BigInteger)
+    {
+      return new BigDecimal((BigInteger)value).stripTrailingZeros();
+    }
+
+    if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+    {
+      return BigDecimal.valueOf(((Number)value).longValue()).stripTrailingZeros();
+    }
+
+    if((value instanceof Double || value instanceof Float) && Double.isFinite(((Number)value).doubleValue()))
+    {
+      return new BigDecimal(value.toString()).stripTrailingZeros();
+    }
+
+    return value;
+  }
+
+  private static final class Entry<E>
+  {
+    Entry(
+      E entity,
+      long sequence,
+      Object[] keys
+    )
+    {
+      this.entity = entity;
+      this.sequence = sequence;
+      this.keys = keys;
+    }
+
+    private final E entity;
+
+    private final long sequence;
+
+    /**
+     * The values of the indexed attributes by the positions of the indexes when the entity was put.
+     */
+    private final Object[] keys;
+  }
+
+  /**
+   * Maps the values of an attribute to the entries that have them. {@code null}s are not indexed as they never match.
+   */
+  private final class Index
+  {
+    Index(
+      int position,
+      Attribute<? super E, ?> attribute,
+      Map<Object, Set<Entry<E>>> entries
+    )
+    {
+      this.position = position;
+      accessor = MqlAttributeAccessor.of(attribute);
+      this.entries = entries;
+    }
+
+    Object readKey(E entity)
+    {
+      final var value = accessor.read(entity);
+
+      return (null == value || entries instanceof NavigableMap ? value : toHashKey(value));
+    }
+
+    void add(Entry<E> entry)
+    {
+      final var key = entry.keys[position];
+      if(null != key)
+      {
+        entries
+          .computeIfAbsent(key, (k) -> new HashSet<>())
+          .add(entry);
+      }
+    }
+
+    void remove(Entry<E> entry)
+    {
+      final var key = entry.keys[position];
+      if(null == key)
+      {
+        return;
+      }
+
+      final var keyEntries = entries.get(key);
+      if(null != keyEntries && keyEntries.remove(entry) && keyEntries.isEmpty())
+      {
+        entries.remove(key);
+      }
+    }
+
+    /**
+     * @return A new set of the matching entries.
+     */
+    Set<Entry<E>> find(MqlIndexCondition condition)
+    {
+      final var matches = new HashSet<Entry<E>>();
+      if(MqlIndexCondition.Operator.IN.equals(condition.getOperator()))
+      {
+        for(final var value : condition.getValues())
+        {
+          final var keyEntries = entries.get(entries instanceof NavigableMap ? value : toHashKey(value));
+          if(null != keyEntries)
+          {
+            matches.addAll(keyEntries);
+          }
+        }
+
+        return matches;
+      }
+
+      if(condition.getValues().isEmpty())
+      {
+        return matches;
+      }
+
+      final var sortedEntries = (NavigableMap<Object, Set<Entry<E>>>)entries;
+      final var value = condition.getValues().get(0);
+      switch(condition.getOperator())
+      {
+      case LT:
+        sortedEntries.headMap(value, false).values().forEach(matches::addAll);
+        break;
+      case LTE:
+        sortedEntries.headMap(value, true).values().forEach(matches::addAll);
+        break;
+      case GT:
+        sortedEntries.tailMap(value, false).values().forEach(matches::addAll);
+        break;
+      case GTE:
+        sortedEntries.tailMap(value, true).values().forEach(matches::addAll);
+        break;
+      default:
+        throw new MqlException(String.format("Operator %s is not supported", condition.getOperator()));
+      }
+
+      return matches;
+    }
+
+    /**
+     * @return {@code true} if the key of the entry matches the condition.
+     */
+    boolean test(
+      Entry<E> entry,
+      MqlIndexCondition condition
+    )
+    {
+      final var key = entry.keys[position];
+      if(null == key)
+      {
+        return false;
+      }
+
+      final var sorted = entries instanceof NavigableMap;
+      if(MqlIndexCondition.Operator.IN.equals(condition.getOperator()))
+      {
+        return condition
+          .getValues()
+          .stream()
+          .anyMatch((value) -> (sorted
+            ? 0 == MqlPredicateCompiler.compareValues(key, value)
+            : key.equals(toHashKey(value))));
+      }
+
+      if(condition.getValues().isEmpty())
+      {
+        return false;
+      }
+
+      final var result = MqlPredicateCompiler.compareValues(key, condition.getValues().get(0));
+      switch(condition.getOperator())
+      {
+      case LT:
+        return result < 0;
+      case LTE:
+        return result <= 0;
+      case GT:
+        return result > 0;
+      case GTE:
+        return result >= 0;
+      default:
+        throw new MqlException(String.format("Operator %s is not supported", condition.getOperator()));
+      }
+    }
+
+    private final int position;
+
+    private final MqlAttributeAccessor accessor;
+
+    private final Map<Object, Set<Entry<E>>> entries;
+  }
+
+  private final EntityType<E> entityType;
+
+  private final MqlAttributeAccessor[] idAccessors;
+
+  /**
+   * The entries by id in the order they were added.
+   */
+  private final LinkedHashMap<Object, Entry<E>> entries;
+
+  private final List<Index> indexes;
+
+  private final Map<String, Index> hashIndexes;
+
+  private final Map<String, Index> sortedIndexes;
+
+  private long nextSequence;
+}
@@ -0,0 +1,50 @@
+package kaphein.jpa.mql;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import kaphein.jpa.core.AssertArg;
+
+/**
+ * An entity listener that refreshes the registered {@link MqlEntityReplica}s of the entity types of persisted, updated
+ * and removed entities.
+ * <p>
+ * Declare it by {@code @EntityListeners(MqlEntityReplicaListener.class)} on the replicated entity classes, or as a
+ * default entity listener in {@code orm.xml}. The callbacks are invoked when the changes are flushed, so the changes
+ * of a transaction that is rolled back must be undone by {@link MqlEntityReplica#reload}.
+ */
+public class MqlEntityReplicaListener
+{
+  public static void register(MqlEntityReplica<?> replica)
+  {
+    REPLICAS.addIfAbsent(AssertArg.isNotNull(replica, "replica"));
+  }
+
+  public static void unregister(MqlEntityReplica<?> replica)
+  {
+    REPLICAS.remove(replica);
+  }
+
+  @PostPersist
+  @PostUpdate
+  public void onSaved(Object entity)
+  {
+    for(final var replica : REPLICAS)
+    {
+      replica.onSaved(entity);
+    }
+  }
+
+  @PostRemove
+  public void onRemoved(Object entity)
+  {
+    for(final var replica : REPLICAS)
+    {
+      replica.onRemoved(entity);
+    }
+  }
+
+  private static final CopyOnWriteArrayList<MqlEntityReplica<?>> REPLICAS = new CopyOnWriteArrayList<>();
+}
@@ -8,4 +8,12 @@ public class MqlException extends RuntimeException
   {
     super(message);
   }
+
+  MqlException(
+    String message,
+    Throwable cause
+  )
+  {
+    super(message, cause);
+  }
 }
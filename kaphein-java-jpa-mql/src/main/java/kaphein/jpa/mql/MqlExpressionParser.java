@@ -81,14 +81,32 @@ class MqlExpressionParser implements Iterable<MqlExpressionParseResult>
       && !str.contains(".");
   }
 
-  private MqlExpressionParseResult doParsing()
+  private static Object toOperandValue(Object value)
   {
-    final var nodeRegistry = new MqlAstNodeRegistry();
+    final var paramRef = MqlParameterReference.from(value);
+
+    return (null != paramRef ? paramRef : value);
+  }
 
+  /**
+   * Lowers the escape character of a case-insensitive pattern as the pattern is lowered when it is matched, so it
+   * still escapes the characters that follow it.
+   */
+  static Character normalizeEscapeCase(
+    Character escapeValue,
+    boolean caseSensitive
+  )
+  {
+    return (caseSensitive || null == escapeValue ? escapeValue : Character.valueOf(Character.toLowerCase(escapeValue)));
+  }
+
+  private MqlExpressionParseResult doParsing()
+  {
     switch(state)
     {
     case State.BEGINING:
     {
+      final var nodeRegistry = new MqlAstNodeRegistry();
       rootNode = nodeRegistry.create(MqlAstNode.Kind.ROOT, "");
 
       exprCtxStack.clear();
@@ -404,17 +422,25 @@ class MqlExpressionParser implements Iterable<MqlExpressionParseResult>
     final var opName = (negated ? "nin" : "in");
     final var key = "$" + opName;
     final var value = expr.get(key);
-    if(!(value instanceof List<?>))
+    final var paramRef = MqlParameterReference.from(value);
+    if(null == paramRef && !(value instanceof List<?>))
     {
       throw new MqlSyntaxException(String.format("The operand of %s operator must be a list", opName));
     }
 
     final var opNode = nodeRegistry.create(MqlAstNode.Kind.VALUE_OPERATOR, opName);
     opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.ATTRIBUTE_PATH, null, lhsPath));
-    final var params = (List<?>)value;
-    for(final var param : params)
+    if(null != paramRef)
     {
-      opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, param));
+      opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, paramRef));
+    }
+    else
+    {
+      final var params = (List<?>)value;
+      for(final var param : params)
+      {
+        opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, param));
+      }
     }
 
     final var currentNode = exprCtx.getCurrentNode();
@@ -443,7 +469,7 @@ class MqlExpressionParser implements Iterable<MqlExpressionParseResult>
     }
     else
     {
-      opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, value));
+      opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, toOperandValue(value)));
     }
 
     final var currentNode = exprCtx.getCurrentNode();
@@ -472,7 +498,7 @@ class MqlExpressionParser implements Iterable<MqlExpressionParseResult>
     }
     else
     {
-      opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, value));
+      opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, toOperandValue(value)));
     }
 
     final var currentNode = exprCtx.getCurrentNode();
@@ -494,7 +520,12 @@ class MqlExpressionParser implements Iterable<MqlExpressionParseResult>
 
     final var opNode = nodeRegistry.create(MqlAstNode.Kind.VALUE_OPERATOR, opName);
     opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.ATTRIBUTE_PATH, null, lhsPath));
-    if(value instanceof Map<?, ?>)
+    final var paramRef = MqlParameterReference.from(value);
+    if(null != paramRef)
+    {
+      opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, paramRef));
+    }
+    else if(value instanceof Map<?, ?>)
     {
       final var rhsExpr = (Map<?, ?>)value;
       final var rhsExprCtx = new MqlExpressionContext(
@@ -586,18 +617,20 @@ class MqlExpressionParser implements Iterable<MqlExpressionParseResult>
 
     final var opName = (negated ? "nlike" : "like");
     final var key = "$" + opName;
-    final var value = expr.get(key);
-    if(!(value instanceof String))
+    final var value = toOperandValue(expr.get(key));
+    if(!(value instanceof String) && !(value instanceof MqlParameterReference))
     {
       throw new MqlSyntaxException(String.format("The operand of %s clause must be a string", opName));
     }
 
     final var opNode = nodeRegistry.create(MqlAstNode.Kind.VALUE_OPERATOR, opName);
     opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.ATTRIBUTE_PATH, null, lhsPath));
-    final var formatText = (String)value;
-    opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, formatText));
+    opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, value));
     opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, caseSensitive));
-    opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, escapeValue));
+    opNode.addChild(nodeRegistry.create(
+      MqlAstNode.Kind.LITERAL,
+      null,
+      normalizeEscapeCase(escapeValue, (Boolean)caseSensitive)));
 
     final var currentNode = exprCtx.getCurrentNode();
     currentNode.addChild(opNode);
@@ -0,0 +1,88 @@
+package kaphein.jpa.mql;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Counts the items matching a filter and each of its facet filters by {@code SUM(CASE WHEN ...)} terms of one query.
+ */
+class MqlFacetQuery
+{
+  MqlFacetQuery(
+    String queryString,
+    List<String> facetNames,
+    List<MqlParameterSlot> parameterSlots,
+    List<?> parameterValues,
+    MqlTypeConverter typeConverter,
+    boolean emptyResult
+  )
+  {
+    this.queryString = queryString;
+    this.facetNames = facetNames;
+    this.parameterSlots = parameterSlots;
+    this.parameterValues = parameterValues;
+    this.typeConverter = typeConverter;
+    this.emptyResult = emptyResult;
+  }
+
+  String getQueryString()
+  {
+    return queryString;
+  }
+
+  /**
+   * @param placeholderValues
+   *          Unconverted values of the {@code $param} placeholders by name, or {@code null} if there is none.
+   * @return The counts by facet name in the order of the facets.
+   */
+  Map<String, Long> execute(
+    EntityManager entityManager,
+    Map<String, ?> placeholderValues
+  )
+  {
+    final var counts = new LinkedHashMap<String, Long>();
+    if(emptyResult)
+    {
+      facetNames.forEach((facetName) -> counts.put(facetName, 0L));
+
+      return counts;
+    }
+
+    final var convertedValues = MqlCompiledQuery.convertParameterValues(
+      parameterSlots,
+      (null == placeholderValues
+        ? parameterValues
+        : MqlCompiledQuery.resolveParameterValues(parameterSlots, parameterValues, placeholderValues)),
+      typeConverter);
+    final var query = entityManager.createQuery(queryString);
+    for(var i = 0; i < convertedValues.length; ++i)
+    {
+      query.setParameter(parameterSlots.get(i).getName(), convertedValues[i]);
+    }
+
+    // A single selected term is not wrapped in an array, and a sum over no rows is null.
+    final var result = query.getSingleResult();
+    final var sums = (result instanceof Object[] ? (Object[])result : new Object[] {result});
+    for(var i = 0; i < facetNames.size(); ++i)
+    {
+      counts.put(facetNames.get(i), (null == sums[i] ? 0L : ((Number)sums[i]).longValue()));
+    }
+
+    return counts;
+  }
+
+  private final String queryString;
+
+  private final List<String> facetNames;
+
+  private final List<MqlParameterSlot> parameterSlots;
+
+  private final List<?> parameterValues;
+
+  private final MqlTypeConverter typeConverter;
+
+  private final boolean emptyResult;
+}
@@ -0,0 +1,302 @@
+package kaphein.jpa.mql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import jakarta.persistence.EntityGraph;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Subgraph;
+import jakarta.persistence.TypedQuery;
+import kaphein.jpa.core.AssertArg;
+import kaphein.jpa.core.JpaEntityAttributePath;
+
+/**
+ * The associations fetched with the entities of the item query, so they are not lazily loaded one by one.
+ * <p>
+ * A fetch plan is applied to the item query only and never to the count query. Paths start with the alias of the root
+ * entity, pass through associations only, and are validated against the metamodel on compilation.
+ */
+public final class MqlFetchPlan
+{
+  public static enum Mode
+  {
+    /**
+     * Emits {@code LEFT JOIN FETCH} clauses.
+     */
+    JOIN_FETCH,
+
+    /**
+     * Passes an entity graph by the {@value MqlFetchPlan#FETCH_GRAPH_HINT} hint. Attributes not in the graph are
+     * treated as lazy.
+     */
+    FETCH_GRAPH,
+
+    /**
+     * Passes an entity graph by the {@value MqlFetchPlan#LOAD_GRAPH_HINT} hint. Attributes not in the graph are
+     * fetched as mapped.
+     */
+    LOAD_GRAPH
+  }
+
+  public static final String FETCH_GRAPH_HINT = "jakarta.persistence.fetchgraph";
+
+  public static final String LOAD_GRAPH_HINT = "jakarta.persistence.loadgraph";
+
+  public static MqlFetchPlan joinFetch(String... attributePaths)
+  {
+    return of(Mode.JOIN_FETCH, attributePaths);
+  }
+
+  public static MqlFetchPlan fetchGraph(String... attributePaths)
+  {
+    return of(Mode.FETCH_GRAPH, attributePaths);
+  }
+
+  public static MqlFetchPlan loadGraph(String... attributePaths)
+  {
+    return of(Mode.LOAD_GRAPH, attributePaths);
+  }
+
+  public static MqlFetchPlan of(
+    Mode mode,
+    String... attributePaths
+  )
+  {
+    AssertArg.isNotNull(attributePaths, "attributePaths");
+
+    return of(mode, Arrays.asList(attributePaths));
+  }
+
+  public static MqlFetchPlan of(
+    Mode mode,
+    List<String> attributePaths
+  )
+  {
+    AssertArg.isNotNull(mode, "mode");
+    AssertArg.isNotNull(attributePaths, "attributePaths");
+    if(attributePaths.isEmpty())
+    {
+      throw new IllegalArgumentException("attributePaths must not be empty");
+    }
+
+    final var paths = new ArrayList<JpaEntityAttributePath>(attributePaths.size());
+    for(final var attributePath : attributePaths)
+    {
+      paths.add(new JpaEntityAttributePath(AssertArg.isNotBlank(attributePath, "attributePath")));
+    }
+
+    return new MqlFetchPlan(mode, paths, null);
+  }
+
+  /**
+   * Uses the entity graph defined by {@link jakarta.persistence.NamedEntityGraph} as a fetch graph.
+   * <p>
+   * The graph is looked up when the query is bound, so a collection in it is not reported on compilation.
+   */
+  public static MqlFetchPlan namedFetchGraph(String entityGraphName)
+  {
+    return new MqlFetchPlan(
+      Mode.FETCH_GRAPH,
+      Collections.emptyList(),
+      AssertArg.isNotBlank(entityGraphName, "entityGraphName"));
+  }
+
+  /**
+   * Uses the entity graph defined by {@link jakarta.persistence.NamedEntityGraph} as a load graph.
+   *
+   * @see #namedFetchGraph(String)
+   */
+  public static MqlFetchPlan namedLoadGraph(String entityGraphName)
+  {
+    return new MqlFetchPlan(
+      Mode.LOAD_GRAPH,
+      Collections.emptyList(),
+      AssertArg.isNotBlank(entityGraphName, "entityGraphName"));
+  }
+
+  private MqlFetchPlan(
+    Mode mode,
+    List<JpaEntityAttributePath> attributePaths,
+    String entityGraphName
+  )
+  {
+    this.mode = mode;
+    this.attributePaths = Collections.unmodifiableList(attributePaths);
+    this.entityGraphName = entityGraphName;
+  }
+
+  public Mode getMode()
+  {
+    return mode;
+  }
+
+  public List<JpaEntityAttributePath> getAttributePaths()
+  {
+    return attributePaths;
+  }
+
+  /**
+   * @return The name of the named entity graph, or {@code null} if the graph is built from the attribute paths.
+   */
+  public String getEntityGraphName()
+  {
+    return entityGraphName;
+  }
+
+  /**
+   * Validates the paths against the root query.
+   *
+   * @return The paths that fetch a collection.
+   */
+  List<JpaEntityAttributePath> findCollectionPaths(MqlSubQueryContext rootSubQueryContext)
+  {
+    final var collectionPaths = new ArrayList<JpaEntityAttributePath>();
+    for(final var path : attributePaths)
+    {
+      if(!rootSubQueryContext.getAlias().equals(path.get(0)))
+      {
+        throw new MqlSyntaxException(String.format(
+          "Fetched path %s must start with the alias of the root entity",
+          path));
+      }
+
+      var collection = false;
+      for(final var attr : rootSubQueryContext.findAttributesOf(path))
+      {
+        if(!attr.isAssociation())
+        {
+          throw new MqlSyntaxException(String.format(
+            "Fetched path %s must pass through associations only, but %s is not an association",
+            path,
+            attr.getName()));
+        }
+
+        collection |= attr.isCollection();
+      }
+
+      if(collection)
+      {
+        collectionPaths.add(path);
+      }
+    }
+
+    return collectionPaths;
+  }
+
+  /**
+   * Appends {@code LEFT JOIN FETCH} clauses of the paths. Associations shared by paths are fetched once.
+   */
+  void appendJoinFetchClauses(List<String> joinClauses)
+  {
+    final var joinAliases = new HashMap<String, String>();
+    for(final var path : attributePaths)
+    {
+      var expr = path.get(0);
+      for(var i = 1; i < path.size(); ++i)
+      {
+        final var joinPath = String.format("%s.%s", expr, path.get(i));
+        expr = joinAliases.computeIfAbsent(joinPath, (k) ->
+        {
+          final var joinAlias = JOIN_ALIAS_PREFIX + (joinAliases.size() + 1);
+          joinClauses.add(String.format("LEFT JOIN FETCH %s %s", joinPath, joinAlias));
+
+          return joinAlias;
+        });
+      }
+    }
+  }
+
+  /**
+   * Sets the entity graph hint of the item query. Does nothing for {@link Mode#JOIN_FETCH}.
+   */
+  <E> void applyTo(
+    TypedQuery<?> itemQuery,
+    EntityManager entityManager,
+    Class<E> entityJavaType
+  )
+  {
+    if(Mode.JOIN_FETCH.equals(mode))
+    {
+      return;
+    }
+
+    final EntityGraph<?> entityGraph = (null == entityGraphName
+      ? createEntityGraph(entityManager, entityJavaType)
+      : entityManager.getEntityGraph(entityGraphName));
+    itemQuery.setHint((Mode.FETCH_GRAPH.equals(mode) ? FETCH_GRAPH_HINT : LOAD_GRAPH_HINT), entityGraph);
+  }
+
+  private <E> EntityGraph<E> createEntityGraph(
+    EntityManager entityManager,
+    Class<E> entityJavaType
+  )
+  {
+    final var entityGraph = entityManager.createEntityGraph(entityJavaType);
+    final var subgraphs = new HashMap<String, Subgraph<?>>();
+    for(final var path : attributePaths)
+    {
+      Subgraph<?> subgraph = null;
+      for(var i = 1; i < path.size(); ++i)
+      {
+        final var attrName = path.get(i);
+        final var parentSubgraph = subgraph;
+        subgraph = subgraphs.computeIfAbsent(
+          String.join(".", path.subList(1, i + 1)),
+          (k) -> (null == parentSubgraph
+            ? entityGraph.addSubgraph(attrName)
+            : parentSubgraph.addSubgraph(attrName)));
+      }
+    }
+
+    return entityGraph;
+  }
+
+  @Override
+  public boolean equals(Object obj)
+  {
+    if(this == obj)
+    {
+      return true;
+    }
+
+    if(!(obj instanceof MqlFetchPlan))
+    {
+      return false;
+    }
+
+    return toString().equals(obj.toString());
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Objects.hash(MqlFetchPlan.class, toString());
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "%s(%s)",
+      mode,
+      (null == entityGraphName
+        ? attributePaths
+          .stream()
+          .map(JpaEntityAttributePath::toString)
+          .collect(Collectors.joining(","))
+        : "@" + entityGraphName));
+  }
+
+  private static final String JOIN_ALIAS_PREFIX = "__fetch";
+
+  private final Mode mode;
+
+  private final List<JpaEntityAttributePath> attributePaths;
+
+  private final String entityGraphName;
+}
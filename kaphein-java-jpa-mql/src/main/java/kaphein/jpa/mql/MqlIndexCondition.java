@@ -0,0 +1,67 @@
+package kaphein.jpa.mql;
+
+import java.util.List;
+
+/**
+ * A condition of the top level conjunction of a filter on an attribute of the root entity, which an index of
+ * {@link MqlEntityReplica} can answer.
+ * <p>
+ * The values are converted to the type of the attribute and are not {@code null}, as a comparison with {@code NULL}
+ * never matches.
+ */
+final class MqlIndexCondition
+{
+  enum Operator
+  {
+    /**
+     * Matches any of the values.
+     */
+    IN,
+
+    LT,
+
+    LTE,
+
+    GT,
+
+    GTE
+  }
+
+  MqlIndexCondition(
+    String attributeName,
+    Operator operator,
+    List<?> values
+  )
+  {
+    this.attributeName = attributeName;
+    this.operator = operator;
+    this.values = values;
+  }
+
+  String getAttributeName()
+  {
+    return attributeName;
+  }
+
+  Operator getOperator()
+  {
+    return operator;
+  }
+
+  List<?> getValues()
+  {
+    return values;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s %s %s", attributeName, operator, values);
+  }
+
+  private final String attributeName;
+
+  private final Operator operator;
+
+  private final List<?> values;
+}
@@ -0,0 +1,635 @@
+package kaphein.jpa.mql;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import kaphein.jpa.core.AssertArg;
+import kaphein.jpa.core.JpaEntityAttributePath;
+import kaphein.jpa.core.NotImplementedException;
+
+/**
+ * Builds the MQL AST directly from JSON tokens.
+ * <p>
+ * Produces the same tree as {@link MqlExpressionParser} without materializing the expression as maps. The values of
+ * {@code $in} and {@code $nin} operators are streamed into literal nodes.
+ */
+class MqlJsonStreamParser
+{
+  MqlJsonStreamParser(
+    ObjectMapper objectMapper,
+    String entityName
+  )
+  {
+    this.objectMapper = AssertArg.isNotNull(objectMapper, "objectMapper");
+    inputEntityName = entityName;
+
+    final var deserConfig = objectMapper.getDeserializationConfig();
+    useBigIntegerForInts = deserConfig.isEnabled(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS);
+    useLongForInts = deserConfig.isEnabled(DeserializationFeature.USE_LONG_FOR_INTS);
+    useBigDecimalForFloats = deserConfig.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+  }
+
+  public MqlExpressionParseResult parse(String jsonExpression)
+  {
+    AssertArg.isNotNull(jsonExpression, "jsonExpression");
+
+    try(final var parser = objectMapper.getFactory().createParser(jsonExpression))
+    {
+      return parse(parser);
+    }
+    catch(final IOException ioe)
+    {
+      throw new MqlException(ioe.getMessage());
+    }
+  }
+
+  public MqlExpressionParseResult parse(byte[] jsonExpression)
+  {
+    AssertArg.isNotNull(jsonExpression, "jsonExpression");
+
+    try(final var parser = objectMapper.getFactory().createParser(jsonExpression))
+    {
+      return parse(parser);
+    }
+    catch(final IOException ioe)
+    {
+      throw new MqlException(ioe.getMessage());
+    }
+  }
+
+  /**
+   * The stream is not closed.
+   */
+  public MqlExpressionParseResult parse(InputStream jsonExpression)
+  {
+    AssertArg.isNotNull(jsonExpression, "jsonExpression");
+
+    try(final var parser = objectMapper.getFactory().createParser(jsonExpression))
+    {
+      parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+      return parse(parser);
+    }
+    catch(final IOException ioe)
+    {
+      throw new MqlException(ioe.getMessage());
+    }
+  }
+
+  /**
+   * Reads the remaining bytes of the buffer without changing its position.
+   */
+  public MqlExpressionParseResult parse(ByteBuffer jsonExpression)
+  {
+    AssertArg.isNotNull(jsonExpression, "jsonExpression");
+
+    if(jsonExpression.hasArray())
+    {
+      try(final var parser = objectMapper.getFactory().createParser(
+        jsonExpression.array(),
+        jsonExpression.arrayOffset() + jsonExpression.position(),
+        jsonExpression.remaining()))
+      {
+        return parse(parser);
+      }
+      catch(final IOException ioe)
+      {
+        throw new MqlException(ioe.getMessage());
+      }
+    }
+    else
+    {
+      return parse(new ByteBufferBackedInputStream(jsonExpression.duplicate()));
+    }
+  }
+
+  MqlExpressionParseResult parse(JsonParser parser) throws IOException
+  {
+    final var nodeRegistry = new MqlAstNodeRegistry();
+    final var rootNode = nodeRegistry.create(MqlAstNode.Kind.ROOT, "");
+
+    if(JsonToken.START_OBJECT != parser.nextToken())
+    {
+      throw new MqlSyntaxException("An expression must be an object");
+    }
+
+    rootNode.addChild(parseSubQueryClause(
+      parser,
+      nodeRegistry,
+      "jpqlExists",
+      inputEntityName));
+
+    return new MqlExpressionParseResult(
+      true,
+      rootNode);
+  }
+
+  private static final class NestedOperator
+  {
+    private NestedOperator(MqlAstNode node)
+    {
+      this.node = node;
+    }
+
+    private final MqlAstNode node;
+  }
+
+  private static final class StreamedList
+  {
+    private StreamedList(List<MqlAstNode> nodes)
+    {
+      this.nodes = nodes;
+    }
+
+    private final List<MqlAstNode> nodes;
+  }
+
+  private static boolean isOperatorName(String str)
+  {
+    return str.length() > 1
+      && str.startsWith("$")
+      && !str.contains(".");
+  }
+
+  private static boolean isClauseName(String name)
+  {
+    switch(name)
+    {
+    case "comment":
+    case "and":
+    case "or":
+    case "nJpqlExists":
+    case "jpqlExists":
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  private MqlAstNode parseSubQueryClause(
+    JsonParser parser,
+    MqlAstNodeRegistry nodeRegistry,
+    String clauseName,
+    String defaultEntityName
+  ) throws IOException
+  {
+    Object entityNameTerm = defaultEntityName;
+    Object aliasTerm = null;
+    MqlAstNode andClauseNode = null;
+    var hasValidQueryTerm = false;
+
+    while(JsonToken.FIELD_NAME == parser.nextToken())
+    {
+      final var key = parser.getCurrentName();
+      final var token = parser.nextToken();
+
+      switch(key)
+      {
+      case "$entityName":
+        entityNameTerm = readLiteral(parser, token);
+        break;
+      case "$alias":
+        aliasTerm = readLiteral(parser, token);
+        break;
+      case "$jpqlWhere":
+        hasValidQueryTerm = JsonToken.START_OBJECT == token;
+        if(hasValidQueryTerm)
+        {
+          andClauseNode = nodeRegistry.create(MqlAstNode.Kind.CLAUSE, "and");
+          parseConditionTerms(parser, nodeRegistry, andClauseNode);
+        }
+        else
+        {
+          parser.skipChildren();
+        }
+        break;
+      default:
+        parser.skipChildren();
+      }
+    }
+
+    if(!(entityNameTerm instanceof String))
+    {
+      throw new MqlSyntaxException(String.format("%s of %s clause must be a string.", "$entityName", clauseName));
+    }
+    if(!(aliasTerm instanceof String))
+    {
+      throw new MqlSyntaxException(String.format("%s of %s clause must be a string.", "$alias", clauseName));
+    }
+    if(!hasValidQueryTerm)
+    {
+      throw new MqlSyntaxException(String.format("%s of %s clause must be an expression.", "$jpqlWhere", clauseName));
+    }
+
+    final var clauseNode = nodeRegistry.create(MqlAstNode.Kind.CLAUSE, clauseName);
+    clauseNode.addChild(nodeRegistry.create(MqlAstNode.Kind.TERM, "entityName", entityNameTerm));
+    clauseNode.addChild(nodeRegistry.create(MqlAstNode.Kind.TERM, "alias", aliasTerm));
+    final var queryNode = nodeRegistry.create(MqlAstNode.Kind.TERM, "jpqlWhere");
+    clauseNode.addChild(queryNode);
+    queryNode.addChild(andClauseNode);
+
+    return clauseNode;
+  }
+
+  private void parseConditionTerms(
+    JsonParser parser,
+    MqlAstNodeRegistry nodeRegistry,
+    MqlAstNode currentNode
+  ) throws IOException
+  {
+    while(JsonToken.FIELD_NAME == parser.nextToken())
+    {
+      final var key = parser.getCurrentName();
+      if(null == key || key.isBlank())
+      {
+        throw new MqlSyntaxException("A key of an expression cannot be null or blank");
+      }
+
+      final var token = parser.nextToken();
+
+      final var specialName = (isOperatorName(key) ? key.substring(1) : null);
+      if(null != specialName && isClauseName(specialName))
+      {
+        currentNode.addChild(parseClause(parser, nodeRegistry, token, specialName));
+      }
+      else if(JsonToken.START_OBJECT == token)
+      {
+        final var opNode = parseValueOperator(parser, nodeRegistry, key);
+        if(null != opNode)
+        {
+          currentNode.addChild(opNode);
+        }
+      }
+      else
+      {
+        final var opNode = nodeRegistry.create(MqlAstNode.Kind.VALUE_OPERATOR, "eq");
+        opNode.addChild(nodeRegistry.create(
+          MqlAstNode.Kind.ATTRIBUTE_PATH,
+          null,
+          new JpaEntityAttributePath(key)));
+        opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, readLiteral(parser, token)));
+        currentNode.addChild(opNode);
+      }
+    }
+  }
+
+  private MqlAstNode parseClause(
+    JsonParser parser,
+    MqlAstNodeRegistry nodeRegistry,
+    JsonToken token,
+    String clauseName
+  ) throws IOException
+  {
+    MqlAstNode clauseNode = null;
+
+    switch(clauseName)
+    {
+    case "comment":
+    {
+      if(JsonToken.VALUE_STRING != token)
+      {
+        throw new MqlSyntaxException(String.format("The term of %s clause must be a string", clauseName));
+      }
+
+      clauseNode = nodeRegistry.create(MqlAstNode.Kind.CLAUSE, clauseName);
+      clauseNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, parser.getText()));
+    }
+      break;
+    case "and":
+    case "or":
+    {
+      if(JsonToken.START_ARRAY != token)
+      {
+        throw new MqlSyntaxException(String.format("The term of %s clause must be a string", clauseName));
+      }
+
+      clauseNode = nodeRegistry.create(MqlAstNode.Kind.CLAUSE, clauseName);
+      for(var termToken = parser.nextToken(); JsonToken.END_ARRAY != termToken; termToken = parser.nextToken())
+      {
+        if(JsonToken.START_OBJECT != termToken)
+        {
+          throw new MqlSyntaxException(String.format("The term of %s clause must be a map", clauseName));
+        }
+
+        final var termNode = nodeRegistry.create(MqlAstNode.Kind.CLAUSE, "and");
+        clauseNode.addChild(termNode);
+        parseConditionTerms(parser, nodeRegistry, termNode);
+      }
+    }
+      break;
+    case "jpqlExists":
+    case "nJpqlExists":
+    {
+      if(JsonToken.START_OBJECT != token)
+      {
+        throw new MqlSyntaxException(String.format("The term of %s clause must be a map", clauseName));
+      }
+
+      clauseNode = parseSubQueryClause(parser, nodeRegistry, clauseName, null);
+    }
+      break;
+    default:
+      throw new RuntimeException();
+    }
+
+    return clauseNode;
+  }
+
+  /**
+   * @param lhsKey
+   *          The attribute path on the left hand side, or {@code null} to use the first key of the operator
+   *          expression.
+   * @return {@code null} if the expression does not contain any supported operator.
+   */
+  private MqlAstNode parseValueOperator(
+    JsonParser parser,
+    MqlAstNodeRegistry nodeRegistry,
+    String lhsKey
+  ) throws IOException
+  {
+    String lhsLabel = lhsKey;
+    final var opExpr = new LinkedHashMap<String, Object>();
+
+    while(JsonToken.FIELD_NAME == parser.nextToken())
+    {
+      final var key = parser.getCurrentName();
+      final var token = parser.nextToken();
+
+      if(null == lhsLabel)
+      {
+        lhsLabel = key;
+      }
+
+      if(JsonToken.START_OBJECT == token && ("$eq".equals(key) || "$ne".equals(key)))
+      {
+        opExpr.put(key, new NestedOperator(parseValueOperator(parser, nodeRegistry, null)));
+      }
+      else if(JsonToken.START_ARRAY == token && ("$in".equals(key) || "$nin".equals(key)))
+      {
+        final var operandNodes = new ArrayList<MqlAstNode>();
+        for(var elementToken = parser.nextToken(); JsonToken.END_ARRAY != elementToken; elementToken = parser
+          .nextToken())
+        {
+          operandNodes.add(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, readLiteral(parser, elementToken)));
+        }
+        opExpr.put(key, new StreamedList(operandNodes));
+      }
+      else
+      {
+        opExpr.put(key, readLiteral(parser, token));
+      }
+    }
+    if(null == lhsLabel)
+    {
+      throw new MqlSyntaxException("An operator expression cannot be empty");
+    }
+
+    if(null == lhsKey)
+    {
+      final var paramRef = MqlParameterReference.from(opExpr);
+      if(null != paramRef)
+      {
+        return nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, paramRef);
+      }
+    }
+
+    return createValueOperatorNode(
+      nodeRegistry,
+      new JpaEntityAttributePath(lhsLabel),
+      opExpr);
+  }
+
+  private MqlAstNode createValueOperatorNode(
+    MqlAstNodeRegistry nodeRegistry,
+    JpaEntityAttributePath lhsPath,
+    Map<String, Object> opExpr
+  )
+  {
+    final var opNameSet = new HashSet<String>();
+    for(final var key : opExpr.keySet())
+    {
+      opNameSet.add(isOperatorName(key) ? key.substring(1) : null);
+    }
+
+    String opName = null;
+    if(opNameSet.contains("attrPath"))
+    {
+      opName = "attrPath";
+    }
+    else if(opNameSet.contains("isNull"))
+    {
+      opName = "isNull";
+    }
+    else if(opNameSet.contains("lte") || opNameSet.contains("gt"))
+    {
+      opName = (opNameSet.contains("lte") ? "lte" : "gt");
+    }
+    else if(opNameSet.contains("lt") || opNameSet.contains("gte"))
+    {
+      opName = (opNameSet.contains("lt") ? "lt" : "gte");
+    }
+    else if(opNameSet.contains("ne") || opNameSet.contains("eq"))
+    {
+      opName = (opNameSet.contains("ne") ? "ne" : "eq");
+    }
+    else if(opNameSet.contains("nregex") || opNameSet.contains("regex"))
+    {
+      throw new NotImplementedException();
+    }
+    else if(opNameSet.contains("nlike") || opNameSet.contains("like"))
+    {
+      opName = (opNameSet.contains("nlike") ? "nlike" : "like");
+    }
+    else if(opNameSet.contains("nin") || opNameSet.contains("in"))
+    {
+      opName = (opNameSet.contains("nin") ? "nin" : "in");
+    }
+    if(null == opName)
+    {
+      return null;
+    }
+
+    final var rawValue = opExpr.get("$" + opName);
+    final var paramRef = MqlParameterReference.from(rawValue);
+    final var value = (null != paramRef ? paramRef : rawValue);
+    final var opNode = nodeRegistry.create(MqlAstNode.Kind.VALUE_OPERATOR, opName);
+
+    switch(opName)
+    {
+    case "attrPath":
+    {
+      if(!(value instanceof String))
+      {
+        throw new MqlSyntaxException(String.format("The operand of %s clause must be a string", opName));
+      }
+
+      opNode.addChild(nodeRegistry.create(
+        MqlAstNode.Kind.LITERAL,
+        null,
+        new JpaEntityAttributePath((String)value)));
+    }
+      break;
+    case "isNull":
+    case "lte":
+    case "gt":
+    case "lt":
+    case "gte":
+      opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.ATTRIBUTE_PATH, null, lhsPath));
+      opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, value));
+      break;
+    case "ne":
+    case "eq":
+      opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.ATTRIBUTE_PATH, null, lhsPath));
+      if(value instanceof NestedOperator)
+      {
+        final var rhsNode = ((NestedOperator)value).node;
+        if(null != rhsNode)
+        {
+          opNode.addChild(rhsNode);
+        }
+      }
+      else
+      {
+        opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, value));
+      }
+      break;
+    case "nlike":
+    case "like":
+    {
+      final var caseSensitive = (opExpr.containsKey("$caseSensitive")
+        ? opExpr.get("$caseSensitive")
+        : Boolean.TRUE);
+      if(!(caseSensitive instanceof Boolean))
+      {
+        throw new MqlSyntaxException(String.format("The operand of %s clause must be a boolean", "caseSensitive"));
+      }
+
+      Character escapeValue = null;
+      final var escapeExprValue = opExpr.get("$escape");
+      if(null != escapeExprValue)
+      {
+        if(!(escapeExprValue instanceof CharSequence) || ((CharSequence)escapeExprValue).length() != 1)
+        {
+          throw new MqlSyntaxException(String.format("The operand of %s clause must be a single character", "escape"));
+        }
+
+        escapeValue = ((CharSequence)escapeExprValue).charAt(0);
+      }
+
+      if(!(value instanceof String) && null == paramRef)
+      {
+        throw new MqlSyntaxException(String.format("The operand of %s clause must be a string", opName));
+      }
+
+      opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.ATTRIBUTE_PATH, null, lhsPath));
+      opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, value));
+      opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, caseSensitive));
+      opNode.addChild(nodeRegistry.create(
+        MqlAstNode.Kind.LITERAL,
+        null,
+        MqlExpressionParser.normalizeEscapeCase(escapeValue, (Boolean)caseSensitive)));
+    }
+      break;
+    case "nin":
+    case "in":
+    {
+      if(!(value instanceof StreamedList) && null == paramRef)
+      {
+        throw new MqlSyntaxException(String.format("The operand of %s operator must be a list", opName));
+      }
+
+      opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.ATTRIBUTE_PATH, null, lhsPath));
+      if(null != paramRef)
+      {
+        opNode.addChild(nodeRegistry.create(MqlAstNode.Kind.LITERAL, null, paramRef));
+      }
+      else
+      {
+        for(final var operandNode : ((StreamedList)value).nodes)
+        {
+          opNode.addChild(operandNode);
+        }
+      }
+    }
+      break;
+    default:
+      throw new RuntimeException();
+    }
+
+    return opNode;
+  }
+
+  private Object readLiteral(
+    JsonParser parser,
+    JsonToken token
+  ) throws IOException
+  {
+    Object value = null;
+
+    switch(token)
+    {
+    case VALUE_STRING:
+      value = parser.getText();
+      break;
+    case VALUE_NUMBER_INT:
+      if(useBigIntegerForInts)
+      {
+        value = parser.getBigIntegerValue();
+      }
+      else if(useLongForInts && JsonParser.NumberType.INT == parser.getNumberType())
+      {
+        value = parser.getLongValue();
+      }
+      else
+      {
+        value = parser.getNumberValue();
+      }
+      break;
+    case VALUE_NUMBER_FLOAT:
+      value = (useBigDecimalForFloats ? parser.getDecimalValue() : parser.getDoubleValue());
+      break;
+    case VALUE_TRUE:
+      value = Boolean.TRUE;
+      break;
+    case VALUE_FALSE:
+      value = Boolean.FALSE;
+      break;
+    case VALUE_NULL:
+      value = null;
+      break;
+    case VALUE_EMBEDDED_OBJECT:
+      value = parser.getEmbeddedObject();
+      break;
+    case START_OBJECT:
+    case START_ARRAY:
+      value = objectMapper.readValue(parser, Object.class);
+      break;
+    default:
+      throw new MqlSyntaxException(String.format("Unexpected token %s", token));
+    }
+
+    return value;
+  }
+
+  private final ObjectMapper objectMapper;
+
+  private final String inputEntityName;
+
+  private final boolean useBigIntegerForInts;
+
+  private final boolean useLongForInts;
+
+  private final boolean useBigDecimalForFloats;
+}
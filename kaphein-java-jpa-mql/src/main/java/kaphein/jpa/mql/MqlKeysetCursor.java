@@ -0,0 +1,125 @@
+package kaphein.jpa.mql;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import kaphein.jpa.core.AssertArg;
+
+/**
+ * The sort key values of the last row of a page for keyset pagination.
+ * <p>
+ * The values are in the order of the order by terms followed by the id attributes of the entity. A cursor can be
+ * passed to clients as an opaque token by {@link #toToken()} and restored by {@link #fromToken(String)}. The values
+ * of a restored cursor are converted to the java types of the attributes on binding.
+ */
+public final class MqlKeysetCursor implements Serializable
+{
+  public static MqlKeysetCursor of(Object... values)
+  {
+    AssertArg.isNotNull(values, "values");
+
+    return of(Arrays.asList(values));
+  }
+
+  public static MqlKeysetCursor of(List<?> values)
+  {
+    AssertArg.isNotNull(values, "values");
+
+    return new MqlKeysetCursor(values);
+  }
+
+  /**
+   * @throws MqlException
+   *           If the token is not a valid cursor token.
+   */
+  public static MqlKeysetCursor fromToken(String token)
+  {
+    AssertArg.isNotBlank(token, "token");
+
+    try
+    {
+      final var json = Base64
+        .getUrlDecoder()
+        .decode(token);
+
+      return new MqlKeysetCursor(TOKEN_OBJECT_MAPPER.readValue(json, VALUES_TYPE));
+    }
+    catch(final IOException | IllegalArgumentException e)
+    {
+      throw new MqlException(String.format("The cursor token is invalid: %s", e.getMessage()));
+    }
+  }
+
+  private MqlKeysetCursor(List<?> values)
+  {
+    this.values = Collections.unmodifiableList(new ArrayList<>(values));
+  }
+
+  public List<Object> getValues()
+  {
+    return values;
+  }
+
+  /**
+   * @return A URL-safe string that encodes the values.
+   */
+  public String toToken()
+  {
+    try
+    {
+      return Base64
+        .getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(TOKEN_OBJECT_MAPPER.writeValueAsBytes(values));
+    }
+    catch(final IOException ioe)
+    {
+      throw new MqlException(ioe.getMessage());
+    }
+  }
+
+  @Override
+  public boolean equals(Object obj)
+  {
+    return this == obj
+      || (obj instanceof MqlKeysetCursor && values.equals(((MqlKeysetCursor)obj).values));
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return values.hashCode();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "MqlKeysetCursor" + values;
+  }
+
+  private static final long serialVersionUID = 1L;
+
+  private static final TypeReference<List<Object>> VALUES_TYPE = new TypeReference<>()
+  {
+  };
+
+  /**
+   * Writes temporal values as ISO-8601 strings and reads decimals without loss of precision.
+   */
+  private static final ObjectMapper TOKEN_OBJECT_MAPPER = Jackson2ObjectMapperUtils
+    .configureObjectMapper(new ObjectMapper())
+    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+    .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+
+  private final List<Object> values;
+}
@@ -0,0 +1,60 @@
+package kaphein.jpa.mql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jakarta.persistence.metamodel.Attribute;
+import kaphein.jpa.core.AssertArg;
+import kaphein.jpa.core.JpaEntityAttributePath;
+
+/**
+ * A sort key of keyset pagination that reads its value from a fetched entity.
+ */
+class MqlKeysetKey
+{
+  MqlKeysetKey(
+    JpaEntityAttributePath path,
+    List<Attribute<?, ?>> attributes
+  )
+  {
+    this.path = AssertArg.isNotNull(path, "path");
+    AssertArg.isNotNull(attributes, "attributes");
+
+    final var accessors = new ArrayList<MqlAttributeAccessor>(attributes.size());
+    for(final var attr : attributes)
+    {
+      accessors.add(MqlAttributeAccessor.of(attr));
+    }
+    this.accessors = Collections.unmodifiableList(accessors);
+  }
+
+  public JpaEntityAttributePath getPath()
+  {
+    return path;
+  }
+
+  /**
+   * @return The value of the key, or {@code null} if any attribute on the path is {@code null}.
+   */
+  public Object readValue(Object entity)
+  {
+    AssertArg.isNotNull(entity, "entity");
+
+    Object value = entity;
+    for(final var accessor : accessors)
+    {
+      value = accessor.read(value);
+      if(null == value)
+      {
+        break;
+      }
+    }
+
+    return value;
+  }
+
+  private final JpaEntityAttributePath path;
+
+  private final List<MqlAttributeAccessor> accessors;
+}
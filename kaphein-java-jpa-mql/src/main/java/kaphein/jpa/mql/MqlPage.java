@@ -0,0 +1,74 @@
+package kaphein.jpa.mql;
+
+import java.util.Collections;
+import java.util.List;
+
+import kaphein.jpa.core.AssertArg;
+
+/**
+ * The items of a page, the total count of the items that match the filter, and whether a next page exists.
+ */
+public class MqlPage<E>
+{
+  MqlPage(
+    List<? extends E> items,
+    Long totalCount
+  )
+  {
+    this(items, totalCount, true, null);
+  }
+
+  MqlPage(
+    List<? extends E> items,
+    Long totalCount,
+    boolean totalCountExact,
+    Boolean hasNext
+  )
+  {
+    this.items = Collections.unmodifiableList(AssertArg.isNotNull(items, "items"));
+    this.totalCount = totalCount;
+    this.totalCountExact = totalCountExact;
+    this.hasNext = hasNext;
+  }
+
+  public List<E> getItems()
+  {
+    return items;
+  }
+
+  /**
+   * @return The total count, or {@code null} if the count query is disabled.
+   * @see #isTotalCountExact()
+   */
+  public Long getTotalCount()
+  {
+    return totalCount;
+  }
+
+  /**
+   * @return {@code false} if the total count is an estimate, or the maximum count of a capped count that more items
+   *         match.
+   * @see MqlCountStrategy
+   */
+  public boolean isTotalCountExact()
+  {
+    return totalCountExact;
+  }
+
+  /**
+   * @return Whether a next page exists, or {@code null} if it is unknown as neither the count query nor has-next
+   *         probing is enabled, or as a full page is sought after a keyset cursor without has-next probing.
+   */
+  public Boolean hasNext()
+  {
+    return hasNext;
+  }
+
+  private final List<E> items;
+
+  private final Long totalCount;
+
+  private final boolean totalCountExact;
+
+  private final Boolean hasNext;
+}
@@ -0,0 +1,286 @@
+package kaphein.jpa.mql;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import kaphein.jpa.core.AssertArg;
+
+/**
+ * Executes the item query and the count query of a {@link MqlCompiledQuery}.
+ * <p>
+ * The item query is executed on the calling thread with the given entity manager, so the items are managed by it.
+ * Without an entity manager factory, the count query is executed after the item query with the same entity manager.
+ * With one, the count query is executed concurrently on the executor with an entity manager created from the factory
+ * for each execution, so the latency of a page is the longer of the two queries instead of their sum.
+ * <p>
+ * A concurrent count query runs on another connection and in another transaction, so it does not see the changes that
+ * the caller has flushed but not committed, and the total count may disagree with the items. Each concurrent count
+ * also holds a connection of its own while the caller holds one, so the executor must be bounded well below the size
+ * of the connection pool, or callers waiting for counts can exhaust it.
+ */
+public class MqlPagedQueryExecutor implements AutoCloseable
+{
+  /**
+   * The number of threads of the default executor, which bounds the count queries executed at a time.
+   */
+  public static final int DEFAULT_THREAD_COUNT = 4;
+
+  /**
+   * The JPA property of the query timeout in milliseconds.
+   */
+  static final String QUERY_TIMEOUT_PROPERTY = "jakarta.persistence.query.timeout";
+
+  /**
+   * Executes the count query after the item query with the entity manager of the caller.
+   */
+  public MqlPagedQueryExecutor()
+  {
+    this(null, null, false, null);
+  }
+
+  /**
+   * Uses a pool of {@value #DEFAULT_THREAD_COUNT} daemon threads.
+   */
+  public MqlPagedQueryExecutor(EntityManagerFactory entityManagerFactory)
+  {
+    this(
+      AssertArg.isNotNull(entityManagerFactory, "entityManagerFactory"),
+      createDefaultExecutorService(),
+      true,
+      null);
+  }
+
+  /**
+   * @param executor
+   *          A bounded executor that is not shut down by {@link #close()}.
+   */
+  public MqlPagedQueryExecutor(
+    EntityManagerFactory entityManagerFactory,
+    Executor executor
+  )
+  {
+    this(entityManagerFactory, executor, null);
+  }
+
+  /**
+   * @param executor
+   *          A bounded executor that is not shut down by {@link #close()}.
+   * @param countQueryTimeout
+   *          The timeout of a concurrent count query, or {@code null} not to set one. A count query keeps running
+   *          when the item query fails, so the timeout bounds how long it holds its connection.
+   */
+  public MqlPagedQueryExecutor(
+    EntityManagerFactory entityManagerFactory,
+    Executor executor,
+    Duration countQueryTimeout
+  )
+  {
+    this(
+      AssertArg.isNotNull(entityManagerFactory, "entityManagerFactory"),
+      AssertArg.isNotNull(executor, "executor"),
+      false,
+      countQueryTimeout);
+  }
+
+  private MqlPagedQueryExecutor(
+    EntityManagerFactory entityManagerFactory,
+    Executor executor,
+    boolean executorOwned,
+    Duration countQueryTimeout
+  )
+  {
+    if(null != countQueryTimeout && (countQueryTimeout.isNegative() || countQueryTimeout.isZero()))
+    {
+      throw new IllegalArgumentException("countQueryTimeout must be positive");
+    }
+
+    this.entityManagerFactory = entityManagerFactory;
+    this.executor = executor;
+    this.executorOwned = executorOwned;
+    this.countQueryTimeout = countQueryTimeout;
+  }
+
+  /**
+   * Executes the queries with the parameter values captured at the compilation.
+   */
+  public <E> MqlPage<E> execute(
+    EntityManager entityManager,
+    MqlCompiledQuery<E> compiledQuery
+  )
+  {
+    AssertArg.isNotNull(compiledQuery, "compiledQuery");
+
+    final var parameterValues = compiledQuery.getParameterValues();
+    if(null == parameterValues)
+    {
+      throw new MqlException("The parameter values have not been captured");
+    }
+
+    return execute(entityManager, compiledQuery, parameterValues);
+  }
+
+  /**
+   * @param placeholderValues
+   *          Unconverted values of the {@code $param} placeholders by name.
+   * @see MqlCompiledQuery#bind(EntityManager, Map)
+   */
+  public <E> MqlPage<E> execute(
+    EntityManager entityManager,
+    MqlCompiledQuery<E> compiledQuery,
+    Map<String, ?> placeholderValues
+  )
+  {
+    AssertArg.isNotNull(compiledQuery, "compiledQuery");
+
+    return execute(entityManager, compiledQuery, compiledQuery.resolveParameterValues(placeholderValues));
+  }
+
+  /**
+   * @param parameterValues
+   *          Unconverted parameter values in the order of {@link MqlCompiledQuery#getParameterSlots()}.
+   */
+  public <E> MqlPage<E> execute(
+    EntityManager entityManager,
+    MqlCompiledQuery<E> compiledQuery,
+    List<?> parameterValues
+  )
+  {
+    AssertArg.isNotNull(entityManager, "entityManager");
+    AssertArg.isNotNull(compiledQuery, "compiledQuery");
+    AssertArg.isNotNull(parameterValues, "parameterValues");
+
+    final var convertedValues = compiledQuery.convertParameterValues(parameterValues);
+    if(compiledQuery.isEmptyResult())
+    {
+      return compiledQuery.createPage(
+        Collections.emptyList(),
+        (compiledQuery.isCountQueryEnabled() ? 0L : null));
+    }
+
+    if(null == executor)
+    {
+      final var items = compiledQuery.fetchItems(entityManager, convertedValues);
+
+      return compiledQuery.createPage(
+        items,
+        (compiledQuery.isCountQueryEnabled() ? compiledQuery.countItems(entityManager, convertedValues) : null));
+    }
+
+    CompletableFuture<Long> countFuture = null;
+    if(compiledQuery.isCountQueryEnabled())
+    {
+      countFuture = CompletableFuture.supplyAsync(
+        () ->
+        {
+          final var countEntityManager = entityManagerFactory.createEntityManager();
+          try
+          {
+            if(null != countQueryTimeout)
+            {
+              countEntityManager.setProperty(QUERY_TIMEOUT_PROPERTY, countQueryTimeout.toMillis());
+            }
+
+            return compiledQuery.countItems(countEntityManager, convertedValues);
+          }
+          finally
+          {
+            countEntityManager.close();
+          }
+        },
+        executor);
+    }
+
+    List<? extends E> items = null;
+    try
+    {
+      items = compiledQuery.fetchItems(entityManager, convertedValues);
+    }
+    catch(final RuntimeException re)
+    {
+      if(null != countFuture)
+      {
+        // Only keeps a count that has not started from running. A running count is bounded by the timeout.
+        countFuture.cancel(false);
+      }
+
+      throw re;
+    }
+
+    return compiledQuery.createPage(
+      items,
+      (null == countFuture ? null : join(countFuture)));
+  }
+
+  /**
+   * Shuts down the executor if it was created by this instance.
+   */
+  @Override
+  public void close()
+  {
+    if(executorOwned)
+    {
+      ((ExecutorService)executor).shutdown();
+    }
+  }
+
+  private static <T> T join(CompletableFuture<T> future)
+  {
+    try
+    {
+      return future.join();
+    }
+    catch(final CompletionException ce)
+    {
+      final var cause = ce.getCause();
+      if(cause instanceof RuntimeException)
+      {
+        throw (RuntimeException)cause;
+      }
+      if(cause instanceof Error)
+      {
+        throw (Error)cause;
+      }
+
+      throw new MqlException("Cannot count the items", cause);
+    }
+  }
+
+  private static ExecutorService createDefaultExecutorService()
+  {
+    final var executorService = new ThreadPoolExecutor(
+      DEFAULT_THREAD_COUNT,
+      DEFAULT_THREAD_COUNT,
+      60L,
+      TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>(),
+      (runnable) ->
+      {
+        final var thread = new Thread(runnable, "mql-count-query");
+        thread.setDaemon(true);
+
+        return thread;
+      });
+    executorService.allowCoreThreadTimeOut(true);
+
+    return executorService;
+  }
+
+  private final EntityManagerFactory entityManagerFactory;
+
+  private final Executor executor;
+
+  private final boolean executorOwned;
+
+  private final Duration countQueryTimeout;
+}
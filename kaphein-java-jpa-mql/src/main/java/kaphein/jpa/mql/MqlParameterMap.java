@@ -1,7 +1,10 @@
 package kaphein.jpa.mql;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -10,6 +13,7 @@ class MqlParameterMap implements Map<String, Object>
   public MqlParameterMap()
   {
     paramMap = new LinkedHashMap<>();
+    paramSlots = new ArrayList<>();
     paramNameFormat = "__param%d";
     paramNameSeq = 1;
   }
@@ -63,16 +67,67 @@ class MqlParameterMap implements Map<String, Object>
   }
 
   public String issueParameterName(Object parameterValue)
+  {
+    return issueParameterName(
+      MqlParameterSlot.Kind.RAW,
+      null,
+      parameterValue);
+  }
+
+  /**
+   * Issues a parameter name and records a slot that describes how {@code parameterValue} must be converted before
+   * binding.
+   *
+   * @param parameterValue
+   *          The unconverted value of the parameter.
+   */
+  public String issueParameterName(
+    MqlParameterSlot.Kind kind,
+    Class<?> javaType,
+    Object parameterValue
+  )
+  {
+    return issueParameterName(kind, javaType, parameterValue, 0);
+  }
+
+  /**
+   * @param listPaddingLimit
+   *          The maximum size to which a list value is padded on binding, or {@code 0} not to pad.
+   */
+  public String issueParameterName(
+    MqlParameterSlot.Kind kind,
+    Class<?> javaType,
+    Object parameterValue,
+    int listPaddingLimit
+  )
   {
     final var paramName = String.format(paramNameFormat, paramNameSeq++);
     paramMap.put(paramName, parameterValue);
+    paramSlots.add(new MqlParameterSlot(
+      paramName,
+      kind,
+      javaType,
+      (parameterValue instanceof MqlParameterReference
+        ? ((MqlParameterReference)parameterValue).getName()
+        : null),
+      listPaddingLimit));
 
     return paramName;
   }
 
+  /**
+   * @return The parameter slots in the order of issuance.
+   */
+  public List<MqlParameterSlot> getParameterSlots()
+  {
+    return Collections.unmodifiableList(paramSlots);
+  }
+
   @Override
   public Object remove(Object key)
   {
+    paramSlots.removeIf(slot -> slot.getName().equals(key));
+
     return paramMap.remove(key);
   }
 
@@ -80,6 +135,7 @@ class MqlParameterMap implements Map<String, Object>
   public void clear()
   {
     paramMap.clear();
+    paramSlots.clear();
   }
 
   @Override
@@ -102,6 +158,8 @@ class MqlParameterMap implements Map<String, Object>
 
   private final Map<String, Object> paramMap;
 
+  private final List<MqlParameterSlot> paramSlots;
+
   private final String paramNameFormat;
 
   private int paramNameSeq;
@@ -0,0 +1,85 @@
+package kaphein.jpa.mql;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A placeholder operand written as {@code { "$param": "name" }} whose value is supplied when a compiled query is bound.
+ */
+final class MqlParameterReference
+{
+  static final String OPERATOR_KEY = "$param";
+
+  /**
+   * @return The reference if {@code value} is a placeholder expression, {@code null} otherwise.
+   */
+  static MqlParameterReference from(Object value)
+  {
+    if(!(value instanceof Map<?, ?>))
+    {
+      return null;
+    }
+
+    final var expr = (Map<?, ?>)value;
+    if(!expr.containsKey(OPERATOR_KEY))
+    {
+      return null;
+    }
+    if(1 != expr.size())
+    {
+      throw new MqlSyntaxException(String.format("%s cannot be combined with other operators", OPERATOR_KEY));
+    }
+
+    return of(expr.get(OPERATOR_KEY));
+  }
+
+  static MqlParameterReference of(Object name)
+  {
+    if(!(name instanceof String) || ((String)name).isBlank())
+    {
+      throw new MqlSyntaxException(String.format("The operand of %s must be a non-blank string", OPERATOR_KEY));
+    }
+
+    return new MqlParameterReference((String)name);
+  }
+
+  private MqlParameterReference(String name)
+  {
+    this.name = name;
+  }
+
+  public String getName()
+  {
+    return name;
+  }
+
+  @Override
+  public boolean equals(Object obj)
+  {
+    if(this == obj)
+    {
+      return true;
+    }
+
+    if(!(obj instanceof MqlParameterReference))
+    {
+      return false;
+    }
+
+    return name.equals(((MqlParameterReference)obj).name);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Objects.hash(MqlParameterReference.class, name);
+  }
+
+  @Override
+  public String toString()
+  {
+    return OPERATOR_KEY + "(" + name + ")";
+  }
+
+  private final String name;
+}
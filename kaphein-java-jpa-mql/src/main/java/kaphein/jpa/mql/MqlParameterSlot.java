@@ -0,0 +1,185 @@
+package kaphein.jpa.mql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import kaphein.jpa.core.AssertArg;
+
+/**
+ * Describes a named parameter of a {@link MqlCompiledQuery}.
+ */
+public final class MqlParameterSlot
+{
+  public static enum Kind
+  {
+    /**
+     * A single value that is converted to the java type of the slot.
+     */
+    VALUE,
+
+    /**
+     * A list of values whose elements are converted to the java type of the slot.
+     */
+    VALUE_LIST,
+
+    /**
+     * A value that is bound as is.
+     */
+    RAW;
+  }
+
+  MqlParameterSlot(
+    String name,
+    Kind kind,
+    Class<?> javaType,
+    String placeholderName
+  )
+  {
+    this(name, kind, javaType, placeholderName, 0);
+  }
+
+  /**
+   * @param listPaddingLimit
+   *          The maximum size to which a list value is padded, or {@code 0} not to pad.
+   */
+  MqlParameterSlot(
+    String name,
+    Kind kind,
+    Class<?> javaType,
+    String placeholderName,
+    int listPaddingLimit
+  )
+  {
+    this.name = AssertArg.isNotBlank(name, "name");
+    this.kind = AssertArg.isNotNull(kind, "kind");
+    this.javaType = (null == javaType ? Object.class : javaType);
+    this.placeholderName = placeholderName;
+    this.listPaddingLimit = listPaddingLimit;
+  }
+
+  /**
+   * @return The name of the parameter in the JPQL text.
+   */
+  public String getName()
+  {
+    return name;
+  }
+
+  public Kind getKind()
+  {
+    return kind;
+  }
+
+  /**
+   * @return The java type of the attribute that the parameter is compared with.
+   */
+  public Class<?> getJavaType()
+  {
+    return javaType;
+  }
+
+  /**
+   * @return The name of the {@code $param} placeholder whose value is bound to the parameter, or {@code null} if the
+   *         parameter is bound to a literal of the filter.
+   */
+  public String getPlaceholderName()
+  {
+    return placeholderName;
+  }
+
+  public boolean isPlaceholder()
+  {
+    return null != placeholderName;
+  }
+
+  /**
+   * @return {@code true} if a list value is padded to the next power of two by repeating its last element, so lists of
+   *         similar sizes expand to the same SQL text.
+   */
+  public boolean isListPadded()
+  {
+    return listPaddingLimit > 0;
+  }
+
+  Object convert(
+    Object value,
+    MqlTypeConverter typeConverter
+  )
+  {
+    if(value instanceof MqlParameterReference)
+    {
+      throw new MqlException(String.format(
+        "Parameter %s is not bound",
+        ((MqlParameterReference)value).getName()));
+    }
+
+    Object converted = value;
+
+    switch(kind)
+    {
+    case VALUE:
+      converted = typeConverter.convertType(value, javaType);
+      break;
+    case VALUE_LIST:
+      if(!(value instanceof List<?>))
+      {
+        throw new MqlException(String.format("The value of parameter %s must be a list", name));
+      }
+
+      converted = padList(typeConverter.convertElementType((List<?>)value, javaType));
+      break;
+    case RAW:
+      // Does nothing.
+      break;
+    default:
+      throw new MqlException(String.format("Parameter slot kind %s is not supported", kind.name()));
+    }
+
+    return converted;
+  }
+
+  private List<?> padList(List<?> values)
+  {
+    final var size = values.size();
+    if(listPaddingLimit < 1 || size < 2)
+    {
+      return values;
+    }
+
+    final var paddedSize = Math.min(
+      listPaddingLimit,
+      (Integer.highestOneBit(size - 1) << 1));
+    if(paddedSize <= size)
+    {
+      return values;
+    }
+
+    final var paddedValues = new ArrayList<Object>(paddedSize);
+    paddedValues.addAll(values);
+    final var lastValue = values.get(size - 1);
+    while(paddedValues.size() < paddedSize)
+    {
+      paddedValues.add(lastValue);
+    }
+
+    return paddedValues;
+  }
+
+  @Override
+  public String toString()
+  {
+    return (null == placeholderName
+      ? String.format("%s(%s %s)", name, kind.name(), javaType.getName())
+      : String.format("%s(%s %s $%s)", name, kind.name(), javaType.getName(), placeholderName));
+  }
+
+  private final String name;
+
+  private final Kind kind;
+
+  private final Class<?> javaType;
+
+  private final String placeholderName;
+
+  private final int listPaddingLimit;
+}
@@ -0,0 +1,956 @@
+package kaphein.jpa.mql;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import kaphein.jpa.mql.MqlPredicateCompiler.ValueTest;
+
+/**
+ * Generates a class per filter shape that implements {@link Predicate} by invoking the getters of the attribute paths
+ * directly, so that each condition has its own call sites that the JIT compiler can profile and inline.
+ * <p>
+ * The literals of a filter are compiled into {@link ValueTest}s that are passed to the constructor, so a class is shared
+ * by the filters of the same shape. Each condition is a static method that returns {@code 1} for true, {@code 0} for
+ * false and {@code -1} for unknown. Classes are defined as hidden classes on JDK 15 or later, and by
+ * {@link MethodHandles.Lookup#defineClass(byte[])} otherwise.
+ */
+final class MqlPredicateClassGenerator
+{
+  /**
+   * A condition of a filter shape.
+   */
+  static final class Term
+  {
+    static Term constant(boolean value)
+    {
+      return new Term((value ? Kind.TRUE : Kind.FALSE), Collections.emptyList(), null, -1);
+    }
+
+    /**
+     * @return The term itself if there is only one.
+     */
+    static Term junction(
+      boolean conjunction,
+      List<Term> terms
+    )
+    {
+      if(terms.isEmpty())
+      {
+        return constant(conjunction);
+      }
+
+      if(1 == terms.size())
+      {
+        return terms.get(0);
+      }
+
+      return new Term((conjunction ? Kind.AND : Kind.OR), terms, null, -1);
+    }
+
+    /**
+     * @param path
+     *          The getters or fields that read the value from the entity.
+     * @param testIndex
+     *          The index of the test of the value in the tests passed to the constructor.
+     */
+    static Term test(
+      Member[] path,
+      int testIndex
+    )
+    {
+      return new Term(Kind.TEST, Collections.emptyList(), path, testIndex);
+    }
+
+    private Term(
+      Kind kind,
+      List<Term> terms,
+      Member[] path,
+      int testIndex
+    )
+    {
+      this.kind = kind;
+      this.terms = terms;
+      this.path = path;
+      this.testIndex = testIndex;
+    }
+
+    @Override
+    public String toString()
+    {
+      switch(kind)
+      {
+      case TEST:
+        return String.format("%s[%d]", describePath(path), testIndex);
+      case AND:
+      case OR:
+        return terms
+          .stream()
+          .map(Term::toString)
+          .collect(Collectors.joining(",", kind + "(", ")"));
+      default:
+        return kind.toString();
+      }
+    }
+
+    private static enum Kind
+    {
+      TRUE,
+
+      FALSE,
+
+      AND,
+
+      OR,
+
+      TEST
+    }
+
+    private final Kind kind;
+
+    private final List<Term> terms;
+
+    private final Member[] path;
+
+    private final int testIndex;
+  }
+
+  /**
+   * @param joinPaths
+   *          The paths of the implicitly joined associations that must not be {@code null}.
+   * @return {@code null} if the maximum number of classes has been generated.
+   */
+  @SuppressWarnings("unchecked")
+  static Predicate<Object> instantiate(
+    Class<?> entityJavaType,
+    Term root,
+    List<Member[]> joinPaths,
+    ValueTest[] tests
+  )
+  {
+    final var key = List.<Object>of(
+      entityJavaType,
+      root.toString(),
+      joinPaths
+        .stream()
+        .map(MqlPredicateClassGenerator::describePath)
+        .collect(Collectors.joining(",")));
+
+    var constructor = CONSTRUCTORS.get(key);
+    if(null == constructor)
+    {
+      if(CONSTRUCTORS.size() >= MAX_CLASS_COUNT)
+      {
+        return null;
+      }
+
+      constructor = CONSTRUCTORS.computeIfAbsent(key, (k) -> defineClass(new ClassWriter(root, joinPaths).toByteArray()));
+    }
+
+    try
+    {
+      return (Predicate<Object>)constructor.invokeExact(tests);
+    }
+    catch(final RuntimeException | Error e)
+    {
+      throw e;
+    }
+    catch(final Throwable t)
+    {
+      throw new MqlException(String.format("Cannot instantiate the predicate class: %s", t.getMessage()));
+    }
+  }
+
+  /**
+   * @return {@code true} if a generated class can read the member without reflection.
+   */
+  static boolean isAccessible(Member member)
+  {
+    final var declaringClass = member.getDeclaringClass();
+    final var memberType = (member instanceof Method
+      ? ((Method)member).getReturnType()
+      : ((Field)member).getType());
+
+    return Modifier.isPublic(member.getModifiers())
+      && !Modifier.isStatic(member.getModifiers())
+      && Modifier.isPublic(declaringClass.getModifiers())
+      && !declaringClass.isInterface()
+      && isVisible(declaringClass)
+      && isVisible(memberType);
+  }
+
+  /**
+   * Called by generated classes.
+   */
+  static int toTruth(Boolean value)
+  {
+    return (null == value ? -1 : (value ? 1 : 0));
+  }
+
+  private MqlPredicateClassGenerator()
+  {
+    // Does nothing.
+  }
+
+  private static MethodHandle defineClass(byte[] classBytes)
+  {
+    try
+    {
+      Class<?> definedClass = null;
+      MethodHandles.Lookup classLookup = LOOKUP;
+      if(null != DEFINE_HIDDEN_CLASS)
+      {
+        final var options = Array.newInstance(DEFINE_HIDDEN_CLASS.getParameterTypes()[2].getComponentType(), 0);
+        classLookup = (MethodHandles.Lookup)DEFINE_HIDDEN_CLASS.invoke(LOOKUP, classBytes, true, options);
+        definedClass = classLookup.lookupClass();
+      }
+      else
+      {
+        definedClass = LOOKUP.defineClass(classBytes);
+      }
+
+      return classLookup
+        .findConstructor(definedClass, MethodType.methodType(void.class, ValueTest[].class))
+        .asType(MethodType.methodType(Predicate.class, ValueTest[].class));
+    }
+    catch(final InvocationTargetException e)
+    {
+      throw new MqlException(String.format("Cannot define the predicate class: %s", e.getCause()));
+    }
+    catch(final ReflectiveOperationException | RuntimeException | LinkageError e)
+    {
+      throw new MqlException(String.format("Cannot define the predicate class: %s", e));
+    }
+  }
+
+  /**
+   * @return {@code null} before JDK 15.
+   */
+  private static Method findDefineHiddenClass()
+  {
+    try
+    {
+      final var optionClass = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+
+      return MethodHandles.Lookup.class.getMethod(
+        "defineHiddenClass",
+        byte[].class,
+        boolean.class,
+        Array.newInstance(optionClass, 0).getClass());
+    }
+    catch(final ReflectiveOperationException e)
+    {
+      return null;
+    }
+  }
+
+  private static boolean isVisible(Class<?> type)
+  {
+    if(type.isPrimitive())
+    {
+      return true;
+    }
+
+    try
+    {
+      return type == Class.forName(type.getName(), false, MqlPredicateClassGenerator.class.getClassLoader());
+    }
+    catch(final ClassNotFoundException | LinkageError e)
+    {
+      return false;
+    }
+  }
+
+  private static String describePath(Member[] path)
+  {
+    return Arrays
+      .stream(path)
+      .map((member) -> member.getDeclaringClass().getName() + "#" + member.getName())
+      .collect(Collectors.joining("."));
+  }
+
+  /**
+   * Writes a class file of version 49, which is verified without stack map frames.
+   */
+  private static final class ClassWriter
+  {
+    ClassWriter(
+      Term root,
+      List<Member[]> joinPaths
+    )
+    {
+      className = GENERATED_CLASS_NAME_PREFIX + CLASS_SEQUENCE.incrementAndGet();
+      this.root = root;
+      this.joinPaths = joinPaths;
+    }
+
+    byte[] toByteArray()
+    {
+      writeConstructor();
+      writeTestMethod();
+
+      final var classFile = new ByteVector();
+      classFile.putInt(0xCAFEBABE);
+      classFile.putShort(0);
+      classFile.putShort(49);
+
+      // The constant pool is completed by the methods, and the indexes written below.
+      final var thisClass = classRef(className);
+      final var superClass = classRef(OBJECT);
+      final var predicateInterface = classRef(internalNameOf(Predicate.class));
+      final var testsFieldName = utf8(TESTS_FIELD);
+      final var testsFieldDesc = utf8(TESTS_DESC);
+
+      classFile.putShort(constantCount);
+      classFile.putBytes(constantPool);
+      classFile.putShort(ACC_FINAL | ACC_SUPER);
+      classFile.putShort(thisClass);
+      classFile.putShort(superClass);
+      classFile.putShort(1);
+      classFile.putShort(predicateInterface);
+
+      classFile.putShort(1);
+      classFile.putShort(ACC_PRIVATE | ACC_FINAL);
+      classFile.putShort(testsFieldName);
+      classFile.putShort(testsFieldDesc);
+      classFile.putShort(0);
+
+      classFile.putShort(methodCount);
+      classFile.putBytes(methods);
+      classFile.putShort(0);
+
+      return classFile.toByteArray();
+    }
+
+    private void writeConstructor()
+    {
+      final var code = new Code();
+      code.op(ALOAD_0);
+      code.op(INVOKESPECIAL);
+      code.putShort(methodRef(OBJECT, "<init>", "()V"));
+      code.op(ALOAD_0);
+      code.op(ALOAD_1);
+      code.op(PUTFIELD);
+      code.putShort(fieldRef(className, TESTS_FIELD, TESTS_DESC));
+      code.op(RETURN);
+
+      writeMethod(ACC_PUBLIC, "<init>", "(" + TESTS_DESC + ")V", code, 2);
+    }
+
+    private void writeTestMethod()
+    {
+      final var code = new Code();
+
+      // Implicit joins are inner joins.
+      for(final var joinPath : joinPaths)
+      {
+        final var joined = code.newLabel();
+        code.op(ALOAD_1);
+        code.op(INVOKESTATIC);
+        code.putShort(methodRef(className, writePathMethod(joinPath), PATH_METHOD_DESC));
+        code.jump(IFNONNULL, joined);
+        code.op(ICONST_0);
+        code.op(IRETURN);
+        code.mark(joined);
+      }
+
+      final var notTrue = code.newLabel();
+      code.op(ALOAD_0);
+      code.op(GETFIELD);
+      code.putShort(fieldRef(className, TESTS_FIELD, TESTS_DESC));
+      code.op(ALOAD_1);
+      code.op(INVOKESTATIC);
+      code.putShort(methodRef(className, writeConditionMethod(root), CONDITION_METHOD_DESC));
+      code.op(ICONST_1);
+      code.jump(IF_ICMPNE, notTrue);
+      code.op(ICONST_1);
+      code.op(IRETURN);
+      code.mark(notTrue);
+      code.op(ICONST_0);
+      code.op(IRETURN);
+
+      writeMethod(ACC_PUBLIC, "test", "(Ljava/lang/Object;)Z", code, 2);
+    }
+
+    /**
+     * @return The name of a static method that takes the tests and the entity and returns the truth of the term.
+     */
+    private String writeConditionMethod(Term term)
+    {
+      final var childMethodNames = new ArrayList<String>(term.terms.size());
+      for(final var child : term.terms)
+      {
+        childMethodNames.add(writeConditionMethod(child));
+      }
+
+      final var code = new Code();
+      switch(term.kind)
+      {
+      case TRUE:
+        code.op(ICONST_1);
+        code.op(IRETURN);
+        break;
+      case FALSE:
+        code.op(ICONST_0);
+        code.op(IRETURN);
+        break;
+      case TEST:
+        code.op(ALOAD_0);
+        code.pushInt(term.testIndex);
+        code.op(AALOAD);
+        code.op(ALOAD_1);
+        code.op(INVOKESTATIC);
+        code.putShort(methodRef(className, writePathMethod(term.path), PATH_METHOD_DESC));
+        code.op(INVOKEINTERFACE);
+        code.putShort(interfaceMethodRef(
+          internalNameOf(ValueTest.class),
+          "test",
+          "(Ljava/lang/Object;)Ljava/lang/Boolean;"));
+        code.putByte(2);
+        code.putByte(0);
+        code.op(INVOKESTATIC);
+        code.putShort(methodRef(
+          internalNameOf(MqlPredicateClassGenerator.class),
+          "toTruth",
+          "(Ljava/lang/Boolean;)I"));
+        code.op(IRETURN);
+        break;
+      case AND:
+      case OR:
+      {
+        // Local 2 is the truth of the current term, and local 3 the result unless a term decides it.
+        final var conjunction = Term.Kind.AND.equals(term.kind);
+        code.op(conjunction ? ICONST_1 : ICONST_0);
+        code.op(ISTORE_3);
+        for(final var childMethodName : childMethodNames)
+        {
+          final var undecided = code.newLabel();
+          final var known = code.newLabel();
+          code.op(ALOAD_0);
+          code.op(ALOAD_1);
+          code.op(INVOKESTATIC);
+          code.putShort(methodRef(className, childMethodName, CONDITION_METHOD_DESC));
+          code.op(ISTORE_2);
+          code.op(ILOAD_2);
+          if(conjunction)
+          {
+            code.jump(IFNE, undecided);
+            code.op(ICONST_0);
+          }
+          else
+          {
+            code.op(ICONST_1);
+            code.jump(IF_ICMPNE, undecided);
+            code.op(ICONST_1);
+          }
+          code.op(IRETURN);
+          code.mark(undecided);
+          code.op(ILOAD_2);
+          code.jump(IFGE, known);
+          code.op(ICONST_M1);
+          code.op(ISTORE_3);
+          code.mark(known);
+        }
+        code.op(ILOAD_3);
+        code.op(IRETURN);
+      }
+        break;
+      default:
+        throw new MqlException(String.format("Term %s is not supported", term.kind));
+      }
+
+      final var methodName = "condition" + conditionMethodCount;
+      ++conditionMethodCount;
+      writeMethod(ACC_PRIVATE | ACC_STATIC, methodName, CONDITION_METHOD_DESC, code, 4);
+
+      return methodName;
+    }
+
+    /**
+     * @return The name of a static method that reads the value of the path from the entity, or {@code null} if an
+     *         association on the path is {@code null}.
+     */
+    private String writePathMethod(Member[] path)
+    {
+      final var description = describePath(path);
+      final var existingMethodName = pathMethodNames.get(description);
+      if(null != existingMethodName)
+      {
+        return existingMethodName;
+      }
+
+      final var code = new Code();
+      code.op(ALOAD_0);
+      for(var i = 0; i < path.length; ++i)
+      {
+        if(i > 0)
+        {
+          final var notNull = code.newLabel();
+          code.op(ASTORE_0);
+          code.op(ALOAD_0);
+          code.jump(IFNONNULL, notNull);
+          code.op(ACONST_NULL);
+          code.op(ARETURN);
+          code.mark(notNull);
+          code.op(ALOAD_0);
+        }
+
+        final var member = path[i];
+        final var owner = internalNameOf(member.getDeclaringClass());
+        code.op(CHECKCAST);
+        code.putShort(classRef(owner));
+
+        Class<?> valueType = null;
+        if(member instanceof Method)
+        {
+          valueType = ((Method)member).getReturnType();
+          code.op(INVOKEVIRTUAL);
+          code.putShort(methodRef(owner, member.getName(), "()" + descriptorOf(valueType)));
+        }
+        else
+        {
+          valueType = ((Field)member).getType();
+          code.op(GETFIELD);
+          code.putShort(fieldRef(owner, member.getName(), descriptorOf(valueType)));
+        }
+
+        if(valueType.isPrimitive())
+        {
+          final var boxType = internalNameOf(MethodType.methodType(valueType).wrap().returnType());
+          code.op(INVOKESTATIC);
+          code.putShort(methodRef(boxType, "valueOf", "(" + descriptorOf(valueType) + ")L" + boxType + ";"));
+        }
+      }
+      code.op(ARETURN);
+
+      final var methodName = "path" + pathMethodNames.size();
+      pathMethodNames.put(description, methodName);
+      writeMethod(ACC_PRIVATE | ACC_STATIC, methodName, PATH_METHOD_DESC, code, 1);
+
+      return methodName;
+    }
+
+    private void writeMethod(
+      int access,
+      String name,
+      String descriptor,
+      Code code,
+      int maxLocals
+    )
+    {
+      final var bytes = code.toByteArray();
+      methods.putShort(access);
+      methods.putShort(utf8(name));
+      methods.putShort(utf8(descriptor));
+      methods.putShort(1);
+      methods.putShort(utf8("Code"));
+      methods.putInt(12 + bytes.length);
+      methods.putShort(MAX_STACK);
+      methods.putShort(maxLocals);
+      methods.putInt(bytes.length);
+      methods.putBytes(bytes);
+      methods.putShort(0);
+      methods.putShort(0);
+      ++methodCount;
+    }
+
+    private int utf8(String value)
+    {
+      return constant("U" + value, (pool) ->
+      {
+        pool.putByte(1);
+        pool.putUtf8(value);
+      });
+    }
+
+    private int classRef(String internalName)
+    {
+      final var nameIndex = utf8(internalName);
+
+      return constant("C" + internalName, (pool) ->
+      {
+        pool.putByte(7);
+        pool.putShort(nameIndex);
+      });
+    }
+
+    private int fieldRef(
+      String owner,
+      String name,
+      String descriptor
+    )
+    {
+      return memberRef(9, owner, name, descriptor);
+    }
+
+    private int methodRef(
+      String owner,
+      String name,
+      String descriptor
+    )
+    {
+      return memberRef(10, owner, name, descriptor);
+    }
+
+    private int interfaceMethodRef(
+      String owner,
+      String name,
+      String descriptor
+    )
+    {
+      return memberRef(11, owner, name, descriptor);
+    }
+
+    private int memberRef(
+      int tag,
+      String owner,
+      String name,
+      String descriptor
+    )
+    {
+      final var classIndex = classRef(owner);
+      final var nameIndex = utf8(name);
+      final var descriptorIndex = utf8(descriptor);
+      final var nameAndTypeIndex = constant("N" + name + " " + descriptor, (pool) ->
+      {
+        pool.putByte(12);
+        pool.putShort(nameIndex);
+        pool.putShort(descriptorIndex);
+      });
+
+      return constant(tag + owner + " " + name + " " + descriptor, (pool) ->
+      {
+        pool.putByte(tag);
+        pool.putShort(classIndex);
+        pool.putShort(nameAndTypeIndex);
+      });
+    }
+
+    private int constant(
+      String key,
+      java.util.function.Consumer<ByteVector> writer
+    )
+    {
+      final var existingIndex = constantIndexes.get(key);
+      if(null != existingIndex)
+      {
+        return existingIndex;
+      }
+
+      if(constantCount >= 0xFFFF)
+      {
+        throw new MqlException("Too many constants in the predicate class");
+      }
+
+      writer.accept(constantPool);
+      final var index = constantCount;
+      ++constantCount;
+      constantIndexes.put(key, index);
+
+      return index;
+    }
+
+    private static String descriptorOf(Class<?> type)
+    {
+      if(type.isPrimitive())
+      {
+        return MethodType.methodType(type).toMethodDescriptorString().substring(2);
+      }
+
+      if(type.isArray())
+      {
+        return internalNameOf(type);
+      }
+
+      return "L" + internalNameOf(type) + ";";
+    }
+
+    private static String internalNameOf(Class<?> type)
+    {
+      return type.getName().replace('.', '/');
+    }
+
+    private final String className;
+
+    private final Term root;
+
+    private final List<Member[]> joinPaths;
+
+    private final ByteVector constantPool = new ByteVector();
+
+    private final Map<String, Integer> constantIndexes = new HashMap<>();
+
+    private int constantCount = 1;
+
+    private final ByteVector methods = new ByteVector();
+
+    private int methodCount;
+
+    private int conditionMethodCount;
+
+    private final Map<String, String> pathMethodNames = new HashMap<>();
+  }
+
+  /**
+   * The code of a method with forward jumps to labels.
+   */
+  private static final class Code extends ByteVector
+  {
+    int newLabel()
+    {
+      labelOffsets.add(-1);
+
+      return labelOffsets.size() - 1;
+    }
+
+    void mark(int label)
+    {
+      labelOffsets.set(label, size());
+    }
+
+    void op(int opcode)
+    {
+      putByte(opcode);
+    }
+
+    void jump(
+      int opcode,
+      int label
+    )
+    {
+      jumps.add(new int[] {size(), label});
+      putByte(opcode);
+      putShort(0);
+    }
+
+    void pushInt(int value)
+    {
+      if(value > Short.MAX_VALUE)
+      {
+        throw new MqlException("Too many conditions in the predicate class");
+      }
+
+      op(SIPUSH);
+      putShort(value);
+    }
+
+    @Override
+    byte[] toByteArray()
+    {
+      final var bytes = super.toByteArray();
+      for(final var jump : jumps)
+      {
+        final var offset = labelOffsets.get(jump[1]) - jump[0];
+        bytes[jump[0] + 1] = (byte)(offset >>> 8);
+        bytes[jump[0] + 2] = (byte)offset;
+      }
+
+      return bytes;
+    }
+
+    private final List<Integer> labelOffsets = new ArrayList<>();
+
+    private final List<int[]> jumps = new ArrayList<>();
+  }
+
+  private static class ByteVector
+  {
+    void putByte(int value)
+    {
+      ensureCapacity(1);
+      bytes[length] = (byte)value;
+      ++length;
+    }
+
+    void putShort(int value)
+    {
+      putByte(value >>> 8);
+      putByte(value);
+    }
+
+    void putInt(int value)
+    {
+      putShort(value >>> 16);
+      putShort(value);
+    }
+
+    void putBytes(ByteVector other)
+    {
+      ensureCapacity(other.length);
+      System.arraycopy(other.bytes, 0, bytes, length, other.length);
+      length += other.length;
+    }
+
+    void putBytes(byte[] other)
+    {
+      ensureCapacity(other.length);
+      System.arraycopy(other, 0, bytes, length, other.length);
+      length += other.length;
+    }
+
+    /**
+     * Puts the length and the modified UTF-8 encoding of the string.
+     */
+    void putUtf8(String value)
+    {
+      final var encoded = new ByteVector();
+      for(var i = 0; i < value.length(); ++i)
+      {
+        final int c = value.charAt(i);
+        if(c >= 0x01 && c <= 0x7F)
+        {
+          encoded.putByte(c);
+        }
+        else if(c <= 0x7FF)
+        {
+          encoded.putByte(0xC0 | (c >>> 6));
+          encoded.putByte(0x80 | (c & 0x3F));
+        }
+        else
+        {
+          encoded.putByte(0xE0 | (c >>> 12));
+          encoded.putByte(0x80 | ((c >>> 6) & 0x3F));
+          encoded.putByte(0x80 | (c & 0x3F));
+        }
+      }
+      if(encoded.length > 0xFFFF)
+      {
+        throw new MqlException("A constant of the predicate class is too long");
+      }
+
+      putShort(encoded.length);
+      putBytes(encoded);
+    }
+
+    int size()
+    {
+      return length;
+    }
+
+    byte[] toByteArray()
+    {
+      return Arrays.copyOf(bytes, length);
+    }
+
+    private void ensureCapacity(int extraLength)
+    {
+      if(length + extraLength > bytes.length)
+      {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extraLength));
+      }
+    }
+
+    private byte[] bytes = new byte[256];
+
+    private int length;
+  }
+
+  /**
+   * Generated classes are not unloaded while they are cached, so the number of filter shapes is bounded.
+   */
+  private static final int MAX_CLASS_COUNT = 1024;
+
+  private static final int MAX_STACK = 6;
+
+  private static final int ACC_PUBLIC = 0x0001;
+
+  private static final int ACC_PRIVATE = 0x0002;
+
+  private static final int ACC_STATIC = 0x0008;
+
+  private static final int ACC_FINAL = 0x0010;
+
+  private static final int ACC_SUPER = 0x0020;
+
+  private static final int ACONST_NULL = 0x01;
+
+  private static final int ICONST_M1 = 0x02;
+
+  private static final int ICONST_0 = 0x03;
+
+  private static final int ICONST_1 = 0x04;
+
+  private static final int SIPUSH = 0x11;
+
+  private static final int ILOAD_2 = 0x1C;
+
+  private static final int ILOAD_3 = 0x1D;
+
+  private static final int ALOAD_0 = 0x2A;
+
+  private static final int ALOAD_1 = 0x2B;
+
+  private static final int AALOAD = 0x32;
+
+  private static final int ISTORE_2 = 0x3D;
+
+  private static final int ISTORE_3 = 0x3E;
+
+  private static final int ASTORE_0 = 0x4B;
+
+  private static final int IFNE = 0x9A;
+
+  private static final int IFGE = 0x9C;
+
+  private static final int IF_ICMPNE = 0xA0;
+
+  private static final int IRETURN = 0xAC;
+
+  private static final int ARETURN = 0xB0;
+
+  private static final int RETURN = 0xB1;
+
+  private static final int GETFIELD = 0xB4;
+
+  private static final int PUTFIELD = 0xB5;
+
+  private static final int INVOKEVIRTUAL = 0xB6;
+
+  private static final int INVOKESPECIAL = 0xB7;
+
+  private static final int INVOKESTATIC = 0xB8;
+
+  private static final int INVOKEINTERFACE = 0xB9;
+
+  private static final int CHECKCAST = 0xC0;
+
+  private static final int IFNONNULL = 0xC7;
+
+  private static final String OBJECT = "java/lang/Object";
+
+  private static final String TESTS_FIELD = "tests";
+
+  private static final String TESTS_DESC = "[L" + ValueTest.class.getName().replace('.', '/') + ";";
+
+  private static final String CONDITION_METHOD_DESC = "(" + TESTS_DESC + "Ljava/lang/Object;)I";
+
+  private static final String PATH_METHOD_DESC = "(Ljava/lang/Object;)Ljava/lang/Object;";
+
+  private static final String GENERATED_CLASS_NAME_PREFIX = MqlPredicateClassGenerator.class
+    .getName()
+    .replace('.', '/') + "$$Predicate";
+
+  private static final AtomicLong CLASS_SEQUENCE = new AtomicLong();
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  private static final Method DEFINE_HIDDEN_CLASS = findDefineHiddenClass();
+
+  private static final ConcurrentHashMap<List<Object>, MethodHandle> CONSTRUCTORS = new ConcurrentHashMap<>();
+}
@@ -0,0 +1,1185 @@
+package kaphein.jpa.mql;
+
+import java.lang.reflect.Member;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.PluralAttribute;
+import jakarta.persistence.metamodel.SingularAttribute;
+import kaphein.jpa.core.AssertArg;
+import kaphein.jpa.core.JpaEntityAttributePath;
+import kaphein.jpa.core.Sort;
+import kaphein.jpa.core.Sort.NullOrder;
+
+/**
+ * Compiles a filter into a {@link Predicate} that evaluates entities in memory with the semantics of the emitted JPQL.
+ * <p>
+ * Conditions are evaluated in three-valued logic, so a comparison with {@code NULL} is unknown and an entity matches
+ * only if the filter is true. An entity whose attribute path passes through a {@code null} association does not match,
+ * as implicit joins are inner joins. A {@code $jpqlExists} sub query is evaluated over the association of the entity of
+ * its parent query to the entity type of the sub query.
+ * <p>
+ * Attributes are read by {@link MqlAttributeAccessor}s and literals are converted on compilation, so the predicate does
+ * not reflect. Strings are compared by {@link String#compareTo(String)}, which can differ from the collation of the
+ * database.
+ */
+class MqlPredicateCompiler<E>
+{
+  MqlPredicateCompiler(MqlQueryEmitterConfig<E> config)
+  {
+    this.config = AssertArg.isNotNull(config, "config");
+  }
+
+  /**
+   * @param placeholderValues
+   *          Unconverted values of the {@code $param} placeholders by name, or {@code null} if there is none.
+   */
+  Predicate<E> compile(
+    MqlExpressionParseResult parseResult,
+    Map<String, ?> placeholderValues
+  )
+  {
+    this.placeholderValues = placeholderValues;
+
+    final var rootContext = createRootContext(parseResult);
+    if(config.isPredicateClassGeneration())
+    {
+      final var generatedPredicate = compileGeneratedPredicate(rootContext);
+      if(null != generatedPredicate)
+      {
+        return generatedPredicate;
+      }
+    }
+
+    final var rootQuery = compileQuery(rootContext, 0);
+    final var frameSize = maxDepth + 1;
+
+    return (entity) ->
+    {
+      // The entities of the enclosing queries by the depth of their aliases.
+      final var entities = new Object[frameSize];
+      entities[0] = entity;
+
+      return rootQuery.test(entities);
+    };
+  }
+
+  /**
+   * Compiles the order by terms into a comparator of the semantics of the emitted {@code ORDER BY} clause, except that
+   * a path through a {@code null} association is sorted as {@code null} instead of excluding the entity by an implicit
+   * join.
+   * <p>
+   * {@link NullOrder#DEFAULT} sorts {@code null}s as the smallest values like H2, MySQL and SQL Server, while
+   * PostgreSQL and Oracle sort them as the largest values.
+   */
+  Comparator<E> compileComparator(
+    MqlExpressionParseResult parseResult,
+    List<Sort.Order> orderByTerms
+  )
+  {
+    final var rootContext = createRootContext(parseResult);
+
+    Comparator<E> comparator = null;
+    for(final var term : orderByTerms)
+    {
+      final var accessors = createAccessors(term.getPath(), rootContext.findAttributesOf(term.getPath()));
+
+      Comparator<Object> valueComparator = MqlPredicateCompiler::compareValues;
+      if(term.isDescending())
+      {
+        valueComparator = valueComparator.reversed();
+      }
+
+      final var nullOrder = Optional
+        .ofNullable(term.getNullOrder())
+        .orElse(NullOrder.DEFAULT);
+      final var nullsFirst = (NullOrder.DEFAULT.equals(nullOrder)
+        ? !term.isDescending()
+        : NullOrder.FIRST.equals(nullOrder));
+      final var termComparator = (nullsFirst
+        ? Comparator.nullsFirst(valueComparator)
+        : Comparator.nullsLast(valueComparator));
+      final Comparator<E> entityComparator = (lhs, rhs) -> termComparator.compare(
+        readPath(lhs, accessors),
+        readPath(rhs, accessors));
+
+      comparator = (null == comparator ? entityComparator : comparator.thenComparing(entityComparator));
+    }
+
+    return comparator;
+  }
+
+  /**
+   * Finds the conditions of the top level conjunction of the filter that compare an attribute of the root entity with
+   * literals. An entity matches the filter only if it matches all of them.
+   *
+   * @param placeholderValues
+   *          Unconverted values of the {@code $param} placeholders by name, or {@code null} if there is none.
+   */
+  List<MqlIndexCondition> findIndexConditions(
+    MqlExpressionParseResult parseResult,
+    Map<String, ?> placeholderValues
+  )
+  {
+    this.placeholderValues = placeholderValues;
+
+    final var rootContext = createRootContext(parseResult);
+    final var conditions = new ArrayList<MqlIndexCondition>();
+    collectIndexConditions(rootContext.getQueryNode().getChildNodeAt(0), rootContext, conditions);
+
+    return conditions;
+  }
+
+  /**
+   * @return A predicate that tells whether the entity at {@code depth} matches the query.
+   */
+  private Predicate<Object[]> compileQuery(
+    MqlSubQueryContext subQueryContext,
+    int depth
+  )
+  {
+    maxDepth = Math.max(maxDepth, depth);
+
+    final var joinReaders = new LinkedHashMap<String, ValueReader>();
+    final var whereCondition = compileCondition(
+      subQueryContext.getQueryNode().getChildNodeAt(0),
+      subQueryContext,
+      depth,
+      joinReaders);
+    final var requiredJoinReaders = joinReaders
+      .values()
+      .toArray(new ValueReader[0]);
+
+    return (entities) ->
+    {
+      for(final var joinReader : requiredJoinReaders)
+      {
+        if(null == joinReader.read(entities))
+        {
+          return false;
+        }
+      }
+
+      return null == whereCondition || Boolean.TRUE.equals(whereCondition.evaluate(entities));
+    };
+  }
+
+  /**
+   * @return {@code null} if the filter has a sub query, compares attribute paths, reads a member that a generated class
+   *         cannot access, or the maximum number of classes has been generated.
+   */
+  @SuppressWarnings("unchecked")
+  private Predicate<E> compileGeneratedPredicate(MqlSubQueryContext rootContext)
+  {
+    final var joinPaths = new LinkedHashMap<String, Member[]>();
+    final var tests = new ArrayList<ValueTest>();
+    final var root = planTerm(rootContext.getQueryNode().getChildNodeAt(0), rootContext, joinPaths, tests);
+    if(null == root)
+    {
+      return null;
+    }
+
+    return (Predicate<E>)(Predicate<?>)MqlPredicateClassGenerator.instantiate(
+      rootContext.getEntityType().getJavaType(),
+      root,
+      new ArrayList<>(joinPaths.values()),
+      tests.toArray(new ValueTest[0]));
+  }
+
+  /**
+   * @return {@code null} if the condition cannot be generated.
+   */
+  private MqlPredicateClassGenerator.Term planTerm(
+    MqlAstNode node,
+    MqlSubQueryContext rootContext,
+    Map<String, Member[]> joinPaths,
+    List<ValueTest> tests
+  )
+  {
+    switch(node.getKind())
+    {
+    case CLAUSE:
+      switch(node.getLabel())
+      {
+      case MqlAstOptimizer.FALSE_CLAUSE_LABEL:
+        return MqlPredicateClassGenerator.Term.constant(false);
+      case "and":
+      case "or":
+      {
+        final var terms = new ArrayList<MqlPredicateClassGenerator.Term>();
+        for(var i = 0; i < node.getChildCount(); ++i)
+        {
+          final var childNode = node.getChildNodeAt(i);
+          if(MqlAstNode.Kind.CLAUSE.equals(childNode.getKind()) && "comment".equals(childNode.getLabel()))
+          {
+            continue;
+          }
+
+          final var term = planTerm(childNode, rootContext, joinPaths, tests);
+          if(null == term)
+          {
+            return null;
+          }
+
+          terms.add(term);
+        }
+
+        return MqlPredicateClassGenerator.Term.junction("and".equals(node.getLabel()), terms);
+      }
+      default:
+        return null;
+      }
+    case VALUE_OPERATOR:
+    {
+      final var lhsPath = getLhsPath(node);
+      final var test = compileValueTest(node, rootContext.findJavaTypeOf(lhsPath));
+      if(null == test)
+      {
+        return null;
+      }
+
+      final var attrs = rootContext.findAttributesOf(lhsPath);
+      final var accessors = createAccessors(lhsPath, attrs);
+      final var path = new Member[accessors.length];
+      for(var i = 0; i < path.length; ++i)
+      {
+        path[i] = accessors[i].getAccessMember();
+        if(!MqlPredicateClassGenerator.isAccessible(path[i]))
+        {
+          return null;
+        }
+      }
+      for(final int joinLength : findJoinLengths(attrs))
+      {
+        joinPaths.putIfAbsent(String.join(".", lhsPath.subList(0, joinLength + 1)), Arrays.copyOf(path, joinLength));
+      }
+
+      tests.add(test);
+
+      return MqlPredicateClassGenerator.Term.test(path, tests.size() - 1);
+    }
+    default:
+      return null;
+    }
+  }
+
+  private void collectIndexConditions(
+    MqlAstNode node,
+    MqlSubQueryContext rootContext,
+    List<MqlIndexCondition> conditions
+  )
+  {
+    if(MqlAstNode.Kind.CLAUSE.equals(node.getKind()) && "and".equals(node.getLabel()))
+    {
+      for(var i = 0; i < node.getChildCount(); ++i)
+      {
+        collectIndexConditions(node.getChildNodeAt(i), rootContext, conditions);
+      }
+
+      return;
+    }
+
+    if(!MqlAstNode.Kind.VALUE_OPERATOR.equals(node.getKind()))
+    {
+      return;
+    }
+
+    final var lhsNode = node.getChildNodeAt(0);
+    if(!MqlAstNode.Kind.ATTRIBUTE_PATH.equals(lhsNode.getKind()))
+    {
+      return;
+    }
+
+    final var lhsPath = (JpaEntityAttributePath)lhsNode.getValue();
+    if(2 != lhsPath.size())
+    {
+      return;
+    }
+
+    final var label = node.getLabel();
+    final var lhsJavaType = rootContext.findJavaTypeOf(lhsPath);
+    if("in".equals(label))
+    {
+      final var values = config
+        .getTypeConverter()
+        .convertElementType(
+          resolveInValues(node)
+            .stream()
+            .filter((value) -> null != value)
+            .collect(Collectors.toList()),
+          lhsJavaType);
+      conditions.add(new MqlIndexCondition(lhsPath.get(1), MqlIndexCondition.Operator.IN, values));
+
+      return;
+    }
+
+    final var operator = INDEX_OPERATORS.get(label);
+    if(null == operator || 2 != node.getChildCount())
+    {
+      return;
+    }
+
+    final var rhsNode = node.getChildNodeAt(1);
+    if(!MqlAstNode.Kind.LITERAL.equals(rhsNode.getKind()) || null == rhsNode.getValue())
+    {
+      return;
+    }
+
+    // A comparison with a null placeholder value is unknown, so nothing matches.
+    final var resolvedValue = resolvePlaceholder(rhsNode.getValue());
+    if(null == resolvedValue)
+    {
+      conditions.add(new MqlIndexCondition(lhsPath.get(1), operator, List.of()));
+
+      return;
+    }
+
+    final Object value = config.getTypeConverter().convertType(resolvedValue, lhsJavaType);
+    conditions.add(new MqlIndexCondition(lhsPath.get(1), operator, List.of(value)));
+  }
+
+  /**
+   * @return {@code null} if the node is a comment.
+   */
+  private Condition compileCondition(
+    MqlAstNode node,
+    MqlSubQueryContext subQueryContext,
+    int depth,
+    Map<String, ValueReader> joinReaders
+  )
+  {
+    switch(node.getKind())
+    {
+    case CLAUSE:
+      switch(node.getLabel())
+      {
+      case "comment":
+        return null;
+      case MqlAstOptimizer.FALSE_CLAUSE_LABEL:
+        return (entities) -> Boolean.FALSE;
+      case "and":
+      case "or":
+      {
+        final var terms = new ArrayList<Condition>();
+        for(var i = 0; i < node.getChildCount(); ++i)
+        {
+          final var term = compileCondition(node.getChildNodeAt(i), subQueryContext, depth, joinReaders);
+          if(null != term)
+          {
+            terms.add(term);
+          }
+        }
+
+        return ("and".equals(node.getLabel()) ? and(terms) : or(terms));
+      }
+      case "nJpqlExists":
+      case "jpqlExists":
+        return compileExists(node, subQueryContext, depth);
+      default:
+        throw new MqlSyntaxException(String.format("Clause %s is not supported", node.getLabel()));
+      }
+    case VALUE_OPERATOR:
+      return compileValueOperator(node, subQueryContext, depth, joinReaders);
+    default:
+      throw new MqlSyntaxException(String.format("Node %s is not a condition", node.getKind()));
+    }
+  }
+
+  private Condition compileExists(
+    MqlAstNode node,
+    MqlSubQueryContext parentSubQueryContext,
+    int parentDepth
+  )
+  {
+    final var subQueryContext = new MqlSubQueryContext(queryBuilderCtxt, node);
+    parentSubQueryContext.addChild(subQueryContext);
+
+    final var accessor = MqlAttributeAccessor.of(findAssociationTo(parentSubQueryContext, subQueryContext));
+    final var depth = parentDepth + 1;
+    final var subQuery = compileQuery(subQueryContext, depth);
+    final var negated = node.getLabel().startsWith("n");
+
+    return (entities) ->
+    {
+      var candidates = accessor.read(entities[parentDepth]);
+      if(candidates instanceof Map<?, ?>)
+      {
+        candidates = ((Map<?, ?>)candidates).values();
+      }
+
+      var found = false;
+      if(candidates instanceof Collection<?>)
+      {
+        for(final var candidate : (Collection<?>)candidates)
+        {
+          entities[depth] = candidate;
+          if(subQuery.test(entities))
+          {
+            found = true;
+            break;
+          }
+        }
+      }
+      else if(null != candidates)
+      {
+        entities[depth] = candidates;
+        found = subQuery.test(entities);
+      }
+
+      return found != negated;
+    };
+  }
+
+  private Condition compileValueOperator(
+    MqlAstNode node,
+    MqlSubQueryContext subQueryContext,
+    int depth,
+    Map<String, ValueReader> joinReaders
+  )
+  {
+    final var label = node.getLabel();
+    final var lhsPath = getLhsPath(node);
+    final var lhs = compilePath(lhsPath, subQueryContext, depth, joinReaders);
+    final var test = compileValueTest(node, subQueryContext.findJavaTypeOf(lhsPath));
+    if(null != test)
+    {
+      return (entities) -> test.test(lhs.read(entities));
+    }
+
+    final var rhs = compileOperandPath(node.getChildNodeAt(1), subQueryContext, depth, joinReaders);
+    switch(label)
+    {
+    case "like":
+    case "nlike":
+    {
+      final var caseSensitive = Boolean.parseBoolean(String.valueOf(node.getChildNodeAt(2).getValue()));
+      final var escape = (Character)node.getChildNodeAt(3).getValue();
+      final var negated = label.startsWith("n");
+
+      return (entities) ->
+      {
+        final var value = lhs.read(entities);
+        final var pattern = rhs.read(entities);
+        if(null == value || null == pattern)
+        {
+          return null;
+        }
+
+        return compileLikePattern(normalizeCase(pattern.toString(), caseSensitive), escape)
+          .test(normalizeCase(value.toString(), caseSensitive)) != negated;
+      };
+    }
+    default:
+    {
+      final var op = ComparisonOperator.valueOf(label.toUpperCase(Locale.ROOT));
+
+      return (entities) -> compare(lhs.read(entities), rhs.read(entities), op);
+    }
+    }
+  }
+
+  /**
+   * @return A test of the value of the left hand side, or {@code null} if the right hand side is an attribute path.
+   */
+  private ValueTest compileValueTest(
+    MqlAstNode node,
+    Class<?> lhsJavaType
+  )
+  {
+    final var label = node.getLabel();
+    switch(label)
+    {
+    case "nin":
+    case "in":
+      return compileInTest(node, lhsJavaType);
+    case "isNull":
+    {
+      final var isNull = Boolean.parseBoolean(String.valueOf(node.getChildNodeAt(1).getValue()));
+
+      return (isNull ? (value) -> null == value : (value) -> null != value);
+    }
+    case "lte":
+    case "gt":
+    case "lt":
+    case "gte":
+    case "ne":
+    case "eq":
+      return compileComparisonTest(node, lhsJavaType);
+    case "like":
+    case "nlike":
+      return compileLikeTest(node);
+    case "regex":
+    case "nregex":
+      throw new MqlSyntaxException("Not implemented");
+    default:
+      throw new MqlSyntaxException(String.format("Operator %s is not supported", label));
+    }
+  }
+
+  private ValueTest compileInTest(
+    MqlAstNode node,
+    Class<?> lhsJavaType
+  )
+  {
+    final var rawValues = resolveInValues(node);
+    final var negated = node.getLabel().startsWith("n");
+    if(rawValues.isEmpty())
+    {
+      return (value) -> negated;
+    }
+
+    final var containsNull = rawValues.contains(null);
+    final var values = config
+      .getTypeConverter()
+      .convertElementType(
+        rawValues
+          .stream()
+          .filter((value) -> null != value)
+          .collect(Collectors.toList()),
+        lhsJavaType);
+    final Predicate<Object> containment = (values.stream().anyMatch((value) -> value instanceof BigDecimal)
+      ? (value) -> values.stream().anyMatch((element) -> valuesEqual(value, element))
+      : new HashSet<Object>(values)::contains);
+
+    return (value) ->
+    {
+      if(null == value)
+      {
+        return null;
+      }
+
+      if(containment.test(value))
+      {
+        return !negated;
+      }
+
+      return (containsNull ? null : negated);
+    };
+  }
+
+  /**
+   * @return The unconverted values of an {@code $in} or {@code $nin} operator.
+   */
+  private List<?> resolveInValues(MqlAstNode node)
+  {
+    final var firstOperand = (node.getChildCount() > 1 ? node.getChildNodeAt(1).getValue() : null);
+    if(2 == node.getChildCount() && firstOperand instanceof MqlParameterReference)
+    {
+      final var value = resolvePlaceholder(firstOperand);
+      if(!(value instanceof List<?>))
+      {
+        throw new MqlException(String.format(
+          "The value of parameter %s must be a list",
+          ((MqlParameterReference)firstOperand).getName()));
+      }
+
+      return (List<?>)value;
+    }
+
+    final var values = new ArrayList<Object>(node.getChildCount() - 1);
+    for(var i = 1; i < node.getChildCount(); ++i)
+    {
+      values.add(node.getChildNodeAt(i).getValue());
+    }
+
+    return values;
+  }
+
+  /**
+   * @return {@code null} if the right hand side is an attribute path.
+   */
+  private ValueTest compileComparisonTest(
+    MqlAstNode node,
+    Class<?> lhsJavaType
+  )
+  {
+    final var label = node.getLabel();
+    final var rhsNode = node.getChildNodeAt(1);
+    if(!MqlAstNode.Kind.LITERAL.equals(rhsNode.getKind()))
+    {
+      return null;
+    }
+
+    final var literal = rhsNode.getValue();
+    if(null == literal)
+    {
+      // A null literal is a null check, unlike a null placeholder value.
+      switch(label)
+      {
+      case "eq":
+        return (value) -> null == value;
+      case "ne":
+        return (value) -> null != value;
+      default:
+        throw new MqlSyntaxException(String.format("The operand of %s must not be null", label));
+      }
+    }
+
+    final var resolvedValue = resolvePlaceholder(literal);
+    final var rhs = (null == resolvedValue
+      ? null
+      : config.getTypeConverter().convertType(resolvedValue, lhsJavaType));
+    switch(label)
+    {
+    case "eq":
+      return (value) -> compare(value, rhs, ComparisonOperator.EQ);
+    case "ne":
+      return (value) -> compare(value, rhs, ComparisonOperator.NE);
+    case "lt":
+      return (value) -> compare(value, rhs, ComparisonOperator.LT);
+    case "lte":
+      return (value) -> compare(value, rhs, ComparisonOperator.LTE);
+    case "gt":
+      return (value) -> compare(value, rhs, ComparisonOperator.GT);
+    case "gte":
+      return (value) -> compare(value, rhs, ComparisonOperator.GTE);
+    default:
+      throw new MqlSyntaxException(String.format("Operator %s is not supported", label));
+    }
+  }
+
+  /**
+   * @return {@code null} if the pattern is an attribute path.
+   */
+  private ValueTest compileLikeTest(MqlAstNode node)
+  {
+    final var rhsNode = node.getChildNodeAt(1);
+    if(!MqlAstNode.Kind.LITERAL.equals(rhsNode.getKind()))
+    {
+      return null;
+    }
+
+    final var pattern = resolvePlaceholder(rhsNode.getValue());
+    if(null == pattern)
+    {
+      return (value) -> null;
+    }
+
+    final var caseSensitive = Boolean.parseBoolean(String.valueOf(node.getChildNodeAt(2).getValue()));
+    final var escape = (Character)node.getChildNodeAt(3).getValue();
+    final var negated = node.getLabel().startsWith("n");
+    final var matcher = compileLikePattern(normalizeCase(pattern.toString(), caseSensitive), escape);
+
+    return (value) ->
+    {
+      if(null == value)
+      {
+        return null;
+      }
+
+      return matcher.test(normalizeCase(value.toString(), caseSensitive)) != negated;
+    };
+  }
+
+  private ValueReader compileOperandPath(
+    MqlAstNode operandNode,
+    MqlSubQueryContext subQueryContext,
+    int depth,
+    Map<String, ValueReader> joinReaders
+  )
+  {
+    if(
+      !MqlAstNode.Kind.VALUE_OPERATOR.equals(operandNode.getKind())
+        || !"attrPath".equals(operandNode.getLabel())
+    )
+    {
+      throw new MqlSyntaxException("The right hand side must be a literal or an attribute path");
+    }
+
+    final var pathNode = operandNode.getChildNodeAt(0);
+    if(!MqlAstNode.Kind.LITERAL.equals(pathNode.getKind()))
+    {
+      throw new MqlSyntaxException("The operand of attrPath operator must be a literal");
+    }
+
+    return compilePath((JpaEntityAttributePath)pathNode.getValue(), subQueryContext, depth, joinReaders);
+  }
+
+  /**
+   * Adds the readers of the associations on the path to {@code joinReaders}, as the entity matches only if they are not
+   * {@code null}.
+   */
+  private ValueReader compilePath(
+    JpaEntityAttributePath path,
+    MqlSubQueryContext subQueryContext,
+    int depth,
+    Map<String, ValueReader> joinReaders
+  )
+  {
+    final var attrs = subQueryContext.findAttributesOf(path);
+    final var aliasDepth = findDepthOfAlias(path.get(0), subQueryContext, depth);
+
+    final var accessors = createAccessors(path, attrs);
+    for(final int joinLength : findJoinLengths(attrs))
+    {
+      final var joinAccessors = Arrays.copyOf(accessors, joinLength);
+      joinReaders.computeIfAbsent(
+        String.join(".", path.subList(0, joinLength + 1)),
+        (k) -> createPathReader(aliasDepth, joinAccessors));
+    }
+
+    return createPathReader(aliasDepth, accessors);
+  }
+
+  private MqlSubQueryContext createRootContext(MqlExpressionParseResult parseResult)
+  {
+    queryBuilderCtxt = new MqlQueryBuilderContext(
+      config.getMetamodel(),
+      parseResult.getRootNode());
+
+    return new MqlSubQueryContext(
+      queryBuilderCtxt,
+      queryBuilderCtxt.getRootNode().getChildNodeAt(0));
+  }
+
+  private Object resolvePlaceholder(Object value)
+  {
+    if(!(value instanceof MqlParameterReference))
+    {
+      return value;
+    }
+
+    final var name = ((MqlParameterReference)value).getName();
+    if(null == placeholderValues || !placeholderValues.containsKey(name))
+    {
+      throw new MqlException(String.format("Parameter %s is not bound", name));
+    }
+
+    return placeholderValues.get(name);
+  }
+
+  private static Attribute<?, ?> findAssociationTo(
+    MqlSubQueryContext parentSubQueryContext,
+    MqlSubQueryContext subQueryContext
+  )
+  {
+    final var parentEntityType = parentSubQueryContext.getEntityType();
+    final var targetJavaType = subQueryContext.getEntityType().getJavaType();
+    final var associations = parentEntityType
+      .getAttributes()
+      .stream()
+      .filter(Attribute::isAssociation)
+      .filter((attr) -> targetJavaType.equals((attr instanceof PluralAttribute<?, ?, ?>
+        ? ((PluralAttribute<?, ?, ?>)attr).getElementType().getJavaType()
+        : attr.getJavaType())))
+      .collect(Collectors.toList());
+    if(1 != associations.size())
+    {
+      throw new MqlSyntaxException(String.format(
+        "The sub query of %s cannot be evaluated in memory as %s has %d associations to it instead of one",
+        subQueryContext.getEntityType().getName(),
+        parentEntityType.getName(),
+        associations.size()));
+    }
+
+    return associations.get(0);
+  }
+
+  private static int findDepthOfAlias(
+    String alias,
+    MqlSubQueryContext subQueryContext,
+    int depth
+  )
+  {
+    var aliasDepth = depth;
+    for(var context = subQueryContext; null != context; context = context.getParent())
+    {
+      if(alias.equals(context.getAlias()))
+      {
+        return aliasDepth;
+      }
+
+      --aliasDepth;
+    }
+
+    throw new MqlSyntaxException(String.format("Cannot determine the entity type of alias %s", alias));
+  }
+
+  private static MqlAttributeAccessor[] createAccessors(
+    JpaEntityAttributePath path,
+    List<Attribute<?, ?>> attrs
+  )
+  {
+    final var accessors = new MqlAttributeAccessor[attrs.size()];
+    for(var i = 0; i < accessors.length; ++i)
+    {
+      final var attr = attrs.get(i);
+      if(attr.isCollection())
+      {
+        throw new MqlSyntaxException(String.format(
+          "Attribute path %s cannot pass through collection %s",
+          path,
+          attr.getName()));
+      }
+
+      accessors[i] = MqlAttributeAccessor.of(attr);
+    }
+
+    return accessors;
+  }
+
+  /**
+   * @return The lengths of the prefixes of the attributes that end with an implicitly joined association.
+   */
+  private static List<Integer> findJoinLengths(List<Attribute<?, ?>> attrs)
+  {
+    final var joinLengths = new ArrayList<Integer>();
+    for(var i = 0; i < attrs.size() - 1; ++i)
+    {
+      // The id of an association is read from the foreign key without a join.
+      final var joined = attrs.get(i).isAssociation()
+        && !(i == attrs.size() - 2 && isId(attrs.get(i + 1)));
+      if(joined)
+      {
+        joinLengths.add(i + 1);
+      }
+    }
+
+    return joinLengths;
+  }
+
+  private static JpaEntityAttributePath getLhsPath(MqlAstNode node)
+  {
+    final var lhsNode = node.getChildNodeAt(0);
+    if(!MqlAstNode.Kind.ATTRIBUTE_PATH.equals(lhsNode.getKind()))
+    {
+      throw new MqlSyntaxException(String.format(
+        "The left hand side of %s must be an attribute path",
+        node.getLabel()));
+    }
+
+    return (JpaEntityAttributePath)lhsNode.getValue();
+  }
+
+  private static boolean isId(Attribute<?, ?> attr)
+  {
+    return attr instanceof SingularAttribute<?, ?> && ((SingularAttribute<?, ?>)attr).isId();
+  }
+
+  private static ValueReader createPathReader(
+    int aliasDepth,
+    MqlAttributeAccessor[] accessors
+  )
+  {
+    if(1 == accessors.length)
+    {
+      final var accessor = accessors[0];
+
+      return (entities) -> accessor.read(entities[aliasDepth]);
+    }
+
+    return (entities) -> readPath(entities[aliasDepth], accessors);
+  }
+
+  private static Object readPath(
+    Object entity,
+    MqlAttributeAccessor[] accessors
+  )
+  {
+    var value = entity;
+    for(final var accessor : accessors)
+    {
+      if(null == value)
+      {
+        break;
+      }
+
+      value = accessor.read(value);
+    }
+
+    return value;
+  }
+
+  private static Condition and(List<Condition> terms)
+  {
+    if(1 == terms.size())
+    {
+      return terms.get(0);
+    }
+
+    final var termArray = terms.toArray(new Condition[0]);
+
+    return (entities) ->
+    {
+      Boolean result = Boolean.TRUE;
+      for(final var term : termArray)
+      {
+        final var value = term.evaluate(entities);
+        if(Boolean.FALSE.equals(value))
+        {
+          return Boolean.FALSE;
+        }
+        if(null == value)
+        {
+          result = null;
+        }
+      }
+
+      return result;
+    };
+  }
+
+  private static Condition or(List<Condition> terms)
+  {
+    if(1 == terms.size())
+    {
+      return terms.get(0);
+    }
+
+    final var termArray = terms.toArray(new Condition[0]);
+
+    return (entities) ->
+    {
+      Boolean result = Boolean.FALSE;
+      for(final var term : termArray)
+      {
+        final var value = term.evaluate(entities);
+        if(Boolean.TRUE.equals(value))
+        {
+          return Boolean.TRUE;
+        }
+        if(null == value)
+        {
+          result = null;
+        }
+      }
+
+      return result;
+    };
+  }
+
+  private static Boolean compare(
+    Object lhs,
+    Object rhs,
+    ComparisonOperator op
+  )
+  {
+    if(null == lhs || null == rhs)
+    {
+      return null;
+    }
+
+    switch(op)
+    {
+    case EQ:
+      return valuesEqual(lhs, rhs);
+    case NE:
+      return !valuesEqual(lhs, rhs);
+    case LT:
+      return compareValues(lhs, rhs) < 0;
+    case LTE:
+      return compareValues(lhs, rhs) <= 0;
+    case GT:
+      return compareValues(lhs, rhs) > 0;
+    case GTE:
+      return compareValues(lhs, rhs) >= 0;
+    default:
+      throw new MqlException(String.format("Comparison %s is not supported", op));
+    }
+  }
+
+  private static boolean valuesEqual(
+    Object lhs,
+    Object rhs
+  )
+  {
+    // Numbers are equal by value regardless of their types and scales, as in SQL.
+    if(lhs instanceof Number && rhs instanceof Number && (lhs instanceof BigDecimal || lhs.getClass() != rhs.getClass()))
+    {
+      return 0 == compareValues(lhs, rhs);
+    }
+
+    return lhs.equals(rhs);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  static int compareValues(
+    Object lhs,
+    Object rhs
+  )
+  {
+    if(lhs instanceof Number && rhs instanceof Number && lhs.getClass() != rhs.getClass())
+    {
+      return new BigDecimal(lhs.toString()).compareTo(new BigDecimal(rhs.toString()));
+    }
+
+    if(!(lhs instanceof Comparable))
+    {
+      throw new MqlException(String.format("Values of %s cannot be compared", lhs.getClass().getName()));
+    }
+
+    return ((Comparable)lhs).compareTo(rhs);
+  }
+
+  private static String normalizeCase(
+    String str,
+    boolean caseSensitive
+  )
+  {
+    return (caseSensitive ? str : str.toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * Patterns without {@code _} are matched by the literal segments between {@code %} wildcards without regular
+   * expressions.
+   */
+  private static Predicate<String> compileLikePattern(
+    String pattern,
+    Character escape
+  )
+  {
+    final var segments = new ArrayList<String>();
+    final var regex = new StringBuilder();
+    var segment = new StringBuilder();
+    var singleCharWildcard = false;
+    for(var i = 0; i < pattern.length(); ++i)
+    {
+      final var c = pattern.charAt(i);
+      if(null != escape && escape == c)
+      {
+        ++i;
+        if(i >= pattern.length())
+        {
+          throw new MqlSyntaxException(String.format("Pattern %s ends with the escape character", pattern));
+        }
+
+        segment.append(pattern.charAt(i));
+        regex.append(Pattern.quote(String.valueOf(pattern.charAt(i))));
+      }
+      else if('%' == c)
+      {
+        segments.add(segment.toString());
+        segment = new StringBuilder();
+        regex.append(".*");
+      }
+      else if('_' == c)
+      {
+        singleCharWildcard = true;
+        regex.append('.');
+      }
+      else
+      {
+        segment.append(c);
+        regex.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+    segments.add(segment.toString());
+
+    if(singleCharWildcard)
+    {
+      final var compiledPattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+
+      return (value) -> compiledPattern.matcher(value).matches();
+    }
+
+    final var segmentArray = segments.toArray(new String[0]);
+
+    return (value) -> matchSegments(value, segmentArray);
+  }
+
+  private static boolean matchSegments(
+    String value,
+    String[] segments
+  )
+  {
+    final var last = segments.length - 1;
+    if(0 == last)
+    {
+      return value.equals(segments[0]);
+    }
+
+    if(!value.startsWith(segments[0]))
+    {
+      return false;
+    }
+
+    var from = segments[0].length();
+    for(var i = 1; i < last; ++i)
+    {
+      final var index = value.indexOf(segments[i], from);
+      if(index < 0)
+      {
+        return false;
+      }
+
+      from = index + segments[i].length();
+    }
+
+    return value.length() - from >= segments[last].length() && value.endsWith(segments[last]);
+  }
+
+  /**
+   * A condition in three-valued logic.
+   */
+  @FunctionalInterface
+  private static interface Condition
+  {
+    /**
+     * @param entities
+     *          The entities of the enclosing queries by the depth of their aliases.
+     * @return {@code null} if unknown.
+     */
+    Boolean evaluate(Object[] entities);
+  }
+
+  /**
+   * A test of a value in three-valued logic.
+   */
+  @FunctionalInterface
+  static interface ValueTest
+  {
+    /**
+     * @return {@code null} if unknown.
+     */
+    Boolean test(Object value);
+  }
+
+  @FunctionalInterface
+  private static interface ValueReader
+  {
+    Object read(Object[] entities);
+  }
+
+  private static enum ComparisonOperator
+  {
+    EQ,
+
+    NE,
+
+    LT,
+
+    LTE,
+
+    GT,
+
+    GTE
+  }
+
+  private static final Map<String, MqlIndexCondition.Operator> INDEX_OPERATORS = Map.of(
+    "eq", MqlIndexCondition.Operator.IN,
+    "lt", MqlIndexCondition.Operator.LT,
+    "lte", MqlIndexCondition.Operator.LTE,
+    "gt", MqlIndexCondition.Operator.GT,
+    "gte", MqlIndexCondition.Operator.GTE);
+
+  private final MqlQueryEmitterConfig<E> config;
+
+  private MqlQueryBuilderContext queryBuilderCtxt;
+
+  private Map<String, ?> placeholderValues;
+
+  private int maxDepth;
+}
@@ -0,0 +1,259 @@
+package kaphein.jpa.mql;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import jakarta.persistence.Tuple;
+import kaphein.jpa.core.AssertArg;
+import kaphein.jpa.core.JpaEntityAttributePath;
+
+/**
+ * Attribute paths of the root entity selected instead of the entity.
+ * <p>
+ * A projection selects only the columns it needs, so the items are neither hydrated as entities nor managed by the
+ * entity manager. Paths start with the alias of the root entity and are validated against the metamodel on
+ * compilation.
+ */
+public final class MqlProjection<R>
+{
+  /**
+   * Selects the paths as {@link Tuple} items.
+   * <p>
+   * Each element is aliased with its path without the root alias and with dots replaced by underscores, e.g.
+   * {@code u.department.departmentName} is {@code department_departmentName}.
+   */
+  public static MqlProjection<Tuple> tuple(String... attributePaths)
+  {
+    AssertArg.isNotNull(attributePaths, "attributePaths");
+
+    return tuple(Arrays.asList(attributePaths));
+  }
+
+  public static MqlProjection<Tuple> tuple(List<String> attributePaths)
+  {
+    return new MqlProjection<>(Tuple.class, attributePaths, true);
+  }
+
+  /**
+   * Selects the paths as the arguments of a public constructor of {@code itemJavaType} with
+   * {@code SELECT NEW ...}.
+   * <p>
+   * The constructor must accept the java types of the attributes in order.
+   */
+  public static <R> MqlProjection<R> constructor(
+    Class<R> itemJavaType,
+    String... attributePaths
+  )
+  {
+    AssertArg.isNotNull(attributePaths, "attributePaths");
+
+    return constructor(itemJavaType, Arrays.asList(attributePaths));
+  }
+
+  public static <R> MqlProjection<R> constructor(
+    Class<R> itemJavaType,
+    List<String> attributePaths
+  )
+  {
+    AssertArg.isNotNull(itemJavaType, "itemJavaType");
+
+    return new MqlProjection<>(itemJavaType, attributePaths, false);
+  }
+
+  private MqlProjection(
+    Class<R> itemJavaType,
+    List<String> attributePaths,
+    boolean tuple
+  )
+  {
+    AssertArg.isNotNull(attributePaths, "attributePaths");
+    if(attributePaths.isEmpty())
+    {
+      throw new IllegalArgumentException("attributePaths must not be empty");
+    }
+
+    final var paths = new ArrayList<JpaEntityAttributePath>(attributePaths.size());
+    for(final var attributePath : attributePaths)
+    {
+      paths.add(new JpaEntityAttributePath(AssertArg.isNotBlank(attributePath, "attributePath")));
+    }
+
+    this.itemJavaType = itemJavaType;
+    this.attributePaths = Collections.unmodifiableList(paths);
+    this.tuple = tuple;
+  }
+
+  public Class<R> getItemJavaType()
+  {
+    return itemJavaType;
+  }
+
+  public List<JpaEntityAttributePath> getAttributePaths()
+  {
+    return attributePaths;
+  }
+
+  /**
+   * @return {@code true} if the items are {@link Tuple}s.
+   */
+  public boolean isTuple()
+  {
+    return tuple;
+  }
+
+  /**
+   * Validates the paths against the root query.
+   * <p>
+   * Associations on the paths are left joined, as navigating them implicitly would be an inner join that drops the
+   * rows without the associated entity.
+   *
+   * @param joinClauses
+   *          The join clauses of the item query, to which the joins of the associations are appended.
+   * @return The expressions of the {@code SELECT} clause.
+   */
+  String createSelectClause(
+    MqlSubQueryContext rootSubQueryContext,
+    List<String> joinClauses
+  )
+  {
+    final var joinAliases = new HashMap<String, String>();
+    final var selectExprs = new ArrayList<String>(attributePaths.size());
+    final var attrJavaTypes = new ArrayList<Class<?>>(attributePaths.size());
+    for(final var path : attributePaths)
+    {
+      if(!rootSubQueryContext.getAlias().equals(path.get(0)))
+      {
+        throw new MqlSyntaxException(String.format(
+          "Projected path %s must start with the alias of the root entity",
+          path));
+      }
+
+      final var attrs = rootSubQueryContext.findAttributesOf(path);
+      var expr = path.get(0);
+      for(var i = 0; i < attrs.size(); ++i)
+      {
+        final var attr = attrs.get(i);
+        if(attr.isCollection())
+        {
+          throw new MqlSyntaxException(String.format("Projected path %s must not pass through a collection", path));
+        }
+
+        final var parentExpr = expr;
+        expr = String.format("%s.%s", parentExpr, path.get(i + 1));
+        if(attr.isAssociation())
+        {
+          final var joinPath = expr;
+          expr = joinAliases.computeIfAbsent(joinPath, (k) ->
+          {
+            final var joinAlias = JOIN_ALIAS_PREFIX + (joinAliases.size() + 1);
+            joinClauses.add(String.format("LEFT JOIN %s %s", joinPath, joinAlias));
+
+            return joinAlias;
+          });
+        }
+      }
+
+      selectExprs.add((tuple
+        ? String.format("%s AS %s", expr, String.join("_", path.subList(1, path.size())))
+        : expr));
+      attrJavaTypes.add(attrs.get(attrs.size() - 1).getJavaType());
+    }
+
+    if(tuple)
+    {
+      return String.join(", ", selectExprs);
+    }
+
+    verifyConstructor(attrJavaTypes);
+
+    return String.format("NEW %s(%s)", itemJavaType.getName(), String.join(", ", selectExprs));
+  }
+
+  private void verifyConstructor(List<Class<?>> attrJavaTypes)
+  {
+    if(!Modifier.isPublic(itemJavaType.getModifiers()))
+    {
+      throw new MqlException(String.format("%s must be public", itemJavaType.getName()));
+    }
+
+    for(final var constructor : itemJavaType.getConstructors())
+    {
+      final var paramTypes = constructor.getParameterTypes();
+      var matches = paramTypes.length == attrJavaTypes.size();
+      for(var i = 0; matches && i < paramTypes.length; ++i)
+      {
+        matches = boxed(paramTypes[i]).isAssignableFrom(boxed(attrJavaTypes.get(i)));
+      }
+
+      if(matches)
+      {
+        return;
+      }
+    }
+
+    throw new MqlException(String.format(
+      "%s has no public constructor that accepts (%s)",
+      itemJavaType.getName(),
+      attrJavaTypes
+        .stream()
+        .map(Class::getName)
+        .collect(Collectors.joining(", "))));
+  }
+
+  private static Class<?> boxed(Class<?> javaType)
+  {
+    return PrecompiledMqlTypeConverter.BOXED_TYPES.getOrDefault(javaType, javaType);
+  }
+
+  @Override
+  public boolean equals(Object obj)
+  {
+    if(this == obj)
+    {
+      return true;
+    }
+
+    if(!(obj instanceof MqlProjection<?>))
+    {
+      return false;
+    }
+
+    final var other = (MqlProjection<?>)obj;
+
+    return tuple == other.tuple
+      && itemJavaType.equals(other.itemJavaType)
+      && toString().equals(other.toString());
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Objects.hash(MqlProjection.class, itemJavaType, toString());
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+      "%s(%s)",
+      (tuple ? "Tuple" : itemJavaType.getName()),
+      attributePaths
+        .stream()
+        .map(JpaEntityAttributePath::toString)
+        .collect(Collectors.joining(",")));
+  }
+
+  private static final String JOIN_ALIAS_PREFIX = "__join";
+
+  private final Class<R> itemJavaType;
+
+  private final List<JpaEntityAttributePath> attributePaths;
+
+  private final boolean tuple;
+}
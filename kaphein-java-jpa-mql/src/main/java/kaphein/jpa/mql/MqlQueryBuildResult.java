@@ -1,29 +1,336 @@
 package kaphein.jpa.mql;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
+import kaphein.jpa.core.AssertArg;
 
 public class MqlQueryBuildResult<E>
 {
+  /**
+   * The JDBC fetch size hint of Hibernate.
+   */
+  public static final String HIBERNATE_FETCH_SIZE_HINT = "org.hibernate.fetchSize";
+
+  /**
+   * The JDBC fetch size hint of EclipseLink.
+   */
+  public static final String ECLIPSELINK_FETCH_SIZE_HINT = "eclipselink.jdbc.fetch-size";
+
+  /**
+   * @param itemQueryFactory
+   *          Creates the query that fetches the page in one phase.
+   * @param countQueryFactory
+   *          {@code null} if the count query is disabled.
+   * @param itemCounter
+   *          Counts the items with the count strategy, or {@code null} if the count query is disabled.
+   * @param idFirstItemsFetcher
+   *          {@code null} if id-first pagination is not applied.
+   * @param idFirstItemStreamer
+   *          Streams the items by the batch size with id-first pagination, or {@code null} if it is not applied.
+   * @param pageFactory
+   *          Creates a page of the fetched items and the total count.
+   * @param probedLimit
+   *          The limit of the page if the item query fetches one row more for has-next probing, or {@code null}.
+   */
   MqlQueryBuildResult(
-    TypedQuery<? extends E> itemQuery,
-    TypedQuery<Long> countQuery
+    EntityManager entityManager,
+    Supplier<TypedQuery<? extends E>> itemQueryFactory,
+    Supplier<TypedQuery<Long>> countQueryFactory,
+    Supplier<Long> itemCounter,
+    Supplier<List<? extends E>> idFirstItemsFetcher,
+    Function<Integer, Stream<E>> idFirstItemStreamer,
+    BiFunction<List<? extends E>, Long, MqlPage<E>> pageFactory,
+    List<MqlKeysetKey> keysetKeys,
+    boolean emptyResult,
+    Integer probedLimit,
+    boolean pagedInMemory
   )
   {
-    this.itemQuery = itemQuery;
-    this.countQuery = countQuery;
+    this.entityManager = entityManager;
+    this.itemQueryFactory = itemQueryFactory;
+    this.countQueryFactory = countQueryFactory;
+    this.itemCounter = itemCounter;
+    this.idFirstItemsFetcher = idFirstItemsFetcher;
+    this.idFirstItemStreamer = idFirstItemStreamer;
+    this.pageFactory = pageFactory;
+    this.keysetKeys = keysetKeys;
+    this.emptyResult = emptyResult;
+    this.probedLimit = probedLimit;
+    this.pagedInMemory = pagedInMemory;
   }
 
+  /**
+   * Creates the item query on the first call.
+   *
+   * @return The query that fetches the page in one phase, even if id-first pagination is enabled. With has-next
+   *         probing, it fetches one row more than the limit.
+   */
   public TypedQuery<? extends E> getItemQuery()
   {
+    if(null == itemQuery)
+    {
+      itemQuery = itemQueryFactory.get();
+    }
+
     return itemQuery;
   }
 
+  /**
+   * Fetches the items of the page. With id-first pagination, the ids of the page are selected first and the entities
+   * are fetched by the ids in the same order. With has-next probing, the row beyond the limit is trimmed.
+   */
+  public List<? extends E> getResultList()
+  {
+    return pageFactory.apply(fetchItems(), null).getItems();
+  }
+
+  /**
+   * Fetches the items of the page and counts them with the count strategy if the count query is enabled.
+   * <p>
+   * {@link MqlPage#hasNext()} is known with has-next probing or the count query.
+   */
+  public MqlPage<E> getPage()
+  {
+    final var items = fetchItems();
+
+    Long totalCount = null;
+    if(null != itemCounter)
+    {
+      totalCount = (emptyResult ? 0L : itemCounter.get());
+    }
+
+    return pageFactory.apply(items, totalCount);
+  }
+
+  /**
+   * Executes the item query and streams the items as they are fetched instead of materializing them in a list.
+   * <p>
+   * With id-first pagination, the ids of the items are selected at once, and the entities are fetched by the ids in
+   * batches of {@code clearInterval}, or of {@code fetchSize} if it is {@code null}, or of 100 if both are
+   * {@code null}, as they are streamed. Collections fetched by the fetch plan are not paginated in memory.
+   * Without it, a page of entities that fetch collections is fetched at once, as the persistence provider paginates
+   * it in memory.
+   * <p>
+   * The stream may hold an open JDBC result set, so it must be closed, e.g. by try-with-resources. With has-next probing,
+   * the row beyond the limit is not streamed.
+   *
+   * @param fetchSize
+   *          The number of rows fetched from the database at a time, or {@code null} to use the default of the JDBC
+   *          driver. Passed by the {@value #HIBERNATE_FETCH_SIZE_HINT} and {@value #ECLIPSELINK_FETCH_SIZE_HINT}
+   *          hints.
+   * @param clearInterval
+   *          The number of items after which the entity manager is cleared before the next item is fetched, or
+   *          {@code null} not to clear it. Clearing detaches the items streamed so far and keeps the persistence
+   *          context from growing, so the items must not be modified or lazily loaded after the next interval starts.
+   */
+  public Stream<E> stream(
+    Integer fetchSize,
+    Integer clearInterval
+  )
+  {
+    if(null != fetchSize && fetchSize < 1)
+    {
+      throw new IllegalArgumentException("fetchSize must be positive");
+    }
+    if(null != clearInterval && clearInterval < 1)
+    {
+      throw new IllegalArgumentException("clearInterval must be positive");
+    }
+
+    if(emptyResult)
+    {
+      return Stream.empty();
+    }
+
+    Stream<E> source = null;
+    if(null == idFirstItemStreamer && pagedInMemory)
+    {
+      // A scrolled result limits the rows that repeat the entities, so the page is fetched at once.
+      @SuppressWarnings("unchecked")
+      final var items = (List<E>)getItemQuery().getResultList();
+      source = items.stream();
+    }
+    else if(null == idFirstItemStreamer)
+    {
+      final var query = getItemQuery();
+      if(null != fetchSize)
+      {
+        query.setHint(HIBERNATE_FETCH_SIZE_HINT, fetchSize);
+        query.setHint(ECLIPSELINK_FETCH_SIZE_HINT, fetchSize);
+      }
+
+      @SuppressWarnings("unchecked")
+      final var items = (Stream<E>)query.getResultStream();
+      source = items;
+    }
+    else
+    {
+      // A batch is fetched after the entity manager is cleared, so its items stay managed for the whole interval.
+      source = idFirstItemStreamer.apply(null == clearInterval ? fetchSize : clearInterval);
+    }
+    if(null != probedLimit)
+    {
+      source = source.limit(probedLimit);
+    }
+    if(null == clearInterval)
+    {
+      return source;
+    }
+
+    final var sourceIter = source.iterator();
+    final var iter = new Iterator<E>()
+    {
+      @Override
+      public boolean hasNext()
+      {
+        clearIfIntervalEnded();
+
+        return sourceIter.hasNext();
+      }
+
+      @Override
+      public E next()
+      {
+        if(!hasNext())
+        {
+          throw new NoSuchElementException();
+        }
+
+        ++count;
+
+        return sourceIter.next();
+      }
+
+      private void clearIfIntervalEnded()
+      {
+        // Cleared before the next row is fetched, so the last item stays managed while the caller processes it.
+        if(count >= clearInterval)
+        {
+          entityManager.clear();
+          count = 0;
+        }
+      }
+
+      private int count;
+    };
+
+    return StreamSupport
+      .stream(Spliterators.spliteratorUnknownSize(iter, Spliterator.ORDERED), false)
+      .onClose(source::close);
+  }
+
+  /**
+   * @return {@code true} if the filter is found to match no entity at the compilation. The queries still return the
+   *         empty result when executed, so callers can skip them.
+   */
+  public boolean isEmptyResult()
+  {
+    return emptyResult;
+  }
+
+  public boolean isCountQueryEnabled()
+  {
+    return null != countQueryFactory;
+  }
+
+  /**
+   * Creates the count query on the first call. It counts exactly regardless of the count strategy.
+   *
+   * @throws MqlException
+   *           If the count query is disabled.
+   */
   public TypedQuery<Long> getCountQuery()
   {
+    if(null == countQuery)
+    {
+      if(null == countQueryFactory)
+      {
+        throw new MqlException("The count query is disabled");
+      }
+
+      countQuery = countQueryFactory.get();
+    }
+
     return countQuery;
   }
 
-  private final TypedQuery<? extends E> itemQuery;
+  /**
+   * Creates the cursor of the page that follows the given entity.
+   *
+   * @param lastEntity
+   *          The last entity fetched by the item query.
+   * @throws MqlException
+   *           If keyset pagination is not enabled.
+   */
+  public MqlKeysetCursor getNextCursor(E lastEntity)
+  {
+    AssertArg.isNotNull(lastEntity, "lastEntity");
+
+    if(null == keysetKeys)
+    {
+      throw new MqlException("Keyset pagination is not enabled");
+    }
+
+    final var values = new ArrayList<Object>(keysetKeys.size());
+    for(final var key : keysetKeys)
+    {
+      values.add(key.readValue(lastEntity));
+    }
+
+    return MqlKeysetCursor.of(values);
+  }
+
+  private List<? extends E> fetchItems()
+  {
+    if(emptyResult)
+    {
+      return Collections.emptyList();
+    }
+
+    return (null == idFirstItemsFetcher
+      ? getItemQuery().getResultList()
+      : idFirstItemsFetcher.get());
+  }
+
+  private final EntityManager entityManager;
+
+  private final Supplier<TypedQuery<? extends E>> itemQueryFactory;
+
+  private final Supplier<TypedQuery<Long>> countQueryFactory;
+
+  private final Supplier<Long> itemCounter;
+
+  private final Supplier<List<? extends E>> idFirstItemsFetcher;
+
+  private final Function<Integer, Stream<E>> idFirstItemStreamer;
+
+  private final BiFunction<List<? extends E>, Long, MqlPage<E>> pageFactory;
+
+  private TypedQuery<? extends E> itemQuery;
+
+  private TypedQuery<Long> countQuery;
+
+  private final List<MqlKeysetKey> keysetKeys;
+
+  private final boolean emptyResult;
+
+  private final Integer probedLimit;
 
-  private final TypedQuery<Long> countQuery;
+  /**
+   * Whether the persistence provider paginates the item query in memory, as it fetches collections.
+   */
+  private final boolean pagedInMemory;
 }
@@ -1,23 +1,25 @@
 package kaphein.jpa.mql;
 
-import java.util.AbstractMap;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Spliterator;
 import java.util.Spliterators;
-import java.util.stream.Collectors;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.helpers.NOPLogger;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.Metamodel;
 import kaphein.jpa.core.AssertArg;
 import kaphein.jpa.core.MetamodelUtils;
 import kaphein.jpa.core.Sort;
@@ -28,6 +30,7 @@ public class MqlQueryBuilder<E>
   public MqlQueryBuilder()
   {
     logger(null);
+    filterOptimization = true;
     queryEmitterConfigBuilder = MqlQueryEmitterConfig.<E>builder();
   }
 
@@ -37,15 +40,21 @@ public class MqlQueryBuilder<E>
 
     logger(src.logger);
     entityManager = src.entityManager;
+    metamodel = src.metamodel;
     entityType = src.entityType;
     entityJavaType = src.entityJavaType;
     entityAlias = src.entityAlias;
     jsonExprDeser = src.jsonExprDeser;
     objectMapper = src.objectMapper;
+    typeConverter = src.typeConverter;
     mapFilter = src.mapFilter;
     filterJson = src.filterJson;
+    jsonFilterParser = src.jsonFilterParser;
     queryEmitterConfigBuilder = src.queryEmitterConfigBuilder;
     queryEmitterConfig = src.queryEmitterConfig;
+    queryPlanCache = src.queryPlanCache;
+    placeholderValues = src.placeholderValues;
+    filterOptimization = src.filterOptimization;
   }
 
   public MqlQueryBuilder<E> logger(Logger logger)
@@ -64,6 +73,18 @@ public class MqlQueryBuilder<E>
     return this;
   }
 
+  /**
+   * Sets the metamodel to compile queries with.
+   * <p>
+   * If not set, the metamodel of the entity manager is used.
+   */
+  public MqlQueryBuilder<E> metamodel(Metamodel metamodel)
+  {
+    this.metamodel = metamodel;
+
+    return this;
+  }
+
   public MqlQueryBuilder<E> entityType(EntityType<? extends E> entityType)
   {
     this.entityType = entityType;
@@ -92,13 +113,65 @@ public class MqlQueryBuilder<E>
   public MqlQueryBuilder<E> objectMapper(ObjectMapper objectMapper)
   {
     this.objectMapper = objectMapper;
+    typeConverter = null;
 
     return this;
   }
 
   public MqlQueryBuilder<E> filter(String filter)
   {
+    mapFilter = null;
     filterJson = filter;
+    jsonFilterParser = (StringUtils.isBlank(filter) ? null : parser -> parser.parse(filter));
+
+    return this;
+  }
+
+  /**
+   * @param filter
+   *          A JSON filter encoded in UTF-8, UTF-16 or UTF-32.
+   */
+  public MqlQueryBuilder<E> filter(byte[] filter)
+  {
+    AssertArg.isNotNull(filter, "filter");
+
+    mapFilter = null;
+    filterJson = null;
+    jsonFilterParser = parser -> parser.parse(filter);
+
+    return this;
+  }
+
+  /**
+   * The stream is read on the next compilation and is not closed.
+   *
+   * @param filter
+   *          A JSON filter encoded in UTF-8, UTF-16 or UTF-32.
+   */
+  public MqlQueryBuilder<E> filter(InputStream filter)
+  {
+    AssertArg.isNotNull(filter, "filter");
+
+    mapFilter = null;
+    filterJson = null;
+    jsonFilterParser = parser -> parser.parse(filter);
+
+    return this;
+  }
+
+  /**
+   * The remaining bytes are read on each compilation without changing the position of the buffer.
+   *
+   * @param filter
+   *          A JSON filter encoded in UTF-8, UTF-16 or UTF-32.
+   */
+  public MqlQueryBuilder<E> filter(ByteBuffer filter)
+  {
+    AssertArg.isNotNull(filter, "filter");
+
+    mapFilter = null;
+    filterJson = null;
+    jsonFilterParser = parser -> parser.parse(filter);
 
     return this;
   }
@@ -106,6 +179,8 @@ public class MqlQueryBuilder<E>
   public MqlQueryBuilder<E> filter(Map<String, Object> filter)
   {
     mapFilter = filter;
+    filterJson = null;
+    jsonFilterParser = null;
 
     return this;
   }
@@ -141,44 +216,469 @@ public class MqlQueryBuilder<E>
     return offset(offset.intValue());
   }
 
+  /**
+   * Set {@code false} to skip the count query for the pages that do not need the total count.
+   */
+  public MqlQueryBuilder<E> countQuery(boolean countQueryEnabled)
+  {
+    queryEmitterConfigBuilder.countQueryEnabled(countQueryEnabled);
+
+    return this;
+  }
+
+  /**
+   * Sets how the total count of a page is obtained. Defaults to {@link MqlCountStrategy#exact()}.
+   * <p>
+   * Applied by {@link MqlQueryBuildResult#getPage()} and {@link MqlPagedQueryExecutor}, so a filter that matches
+   * millions of items can be counted up to a bound or estimated.
+   */
+  public MqlQueryBuilder<E> countStrategy(MqlCountStrategy countStrategy)
+  {
+    queryEmitterConfigBuilder.countStrategy(countStrategy);
+
+    return this;
+  }
+
+  /**
+   * Set {@code false} to emit the filter as written.
+   * <p>
+   * By default, the filter is rewritten into an equivalent one that emits a smaller query, and a filter that
+   * contradicts itself is emitted as {@code 1 = 0} and reported by {@link MqlQueryBuildResult#isEmptyResult()}.
+   */
+  public MqlQueryBuilder<E> filterOptimization(boolean filterOptimization)
+  {
+    this.filterOptimization = filterOptimization;
+
+    return this;
+  }
+
+  /**
+   * Pads the values of each {@code $in} and {@code $nin} list to a power of two by repeating the last value, so lists
+   * of similar sizes share the statements cached by the persistence provider and the database.
+   */
+  public MqlQueryBuilder<E> inListPadding(boolean inListPadding)
+  {
+    queryEmitterConfigBuilder.inListPadding(inListPadding);
+
+    return this;
+  }
+
+  /**
+   * Splits a {@code $in} list longer than {@code inListChunkSize} into {@code (x IN :p1 OR x IN :p2 ...)}, and a
+   * {@code $nin} list into {@code (x NOT IN :p1 AND x NOT IN :p2 ...)}.
+   * <p>
+   * Set {@code null} not to split lists. Lists of {@code $param} placeholders are not split.
+   */
+  public MqlQueryBuilder<E> inListChunkSize(Integer inListChunkSize)
+  {
+    queryEmitterConfigBuilder.inListChunkSize(inListChunkSize);
+
+    return this;
+  }
+
+  /**
+   * Emits a {@code $jpqlExists} term of the root filter as {@code JOIN Entity alias ON ...}, and a {@code $nJpqlExists}
+   * term as {@code LEFT JOIN Entity alias ON ...} with {@code alias.id IS NULL}, if its filter equates the id of its
+   * entity to an attribute of the root entity with {@code $attrPath}. Such a sub query matches at most one row per row
+   * of the root entity, so the join does not duplicate rows. Other sub queries are emitted as {@code EXISTS}.
+   * <p>
+   * Joins on entity types require a persistence provider that supports them, such as Hibernate 5.1+ or EclipseLink
+   * 2.4+.
+   */
+  public MqlQueryBuilder<E> semiJoinRewrite(boolean semiJoinRewrite)
+  {
+    queryEmitterConfigBuilder.semiJoinRewrite(semiJoinRewrite);
+
+    return this;
+  }
+
+  /**
+   * Fetches the associations of the plan with the entities of the item query. The count query is not affected.
+   * <p>
+   * A collection fetched with limit or offset is paginated in memory by most persistence providers, which is logged as
+   * a warning on compilation.
+   */
+  public MqlQueryBuilder<E> fetchPlan(MqlFetchPlan fetchPlan)
+  {
+    queryEmitterConfigBuilder.fetchPlan(fetchPlan);
+
+    return this;
+  }
+
+  /**
+   * Fetches a page in two phases: the ids of the page are selected with the filter, the order by terms, limit and
+   * offset first, and then the entities are fetched by the ids with the fetch plan and put in the order of the ids.
+   * <p>
+   * The ids are cheaper to page through than full rows, and collections can be fetched without paginating in memory.
+   * Applied by {@link MqlQueryBuildResult#getResultList()} and {@link MqlPagedQueryExecutor} to entities with a single
+   * id attribute.
+   */
+  public MqlQueryBuilder<E> idFirstPagination(boolean idFirstPagination)
+  {
+    queryEmitterConfigBuilder.idFirstPagination(idFirstPagination);
+
+    return this;
+  }
+
+  /**
+   * Tells whether a next page exists without counting: one row more than the limit is fetched, the extra row is
+   * trimmed, and {@link MqlPage#hasNext()} reports whether it was found.
+   * <p>
+   * Disables the count query when set to {@code true}. Applied by {@link MqlQueryBuildResult#getResultList()},
+   * {@link MqlQueryBuildResult#getPage()} and {@link MqlPagedQueryExecutor}.
+   */
+  public MqlQueryBuilder<E> hasNextPage(boolean hasNextPage)
+  {
+    queryEmitterConfigBuilder.hasNextProbe(hasNextPage);
+    if(hasNextPage)
+    {
+      queryEmitterConfigBuilder.countQueryEnabled(false);
+    }
+
+    return this;
+  }
+
+  /**
+   * Sets the minimum size of a collection that {@link MqlCollectionQuery} filters by parallel streams.
+   *
+   * @see MqlCollectionQuery#DEFAULT_PARALLEL_THRESHOLD
+   */
+  public MqlQueryBuilder<E> parallelThreshold(int parallelThreshold)
+  {
+    queryEmitterConfigBuilder.parallelThreshold(parallelThreshold);
+
+    return this;
+  }
+
+  /**
+   * Compiles in-memory predicates into classes generated per filter shape, which read the attributes by direct calls
+   * to their getters instead of method handles.
+   * <p>
+   * Filters with a sub query or an attribute path on the right hand side, attributes that are not public members of
+   * public classes, and filters beyond the maximum number of generated classes are compiled as usual.
+   */
+  public MqlQueryBuilder<E> predicateClassGeneration(boolean predicateClassGeneration)
+  {
+    queryEmitterConfigBuilder.predicateClassGeneration(predicateClassGeneration);
+
+    return this;
+  }
+
+  /**
+   * Caches the ids of pages and the counts in the result cache. The entities of a page are fetched by the cached ids,
+   * so they are never stale.
+   * <p>
+   * Enables id-first pagination when set to a cache, and cannot be combined with a projection. The ids are cached for
+   * entities with a single id attribute, and the counts with the exact and capped count strategies.
+   *
+   * @param resultCache
+   *          The cache, or {@code null} not to cache the results.
+   */
+  public MqlQueryBuilder<E> resultCache(MqlResultCache resultCache)
+  {
+    queryEmitterConfigBuilder.resultCache(resultCache);
+    if(null != resultCache)
+    {
+      queryEmitterConfigBuilder.idFirstPagination(true);
+    }
+
+    return this;
+  }
+
+  /**
+   * Enables keyset pagination.
+   * <p>
+   * The id attributes of the entity are appended to the order by terms as tie-breakers, and
+   * {@link MqlQueryBuildResult#getNextCursor} creates the cursor of the next page. Use {@link Sort.NullOrder#FIRST}
+   * or {@link Sort.NullOrder#LAST} for nullable attributes, as rows after a {@code NULL} sort key cannot be sought
+   * with the DBMS default policy.
+   */
+  public MqlQueryBuilder<E> keysetPagination(boolean keysetPagination)
+  {
+    queryEmitterConfigBuilder.keysetPagination(keysetPagination);
+    if(!keysetPagination)
+    {
+      queryEmitterConfigBuilder.keysetCursor(null);
+    }
+
+    return this;
+  }
+
+  /**
+   * Seeks the rows after the cursor with keyset pagination.
+   * <p>
+   * Set {@code null} to fetch the first page.
+   */
+  public MqlQueryBuilder<E> keysetCursor(MqlKeysetCursor keysetCursor)
+  {
+    queryEmitterConfigBuilder
+      .keysetPagination(true)
+      .keysetCursor(keysetCursor);
+
+    return this;
+  }
+
+  /**
+   * Sets a cache of emitted queries shared between builders.
+   * <p>
+   * Set {@code null} to emit queries on every build.
+   */
+  public MqlQueryBuilder<E> queryPlanCache(MqlQueryPlanCache queryPlanCache)
+  {
+    this.queryPlanCache = queryPlanCache;
+
+    return this;
+  }
+
+  /**
+   * Sets the values of the {@code $param} placeholders of the filter that are bound by {@link #build()}.
+   */
+  public MqlQueryBuilder<E> placeholderValues(Map<String, ?> placeholderValues)
+  {
+    this.placeholderValues = placeholderValues;
+
+    return this;
+  }
+
   public MqlQueryBuildResult<E> build()
   {
+    AssertArg.isNotNull(entityManager, "entityManager");
+
+    return bind(compile());
+  }
+
+  /**
+   * Builds queries that select the attribute paths of the projection instead of the entity.
+   *
+   * @see #compile(MqlProjection)
+   */
+  public <R> MqlQueryBuildResult<R> build(MqlProjection<R> projection)
+  {
+    AssertArg.isNotNull(entityManager, "entityManager");
+
+    return bind(compile(projection));
+  }
+
+  /**
+   * Compiles the filter without creating queries.
+   * <p>
+   * Only the metamodel is required, so the result can be compiled once and bound to a different entity manager on
+   * each execution.
+   */
+  public MqlCompiledQuery<E> compile()
+  {
+    return compileFilter(null);
+  }
+
+  /**
+   * Compiles the filter into queries that select the attribute paths of the projection instead of the entity, so the
+   * items are not hydrated as managed entities.
+   * <p>
+   * A projection cannot be combined with keyset pagination.
+   */
+  @SuppressWarnings("unchecked")
+  public <R> MqlCompiledQuery<R> compile(MqlProjection<R> projection)
+  {
+    AssertArg.isNotNull(projection, "projection");
+
+    // The emitter creates the items of the projected type.
+    return (MqlCompiledQuery<R>)(MqlCompiledQuery<?>)compileFilter(projection);
+  }
+
+  /**
+   * Counts the items that match the filter and each facet filter in one query of {@code SUM(CASE WHEN ...)} terms,
+   * instead of one count query per facet.
+   * <p>
+   * A facet filter is a condition in the form of the value of {@code $jpqlWhere} that refers to the root entity by the
+   * alias of the filter. Order by terms, paging, projections, fetch plans and the query plan cache do not apply.
+   * <p>
+   * The single-valued associations on the paths of the facet filters are left joined, so a facet on an association
+   * that is {@code null} does not drop the rows counted by the other facets.
+   *
+   * @param facetFilters
+   *          The facet filters by facet name.
+   * @return The counts by facet name in the iteration order of {@code facetFilters}.
+   */
+  public Map<String, Long> countFacets(Map<String, ? extends Map<String, Object>> facetFilters)
+  {
+    AssertArg.isNotNull(entityManager, "entityManager");
+    AssertArg.isNotNull(facetFilters, "facetFilters");
+    if(facetFilters.isEmpty())
+    {
+      throw new IllegalArgumentException("facetFilters must not be empty");
+    }
+
     ensureParameters();
 
-    return buildQueries();
+    final var parseResult = parseFilter();
+
+    ensureQueryEmitterConfig(parseResult, null);
+
+    // The facets are counted over all matching rows. Their associations are left joined to the shared from clause.
+    final var facetQueryEmitterConfig = queryEmitterConfig
+      .toBuilder()
+      .keysetPagination(false)
+      .keysetCursor(null)
+      .semiJoinRewrite(false)
+      .fetchPlan(null)
+      .idFirstPagination(false)
+      .build();
+
+    final var facetParseResults = new LinkedHashMap<String, MqlExpressionParseResult>();
+    for(final var facetFilter : facetFilters.entrySet())
+    {
+      facetParseResults.put(
+        AssertArg.isNotBlank(facetFilter.getKey(), "facetName"),
+        parseMapFilter(MqlExpressions.of(
+          "$alias", entityAlias,
+          "$jpqlWhere", AssertArg.isNotNull(facetFilter.getValue(), "facetFilter"))));
+    }
+
+    if(filterOptimization)
+    {
+      final var optimizer = new MqlAstOptimizer(facetQueryEmitterConfig);
+      optimizer.optimize(parseResult.getRootNode());
+      facetParseResults
+        .values()
+        .forEach((facetParseResult) -> optimizer.optimize(facetParseResult.getRootNode()));
+    }
+
+    return new MqlQueryEmitter<>(facetQueryEmitterConfig)
+      .emitFacets(parseResult, facetParseResults)
+      .execute(entityManager, placeholderValues);
   }
 
-  private void ensureParameters()
+  /**
+   * Compiles the filter into a predicate that evaluates entities in memory with the semantics of the emitted query,
+   * e.g. to filter entities that are already loaded without a round trip to the database.
+   * <p>
+   * Only the metamodel is required. The placeholders are bound to the values of {@link #placeholderValues(Map)}. A
+   * {@code $jpqlExists} sub query is evaluated over the only association of the entity of its parent query to the
+   * entity type of the sub query, which is loaded if it is lazy. Order by terms and paging do not apply.
+   */
+  public Predicate<E> compilePredicate()
   {
-    if(null == jsonExprDeser)
+    ensureParameters();
+
+    final var parseResult = parseFilter();
+
+    ensureQueryEmitterConfig(parseResult, null);
+
+    if(filterOptimization)
     {
-      jsonExprDeser = (null == objectMapper
-        ? new Jackson2ObjectMapperMqlJsonExpressionDeserializer()
-        : new Jackson2ObjectMapperMqlJsonExpressionDeserializer(objectMapper));
+      new MqlAstOptimizer(queryEmitterConfig).optimize(parseResult.getRootNode());
     }
 
-    ensureMapFilter();
+    return new MqlPredicateCompiler<>(queryEmitterConfig).compile(parseResult, placeholderValues);
+  }
 
-    ensureEntityType();
+  /**
+   * Compiles the filter, the order by terms, limit and offset into a query of collections of entities in memory.
+   * <p>
+   * Only the metamodel is required. The placeholders are bound to the values of {@link #placeholderValues(Map)}. The
+   * filter is compiled as by {@link #compilePredicate()}. Unlike the emitted query, an entity with a {@code null}
+   * association on the path of an order by term is sorted as {@code null} instead of being excluded by an implicit
+   * join, so the items are consistent with the total count.
+   */
+  public MqlCollectionQuery<E> compileCollectionQuery()
+  {
+    ensureParameters();
 
-    if(StringUtils.isBlank(entityAlias))
+    final var parseResult = parseFilter();
+
+    ensureQueryEmitterConfig(parseResult, null);
+
+    if(queryEmitterConfig.isKeysetPagination())
     {
-      entityAlias = (String)mapFilter.get("$alias");
-      if(StringUtils.isBlank(entityAlias))
+      throw new IllegalArgumentException("Keyset pagination cannot be applied to a collection");
+    }
+
+    if(filterOptimization)
+    {
+      new MqlAstOptimizer(queryEmitterConfig).optimize(parseResult.getRootNode());
+    }
+
+    final var orderByTerms = queryEmitterConfig.getOrderByTerms();
+    final var compiler = new MqlPredicateCompiler<>(queryEmitterConfig);
+
+    return new MqlCollectionQuery<>(
+      compiler.compile(parseResult, placeholderValues),
+      (orderByTerms.isEmpty() ? null : compiler.compileComparator(parseResult, orderByTerms)),
+      compiler.findIndexConditions(parseResult, placeholderValues),
+      queryEmitterConfig.getLimit(),
+      queryEmitterConfig.getOffset(),
+      queryEmitterConfig.getParallelThreshold());
+  }
+
+  private <T> MqlQueryBuildResult<T> bind(MqlCompiledQuery<T> compiledQuery)
+  {
+    return (null == placeholderValues
+      ? compiledQuery.bind(entityManager)
+      : compiledQuery.bind(entityManager, placeholderValues));
+  }
+
+  private MqlCompiledQuery<E> compileFilter(MqlProjection<?> projection)
+  {
+    ensureParameters();
+
+    final var parseResult = parseFilter();
+
+    ensureQueryEmitterConfig(parseResult, projection);
+
+    if(filterOptimization)
+    {
+      // The shape is taken from the rewritten filter as the rewriting depends on the literals.
+      new MqlAstOptimizer(queryEmitterConfig).optimize(parseResult.getRootNode());
+    }
+
+    return compileQueries(parseResult);
+  }
+
+  private void ensureParameters()
+  {
+    if(null == metamodel)
+    {
+      if(null == entityManager)
       {
-        throw new IllegalArgumentException("$alias is missing.");
+        throw new IllegalArgumentException("Either metamodel or entityManager must be set.");
       }
+
+      metamodel = entityManager.getMetamodel();
     }
 
-    final var typeConverter = (null == objectMapper
-      ? new Jackson2ObjectMapperMqlTypeConverter()
-      : new Jackson2ObjectMapperMqlTypeConverter(objectMapper));
+    ensureEntityType();
+  }
+
+  private void ensureQueryEmitterConfig(
+    MqlExpressionParseResult parseResult,
+    MqlProjection<?> projection
+  )
+  {
+    final var aliasNode = parseResult
+      .getRootNode()
+      .getChildNodeAt(0)
+      .getChildNodeAt(1);
+    entityAlias = (String)aliasNode.getValue();
+    if(StringUtils.isBlank(entityAlias))
+    {
+      throw new IllegalArgumentException("$alias is missing.");
+    }
+
+    if(null == typeConverter)
+    {
+      // Kept across builds to reuse the converters resolved per type.
+      typeConverter = (null == objectMapper
+        ? PrecompiledMqlTypeConverter.getDefault()
+        : new PrecompiledMqlTypeConverter(objectMapper));
+    }
 
     queryEmitterConfig = queryEmitterConfigBuilder
-      .entityManager(entityManager)
+      .logger(logger)
+      .metamodel(metamodel)
       .entityType(entityType)
       .entityAlias(entityAlias)
       .typeConverter(typeConverter)
+      .projection(projection)
       .build();
   }
 
@@ -192,70 +692,103 @@ public class MqlQueryBuilder<E>
       }
 
       entityType = MetamodelUtils.findEntityTypeByJavaTypeOrThrow(
-        entityManager.getMetamodel(),
+        metamodel,
         entityJavaType);
     }
   }
 
-  private void ensureMapFilter()
+  private MqlExpressionParseResult parseFilter()
   {
-    if(null == mapFilter)
+    MqlExpressionParseResult parseResult = null;
+
+    if(null != mapFilter)
     {
-      if(StringUtils.isBlank(filterJson))
+      parseResult = parseMapFilter(mapFilter);
+    }
+    else if(null != jsonFilterParser)
+    {
+      if(null != jsonExprDeser && null != filterJson)
       {
-        throw new IllegalArgumentException("filter is not set.");
+        parseResult = parseMapFilter(jsonExprDeser.deserializeAsMap(filterJson));
       }
       else
       {
-        try
-        {
-          mapFilter = ((Map<?, ?>)objectMapper
-            .readValue(
-              filterJson,
-              Map.class))
-            .entrySet()
-            .stream()
-            .filter(entry -> String.class.isInstance(entry.getKey()))
-            .map(entry -> new AbstractMap.SimpleImmutableEntry<>(
-              String.class.cast(entry.getKey()),
-              Object.class.cast(entry.getValue())))
-            .collect(Collectors.toMap(
-              Map.Entry::getKey,
-              Map.Entry::getValue,
-              (l, r) -> r,
-              LinkedHashMap::new));
-        }
-        catch(final JsonProcessingException jpe)
-        {
-          throw new MqlException(jpe.getMessage());
-        }
+        parseResult = jsonFilterParser.apply(new MqlJsonStreamParser(
+          (null == objectMapper ? Jackson2ObjectMapperUtils.getDefaultObjectMapper() : objectMapper),
+          entityType.getName()));
       }
     }
+    else
+    {
+      throw new IllegalArgumentException("filter is not set.");
+    }
+
+    return parseResult;
   }
 
-  private MqlQueryBuildResult<E> buildQueries()
+  private MqlExpressionParseResult parseMapFilter(Map<String, Object> filter)
   {
     final var parser = new MqlExpressionParser(
-      mapFilter,
+      filter,
       entityType.getName());
-    final var parseResult = StreamSupport
+
+    return StreamSupport
       .stream(
         Spliterators.spliteratorUnknownSize(parser.iterator(), Spliterator.ORDERED),
         false)
       .filter(MqlExpressionParseResult::isCompleted)
       .findFirst()
       .orElseThrow();
+  }
+
+  private MqlCompiledQuery<E> compileQueries(MqlExpressionParseResult parseResult)
+  {
+    MqlCompiledQuery<E> compiledQuery = null;
+    if(null == queryPlanCache)
+    {
+      final var emitter = new MqlQueryEmitter<>(queryEmitterConfig);
+      compiledQuery = emitter.emit(parseResult);
+    }
+    else
+    {
+      final var shape = MqlQueryShape.of(
+        parseResult.getRootNode(),
+        queryEmitterConfig);
+      final var shapeKey = shape.getKey();
 
-    final var emitter = new MqlQueryEmitter<>(queryEmitterConfig);
-    final var result = emitter.emit(parseResult);
+      final MqlCompiledQuery<E> cachedQuery = queryPlanCache.get(shapeKey);
+      if(null == cachedQuery)
+      {
+        final var emitter = new MqlQueryEmitter<>(queryEmitterConfig);
+        compiledQuery = emitter.emit(parseResult);
 
-    return result;
+        if(compiledQuery.getParameterValues().equals(shape.getParameterValues()))
+        {
+          // Do not keep the values of this filter alive in the cache.
+          queryPlanCache.put(
+            shapeKey,
+            compiledQuery.with(null, queryEmitterConfig));
+        }
+        else
+        {
+          logger.warn("The query is not cached because the parameters of the shape do not match the emitted ones.");
+        }
+      }
+      else
+      {
+        compiledQuery = cachedQuery.with(shape.getParameterValues(), queryEmitterConfig);
+      }
+    }
+
+    return compiledQuery;
   }
 
   private Logger logger;
 
   private EntityManager entityManager;
 
+  private Metamodel metamodel;
+
   private EntityType<? extends E> entityType;
 
   private Class<? extends E> entityJavaType;
@@ -266,11 +799,21 @@ public class MqlQueryBuilder<E>
 
   private ObjectMapper objectMapper;
 
+  private MqlTypeConverter typeConverter;
+
   private Map<String, Object> mapFilter;
 
   private String filterJson;
 
+  private Function<MqlJsonStreamParser, MqlExpressionParseResult> jsonFilterParser;
+
   private MqlQueryEmitterConfig.MqlQueryEmitterConfigBuilder<E, ?, ?> queryEmitterConfigBuilder;
 
   private MqlQueryEmitterConfig<E> queryEmitterConfig;
+
+  private MqlQueryPlanCache queryPlanCache;
+
+  private Map<String, ?> placeholderValues;
+
+  private boolean filterOptimization;
 }
@@ -1,10 +1,11 @@
 package kaphein.jpa.mql;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import jakarta.persistence.metamodel.EntityType;
 import jakarta.persistence.metamodel.Metamodel;
+import kaphein.jpa.core.MetamodelIndex;
 
 class MqlQueryBuilderContext
 {
@@ -12,11 +13,25 @@ class MqlQueryBuilderContext
     Metamodel metamodel,
     MqlAstNode rootNode
   )
+  {
+    this(metamodel, rootNode, new MqlParameterMap());
+  }
+
+  /**
+   * @param mqlParameterMap
+   *          The parameter map shared with the context of another filter emitted into the same query.
+   */
+  MqlQueryBuilderContext(
+    Metamodel metamodel,
+    MqlAstNode rootNode,
+    MqlParameterMap mqlParameterMap
+  )
   {
     this.metamodel = metamodel;
-    entityTypeByEntityNameMap = new HashMap<>();
-    mqlParameterMap = new MqlParameterMap();
+    metamodelIndex = MetamodelIndex.of(metamodel);
+    this.mqlParameterMap = mqlParameterMap;
     this.rootNode = rootNode;
+    joinedEntityTypeByAlias = new LinkedHashMap<>();
   }
 
   public Metamodel getMetamodel()
@@ -24,9 +39,9 @@ class MqlQueryBuilderContext
     return metamodel;
   }
 
-  public Map<String, EntityType<?>> getEntityTypeByEntityNameMap()
+  public MetamodelIndex getMetamodelIndex()
   {
-    return entityTypeByEntityNameMap;
+    return metamodelIndex;
   }
 
   public MqlParameterMap getMqlParameterMap()
@@ -39,11 +54,21 @@ class MqlQueryBuilderContext
     return rootNode;
   }
 
+  /**
+   * @return The entity types of the aliases joined to the root query outside of the filter, by alias.
+   */
+  public Map<String, EntityType<?>> getJoinedEntityTypeByAlias()
+  {
+    return joinedEntityTypeByAlias;
+  }
+
   private final Metamodel metamodel;
 
-  private final Map<String, EntityType<?>> entityTypeByEntityNameMap;
+  private final MetamodelIndex metamodelIndex;
 
   private final MqlParameterMap mqlParameterMap;
 
   private final MqlAstNode rootNode;
+
+  private final Map<String, EntityType<?>> joinedEntityTypeByAlias;
 }
@@ -2,13 +2,23 @@ package kaphein.jpa.mql;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EmbeddableType;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.PluralAttribute;
+import jakarta.persistence.metamodel.SingularAttribute;
 import kaphein.jpa.core.AssertArg;
+import kaphein.jpa.core.EntityTypeUtils;
+import kaphein.jpa.core.InvalidAttributePathException;
 import kaphein.jpa.core.JpaEntityAttributePath;
+import kaphein.jpa.core.Sort;
 import kaphein.jpa.core.Sort.NullOrder;
 import kaphein.jpa.core.StringUtils;
 
@@ -17,20 +27,179 @@ class MqlQueryEmitter<E>
   MqlQueryEmitter(MqlQueryEmitterConfig<E> config)
   {
     this.config = AssertArg.isNotNull(config, "config");
-    this.subQueryContextMap = new HashMap<String, MqlSubQueryContext>();
     this.subQueryContextQueue = new LinkedList<MqlSubQueryContext>();
+    this.touchedEntityJavaTypes = new LinkedHashSet<>();
   }
 
-  MqlQueryBuildResult<E> emit(MqlExpressionParseResult parseResult)
+  MqlCompiledQuery<E> emit(MqlExpressionParseResult parseResult)
   {
     final var logger = config.getLogger();
-    final var em = config.getEntityManager();
 
     final var queryBuilderCtxt = new MqlQueryBuilderContext(
-      em.getMetamodel(),
+      config.getMetamodel(),
       parseResult.getRootNode());
+    emitSubQueries(queryBuilderCtxt);
 
     final var rootNode = queryBuilderCtxt.getRootNode();
+    final var paramMap = queryBuilderCtxt.getMqlParameterMap();
+    final var queryNode = rootNode.getChildNodeAt(0);
+    final var jpqlFromClause = queryNode.getJpqlExpression();
+    logger.debug("jpqlFromClause == {}", jpqlFromClause);
+
+    final var jpqlOrderByClause = buildOrderByClause((null == keysetOrderByTerms
+      ? config.getOrderByTerms()
+      : keysetOrderByTerms));
+    logger.debug("jpqlOrderByClause == {}", jpqlOrderByClause);
+
+    final var entityType = config.getEntityType();
+    final var entityAlias = config.getEntityAlias();
+    final var projection = config.getProjection();
+    @SuppressWarnings("unchecked")
+    final var itemJavaType = (null == projection
+      ? entityType.getJavaType()
+      : (Class<? extends E>)projection.getItemJavaType());
+    final var orderBySuffix = (StringUtils.isNotBlank(jpqlOrderByClause) ? " " + jpqlOrderByClause : "");
+    final var itemSelectClause = (null == selectClause ? entityAlias : selectClause);
+
+    String idQueryString = null;
+    String itemByIdsQueryString = null;
+    if(null != idPath)
+    {
+      // The page is cut on the ids alone, and the entities of the page are fetched by their ids without paging.
+      idQueryString = String.format("SELECT %s %s%s", idPath, jpqlFromClause, orderBySuffix);
+      itemByIdsQueryString = String.format(
+        "SELECT %s %s",
+        itemSelectClause,
+        buildFromClause(
+          entityType.getName(),
+          entityAlias,
+          (null == fetchJoinClauses ? List.of() : fetchJoinClauses),
+          String.format("%s IN :%s", idPath, MqlCompiledQuery.IDS_PARAMETER_NAME)));
+      logger.debug("idQueryString == {}", idQueryString);
+    }
+
+    String cappedCountQueryString = null;
+    if(MqlCountStrategy.Mode.CAPPED.equals(config.getCountStrategy().getMode()))
+    {
+      // Any column will do as the rows are counted, and the first id attribute is never null.
+      cappedCountQueryString = String.format(
+        "SELECT %s.%s %s",
+        entityAlias,
+        EntityTypeUtils.findIdAttributes(entityType).iterator().next().getName(),
+        countFromClause);
+      logger.debug("cappedCountQueryString == {}", cappedCountQueryString);
+    }
+
+    final var compiledQuery = new MqlCompiledQuery<E>(
+      itemJavaType,
+      String.format(
+        "SELECT %s %s%s",
+        itemSelectClause,
+        (null == itemFromClause ? jpqlFromClause : itemFromClause),
+        orderBySuffix),
+      String.format("SELECT COUNT(*) %s", countFromClause),
+      jpqlOrderByClause,
+      paramMap.getParameterSlots(),
+      new ArrayList<>(paramMap.values()),
+      config.getTypeConverter(),
+      config.getLimit(),
+      config.getOffset(),
+      config.isCountQueryEnabled(),
+      keysetKeys,
+      emptyResult,
+      config.getFetchPlan(),
+      idQueryString,
+      itemByIdsQueryString,
+      config.isHasNextProbe(),
+      config.getCountStrategy(),
+      cappedCountQueryString,
+      touchedEntityJavaTypes,
+      config.getResultCache(),
+      countParameterCount,
+      collectionFetched);
+    rootNode.removeChild(queryNode);
+
+    return compiledQuery;
+  }
+
+  /**
+   * Emits a query that counts the items matching the filter and each facet filter in one round trip.
+   *
+   * @param facetParseResults
+   *          The facet filters by name. Their parameters are issued on the parameter map of the filter.
+   */
+  MqlFacetQuery emitFacets(
+    MqlExpressionParseResult parseResult,
+    Map<String, MqlExpressionParseResult> facetParseResults
+  )
+  {
+    final var logger = config.getLogger();
+
+    final var queryBuilderCtxt = new MqlQueryBuilderContext(
+      config.getMetamodel(),
+      parseResult.getRootNode());
+    emitSubQueries(queryBuilderCtxt);
+    final var filterEmptyResult = emptyResult;
+
+    final var filterWhereClauseExpr = rootWhereClauseExpr;
+    final var filterJoinClauses = rootJoinClauses;
+
+    final var rootNode = queryBuilderCtxt.getRootNode();
+    final var paramMap = queryBuilderCtxt.getMqlParameterMap();
+    var jpqlFromClause = rootNode.getChildNodeAt(0).getJpqlExpression();
+
+    // An association path in the select clause would be an inner join that drops the rows of the other facets.
+    final var facetJoinClauses = new ArrayList<String>();
+    final var facetJoinAliases = new HashMap<String, String>();
+    final var facetJoinedEntityTypes = new HashMap<String, EntityType<?>>();
+    final var sumExprs = new ArrayList<String>(facetParseResults.size());
+    for(final var facetParseResult : facetParseResults.values())
+    {
+      final var facetQueryBuilderCtxt = new MqlQueryBuilderContext(
+        config.getMetamodel(),
+        facetParseResult.getRootNode(),
+        paramMap);
+      leftJoinAssociationPaths(facetQueryBuilderCtxt, facetJoinClauses, facetJoinAliases, facetJoinedEntityTypes);
+      facetQueryBuilderCtxt
+        .getJoinedEntityTypeByAlias()
+        .putAll(facetJoinedEntityTypes);
+      emitSubQueries(facetQueryBuilderCtxt);
+      sumExprs.add(String.format(
+        "SUM(CASE WHEN %s THEN 1 ELSE 0 END)",
+        (StringUtils.isBlank(rootWhereClauseExpr) ? "1 = 1" : String.format("(%s)", rootWhereClauseExpr))));
+    }
+
+    if(!facetJoinClauses.isEmpty())
+    {
+      final var joinClauses = new ArrayList<String>(filterJoinClauses);
+      joinClauses.addAll(facetJoinClauses);
+      jpqlFromClause = buildFromClause(
+        config.getEntityType().getName(),
+        config.getEntityAlias(),
+        joinClauses,
+        filterWhereClauseExpr);
+    }
+
+    final var facetQueryString = String.format("SELECT %s %s", String.join(", ", sumExprs), jpqlFromClause);
+    logger.debug("facetQueryString == {}", facetQueryString);
+
+    return new MqlFacetQuery(
+      facetQueryString,
+      new ArrayList<>(facetParseResults.keySet()),
+      paramMap.getParameterSlots(),
+      new ArrayList<>(paramMap.values()),
+      config.getTypeConverter(),
+      filterEmptyResult);
+  }
+
+  private void emitSubQueries(MqlQueryBuilderContext queryBuilderCtxt)
+  {
+    final var logger = config.getLogger();
+
+    final var rootNode = queryBuilderCtxt.getRootNode();
+    // Node ids are sequential, so sub query contexts are indexed by the ids of their root nodes.
+    final var subQueryContexts = new MqlSubQueryContext[rootNode.getNodeRegistry().size()];
+    final var aliasCounts = new HashMap<String, Integer>();
     final var nodePostIter = rootNode.postOrderIterator();
     while(nodePostIter.hasNext())
     {
@@ -53,10 +222,9 @@ class MqlQueryEmitter<E>
           final var subQueryContext = new MqlSubQueryContext(
             queryBuilderCtxt,
             node);
-          subQueryContextMap.put(
-            node.getId(),
-            subQueryContext);
+          subQueryContexts[node.getId()] = subQueryContext;
           subQueryContextQueue.offer(subQueryContext);
+          aliasCounts.merge(subQueryContext.getAlias(), 1, Integer::sum);
         }
           break;
         default:
@@ -89,8 +257,7 @@ class MqlQueryEmitter<E>
 
       if(null != parentSubQueryRootNode)
       {
-        final var parentSubQueryRootNodeId = parentSubQueryRootNode.getId();
-        final var parentSubQueryContext = subQueryContextMap.get(parentSubQueryRootNodeId);
+        final var parentSubQueryContext = subQueryContexts[parentSubQueryRootNode.getId()];
         if(null != parentSubQueryContext)
         {
           parentSubQueryContext.addChild(subQueryContext);
@@ -98,7 +265,6 @@ class MqlQueryEmitter<E>
       }
     }
 
-    final var typeConverter = config.getTypeConverter();
     while(!subQueryContextQueue.isEmpty())
     {
       final var subQueryContext = subQueryContextQueue.poll();
@@ -111,6 +277,11 @@ class MqlQueryEmitter<E>
       final var alias = subQueryContext.getAlias();
       final var queryNode = subQueryContext.getQueryNode();
       final var whereClauseRootNode = queryNode.getChildNodeAt(0);
+      touchedEntityJavaTypes.add(entityType.getJavaType());
+      // Decided before the where clause is emitted as it consumes the nodes.
+      final var semiJoinIdAttrName = (config.isSemiJoinRewrite()
+        ? findSemiJoinIdAttributeName(subQueryContext, aliasCounts)
+        : null);
 
       final var whereClauseNodeQueue = new LinkedList<MqlAstNode>();
       final var whereClauseNodeIter = whereClauseRootNode.postOrderIterator();
@@ -122,6 +293,10 @@ class MqlQueryEmitter<E>
       while(!whereClauseNodeQueue.isEmpty())
       {
         final var node = whereClauseNodeQueue.poll();
+        if(MqlAstNode.Kind.ATTRIBUTE_PATH.equals(node.getKind()))
+        {
+          addTouchedEntityJavaTypes(subQueryContext, (JpaEntityAttributePath)node.getValue());
+        }
 
         switch(node.getKind())
         {
@@ -141,6 +316,9 @@ class MqlQueryEmitter<E>
           case "jpqlExists":
             // Does nothing.
             break;
+          case MqlAstOptimizer.FALSE_CLAUSE_LABEL:
+            node.setJpqlExpression("1 = 0");
+            break;
           case "and":
           case "or":
           {
@@ -211,6 +389,7 @@ class MqlQueryEmitter<E>
             final var attrPath = (JpaEntityAttributePath)paramNode.getValue();
             // Verify the path.
             subQueryContext.findJavaTypeOf(attrPath);
+            addTouchedEntityJavaTypes(subQueryContext, attrPath);
 
             node.setKind(MqlAstNode.Kind.ATTRIBUTE_PATH);
             node.setLabel(null);
@@ -256,24 +435,56 @@ class MqlQueryEmitter<E>
 
               operandNodes.add(operandNode);
             }
-            final var operandValues = operandNodes
-              .stream()
-              .map(MqlAstNode::getValue)
-              .collect(Collectors.toList());
+            final Object operandValues = (1 == operandNodes.size()
+              && operandNodes.getFirst().getValue() instanceof MqlParameterReference
+                ? operandNodes.getFirst().getValue()
+                : operandNodes
+                  .stream()
+                  .map(MqlAstNode::getValue)
+                  .collect(Collectors.toList()));
 
-            final var typedOperands = typeConverter.convertElementType(operandValues, lhsJavaType);
+            final var negated = node.getLabel().startsWith("n");
+            final var opStr = (negated ? "NOT IN" : "IN");
+            final var chunkSize = config.getInListChunkSize();
+            final var paddingLimit = (config.isInListPadding() ? chunkSize : 0);
 
-            final var paramName = paramMap.issueParameterName(typedOperands);
-            rhsStr = String.format(":%s", paramName);
+            var jpqlExpr = "";
+            if(operandValues instanceof List<?> && ((List<?>)operandValues).size() > chunkSize)
+            {
+              // Splits the list so that each parameter stays under the bind limit of drivers.
+              final var listValues = (List<?>)operandValues;
+              final var chunkExprs = new ArrayList<String>();
+              for(var chunkStart = 0; chunkStart < listValues.size();)
+              {
+                final var chunkEnd = (int)Math.min((long)chunkStart + chunkSize, listValues.size());
+                final var paramName = paramMap.issueParameterName(
+                  MqlParameterSlot.Kind.VALUE_LIST,
+                  lhsJavaType,
+                  new ArrayList<>(listValues.subList(chunkStart, chunkEnd)),
+                  paddingLimit);
+                chunkExprs.add(String.format("%s %s :%s", lhsStr, opStr, paramName));
+                chunkStart = chunkEnd;
+              }
 
-            final var opStr = (node.getLabel().startsWith("n") ? "NOT IN" : "IN");
+              jpqlExpr = String.format("(%s)", String.join((negated ? " AND " : " OR "), chunkExprs));
+            }
+            else
+            {
+              final var paramName = paramMap.issueParameterName(
+                MqlParameterSlot.Kind.VALUE_LIST,
+                lhsJavaType,
+                operandValues,
+                paddingLimit);
+              rhsStr = String.format(":%s", paramName);
 
-            final var jpqlExpr = String.format("%s %s %s", lhsStr, opStr, rhsStr);
+              jpqlExpr = String.format("%s %s %s", lhsStr, opStr, rhsStr);
+            }
             node.setJpqlExpression(jpqlExpr);
 
-            for(final var operandNode : operandNodes)
+            final var operandNodeIter = operandNodes.descendingIterator();
+            while(operandNodeIter.hasNext())
             {
-              node.removeChild(operandNode);
+              node.removeChild(operandNodeIter.next());
             }
             node.removeChild(lhsNode);
           }
@@ -353,8 +564,10 @@ class MqlQueryEmitter<E>
                 throw new MqlSyntaxException("");
               }
 
-              final var rhsConvertedValue = typeConverter.convertType(value, lhsJavaType);
-              final var paramName = paramMap.issueParameterName(rhsConvertedValue);
+              final var paramName = paramMap.issueParameterName(
+                MqlParameterSlot.Kind.VALUE,
+                lhsJavaType,
+                value);
               rhsStr = String.format(":%s", paramName);
             }
               break;
@@ -425,8 +638,10 @@ class MqlQueryEmitter<E>
               }
               else
               {
-                final var rhsConvertedValue = typeConverter.convertType(value, lhsJavaType);
-                final var paramName = paramMap.issueParameterName(rhsConvertedValue);
+                final var paramName = paramMap.issueParameterName(
+                  MqlParameterSlot.Kind.VALUE,
+                  lhsJavaType,
+                  value);
                 rhsStr = String.format(":%s", paramName);
               }
             }
@@ -553,19 +768,7 @@ class MqlQueryEmitter<E>
         }
       }
 
-      final var whereClauseExpr = whereClauseRootNode.getJpqlExpression();
-
-      queryNode.setJpqlExpression(String.format(
-        "FROM %s %s %s",
-        entityType.getName(),
-        alias,
-        ((null == whereClauseExpr || whereClauseExpr.isBlank())
-          ? ""
-          : String.format("WHERE %s", whereClauseExpr))));
-
-      queryNode.removeChild(whereClauseRootNode);
-
-      final var negated = subQueryRootNode.getLabel().startsWith("n");
+      var whereClauseExpr = whereClauseRootNode.getJpqlExpression();
 
       final var parentNode = subQueryRootNode.getParent();
       if(null == parentNode)
@@ -573,6 +776,39 @@ class MqlQueryEmitter<E>
         throw new MqlSyntaxException("");
       }
 
+      final var joinClauses = subQueryContext.getJoinClauses();
+      if(MqlAstNode.Kind.ROOT.equals(parentNode.getKind()))
+      {
+        emptyResult = MqlAstOptimizer.isFalse(whereClauseRootNode);
+        rootWhereClauseExpr = whereClauseExpr;
+        rootJoinClauses = new ArrayList<>(joinClauses);
+        for(final var term : config.getOrderByTerms())
+        {
+          addTouchedEntityJavaTypes(subQueryContext, term.getPath());
+        }
+
+        // The items are counted over all pages, so the counts take neither the seek predicate nor its parameters.
+        countParameterCount = paramMap.size();
+        countFromClause = buildFromClause(entityType.getName(), alias, joinClauses, rootWhereClauseExpr);
+
+        if(config.isKeysetPagination())
+        {
+          // Issued after the parameters of the where clause as the root query is processed last.
+          final var seekExpr = buildKeysetPredicate(subQueryContext, paramMap);
+          if(null != seekExpr)
+          {
+            whereClauseExpr = ((null == whereClauseExpr || whereClauseExpr.isBlank())
+              ? seekExpr
+              : String.format("(%s) AND (%s)", whereClauseExpr, seekExpr));
+          }
+        }
+      }
+      queryNode.setJpqlExpression(buildFromClause(entityType.getName(), alias, joinClauses, whereClauseExpr));
+
+      queryNode.removeChild(whereClauseRootNode);
+
+      final var negated = subQueryRootNode.getLabel().startsWith("n");
+
       switch(parentNode.getKind())
       {
       case ROOT:
@@ -583,69 +819,459 @@ class MqlQueryEmitter<E>
         }
 
         subQueryRootNode.setJpqlExpression(queryNode.getJpqlExpression());
+
+        if(config.isIdFirstPagination())
+        {
+          final var idAttrs = EntityTypeUtils.findIdAttributes(entityType);
+          if(1 == idAttrs.size())
+          {
+            idPath = String.format("%s.%s", alias, idAttrs.iterator().next().getName());
+          }
+          else
+          {
+            logger.warn("Id-first pagination is not applied as {} has more than one id attribute.", entityType.getName());
+          }
+        }
+
+        final var projection = config.getProjection();
+        if(null != projection)
+        {
+          // The associations of the projected paths are joined by the item query only.
+          final var itemJoinClauses = new ArrayList<String>(joinClauses);
+          selectClause = projection.createSelectClause(subQueryContext, itemJoinClauses);
+          itemFromClause = buildFromClause(entityType.getName(), alias, itemJoinClauses, whereClauseExpr);
+        }
+
+        final var fetchPlan = config.getFetchPlan();
+        if(null != fetchPlan)
+        {
+          final var collectionPaths = fetchPlan.findCollectionPaths(subQueryContext);
+          collectionFetched = !collectionPaths.isEmpty();
+          if(
+            !collectionPaths.isEmpty()
+              && null == idPath
+              && (config.getLimit() < Integer.MAX_VALUE || config.getOffset() > 0)
+          )
+          {
+            logger.warn(
+              "Fetching collections {} with limit or offset makes the persistence provider paginate in memory.",
+              collectionPaths);
+          }
+
+          if(MqlFetchPlan.Mode.JOIN_FETCH.equals(fetchPlan.getMode()))
+          {
+            // The fetches are joined by the item query only, as the count query cannot fetch.
+            fetchJoinClauses = new ArrayList<String>();
+            fetchPlan.appendJoinFetchClauses(fetchJoinClauses);
+            final var itemJoinClauses = new ArrayList<String>(joinClauses);
+            itemJoinClauses.addAll(fetchJoinClauses);
+            // A fetched collection repeats the entity per element, but DISTINCT is not added, as the databases reject
+            // the order by terms that are not selected with it.
+            // The persistence provider removes the repeated entities instead.
+            itemFromClause = buildFromClause(entityType.getName(), alias, itemJoinClauses, whereClauseExpr);
+          }
+        }
       }
         break;
       default:
-      {
-        var finalJpqlExpr = String.format("EXISTS (SELECT %s %s)", alias, queryNode.getJpqlExpression());
-        if(negated)
+        if(null != semiJoinIdAttrName)
         {
-          finalJpqlExpr = String.format("NOT %s", finalJpqlExpr);
+          // The sub query matches at most one row per row of the parent query, so joining it does not duplicate rows.
+          subQueryContext.getParent().addJoinClause(String.format(
+            "%s %s %s ON %s",
+            (negated ? "LEFT JOIN" : "JOIN"),
+            entityType.getName(),
+            alias,
+            whereClauseExpr));
+          if(negated)
+          {
+            subQueryRootNode.setJpqlExpression(String.format("%s.%s IS NULL", alias, semiJoinIdAttrName));
+          }
+          else
+          {
+            parentNode.removeChild(subQueryRootNode);
+          }
         }
+        else
+        {
+          var finalJpqlExpr = String.format("EXISTS (SELECT %s %s)", alias, queryNode.getJpqlExpression());
+          if(negated)
+          {
+            finalJpqlExpr = String.format("NOT %s", finalJpqlExpr);
+          }
 
-        subQueryRootNode.setJpqlExpression(finalJpqlExpr);
-      }
+          subQueryRootNode.setJpqlExpression(finalJpqlExpr);
+        }
       }
 
       subQueryRootNode.removeChild(queryNode);
       subQueryRootNode.removeChild(aliasNode);
       subQueryRootNode.removeChild(entityNameNode);
     }
+  }
 
-    final var paramMap = queryBuilderCtxt.getMqlParameterMap();
-    final var queryNode = rootNode.getChildNodeAt(0);
-    final var jpqlFromClause = queryNode.getJpqlExpression();
-    logger.debug("jpqlFromClause == {}", jpqlFromClause);
+  private static String buildFromClause(
+    String entityName,
+    String alias,
+    List<String> joinClauses,
+    String whereClauseExpr
+  )
+  {
+    return String.format(
+      "FROM %s %s %s",
+      entityName,
+      (joinClauses.isEmpty()
+        ? alias
+        : String.format("%s %s", alias, String.join(" ", joinClauses))),
+      ((null == whereClauseExpr || whereClauseExpr.isBlank())
+        ? ""
+        : String.format("WHERE %s", whereClauseExpr)));
+  }
 
-    final var jpqlOrderByClause = buildOrderByClause();
-    logger.debug("jpqlOrderByClause == {}", jpqlOrderByClause);
+  /**
+   * A sub query can be joined if it is a term of the where clause of the root query and equates the single id
+   * attribute of its entity to an attribute of the root entity, so it matches at most one row per row of the root
+   * query.
+   *
+   * @return The name of the id attribute, or {@code null} if the sub query must be emitted as {@code EXISTS}.
+   */
+  private static String findSemiJoinIdAttributeName(
+    MqlSubQueryContext subQueryContext,
+    Map<String, Integer> aliasCounts
+  )
+  {
+    final var parentSubQueryContext = subQueryContext.getParent();
+    if(null == parentSubQueryContext || null != parentSubQueryContext.getParent())
+    {
+      return null;
+    }
 
-    final var entityType = config.getEntityType();
-    final var entityAlias = config.getEntityAlias();
-    final var itemQuery = em
-      .createQuery(
-        String.format(
-          "SELECT %s %s%s",
-          entityAlias,
-          jpqlFromClause,
-          (StringUtils.isNotBlank(jpqlOrderByClause) ? " " + jpqlOrderByClause : "")),
-        entityType.getJavaType())
-      .setMaxResults(config.getLimit())
-      .setFirstResult(config.getOffset());
-    final var countQuery = em.createQuery(
-      String.format("SELECT COUNT(*) %s", jpqlFromClause),
-      Long.class);
-    for(final var paramEntry : paramMap.entrySet())
+    // A join cannot be nested in OR.
+    final var parentNode = subQueryContext.getSubQueryRootNode().getParent();
+    if(parentNode != parentSubQueryContext.getQueryNode().getChildNodeAt(0) || !"and".equals(parentNode.getLabel()))
     {
-      final var paramName = paramEntry.getKey();
-      final var paramValue = paramEntry.getValue();
+      return null;
+    }
 
-      itemQuery.setParameter(paramName, paramValue);
-      countQuery.setParameter(paramName, paramValue);
+    // A joined alias is visible to the whole query.
+    final var alias = subQueryContext.getAlias();
+    if(1 != aliasCounts.get(alias))
+    {
+      return null;
+    }
+
+    final var idAttrs = EntityTypeUtils.findIdAttributes(subQueryContext.getEntityType());
+    if(1 != idAttrs.size())
+    {
+      return null;
+    }
+    final var idAttr = idAttrs.iterator().next();
+    if(!Attribute.PersistentAttributeType.BASIC.equals(idAttr.getPersistentAttributeType()))
+    {
+      return null;
+    }
+    final var idPath = String.format("%s.%s", alias, idAttr.getName());
+    final var parentAlias = parentSubQueryContext.getAlias();
+
+    final var whereClauseRootNode = subQueryContext.getQueryNode().getChildNodeAt(0);
+    if(!"and".equals(whereClauseRootNode.getLabel()))
+    {
+      return null;
+    }
+    for(var i = 0; i < whereClauseRootNode.getChildCount(); ++i)
+    {
+      final var termNode = whereClauseRootNode.getChildNodeAt(i);
+      if(
+        !MqlAstNode.Kind.VALUE_OPERATOR.equals(termNode.getKind())
+          || !"eq".equals(termNode.getLabel())
+          || 2 != termNode.getChildCount()
+      )
+      {
+        continue;
+      }
+
+      final var lhsNode = termNode.getChildNodeAt(0);
+      final var rhsNode = termNode.getChildNodeAt(1);
+      if(
+        !MqlAstNode.Kind.ATTRIBUTE_PATH.equals(lhsNode.getKind())
+          || !MqlAstNode.Kind.VALUE_OPERATOR.equals(rhsNode.getKind())
+          || !"attrPath".equals(rhsNode.getLabel())
+          || 1 != rhsNode.getChildCount()
+          || !(rhsNode.getChildNodeAt(0).getValue() instanceof JpaEntityAttributePath)
+      )
+      {
+        continue;
+      }
+
+      final var lhsPath = (JpaEntityAttributePath)lhsNode.getValue();
+      final var rhsPath = (JpaEntityAttributePath)rhsNode.getChildNodeAt(0).getValue();
+      if(
+        (idPath.equals(lhsPath.toString()) && isAttributePathOf(rhsPath, parentAlias))
+          || (idPath.equals(rhsPath.toString()) && isAttributePathOf(lhsPath, parentAlias))
+      )
+      {
+        return idAttr.getName();
+      }
+    }
+
+    return null;
+  }
+
+  private static boolean isAttributePathOf(JpaEntityAttributePath path, String alias)
+  {
+    return path.size() > 1 && alias.equals(path.get(0));
+  }
+
+  /**
+   * Appends the id attributes of the entity to the order by terms as tie-breakers and builds the predicate that seeks
+   * after the cursor.
+   *
+   * @return The predicate, or {@code null} if there is no cursor.
+   */
+  private String buildKeysetPredicate(
+    MqlSubQueryContext rootSubQueryContext,
+    MqlParameterMap paramMap
+  )
+  {
+    final var alias = rootSubQueryContext.getAlias();
+
+    keysetOrderByTerms = new ArrayList<>(config.getOrderByTerms());
+    final var termPaths = keysetOrderByTerms
+      .stream()
+      .map((term) -> term.getPath().toString())
+      .collect(Collectors.toSet());
+    for(final var idAttr : EntityTypeUtils.findIdAttributes(rootSubQueryContext.getEntityType()))
+    {
+      final var idPaths = new ArrayList<String>();
+      final var idAttrType = idAttr.getType();
+      if(idAttrType instanceof EmbeddableType)
+      {
+        ((EmbeddableType<?>)idAttrType)
+          .getSingularAttributes()
+          .stream()
+          .map(Attribute::getName)
+          .sorted()
+          .forEach((name) -> idPaths.add(String.format("%s.%s.%s", alias, idAttr.getName(), name)));
+      }
+      else
+      {
+        idPaths.add(String.format("%s.%s", alias, idAttr.getName()));
+      }
+
+      for(final var idPath : idPaths)
+      {
+        if(termPaths.add(idPath))
+        {
+          keysetOrderByTerms.add(new Sort.Order(idPath));
+        }
+      }
+    }
+
+    keysetKeys = new ArrayList<>(keysetOrderByTerms.size());
+    for(final var term : keysetOrderByTerms)
+    {
+      keysetKeys.add(new MqlKeysetKey(
+        term.getPath(),
+        rootSubQueryContext.findAttributesOf(term.getPath())));
+    }
+
+    final var cursor = config.getKeysetCursor();
+    if(null == cursor)
+    {
+      return null;
+    }
+
+    final var cursorValues = cursor.getValues();
+    if(cursorValues.size() != keysetOrderByTerms.size())
+    {
+      throw new MqlException(String.format(
+        "The cursor has %d values, but the order by terms require %d",
+        cursorValues.size(),
+        keysetOrderByTerms.size()));
+    }
+
+    // (a > :a) OR (a = :a AND b > :b) OR ...
+    final var disjuncts = new ArrayList<String>();
+    final var equalities = new ArrayList<String>();
+    for(var i = 0; i < keysetOrderByTerms.size(); ++i)
+    {
+      final var term = keysetOrderByTerms.get(i);
+      final var path = term.getPath().toString();
+      final var nullOrder = Optional
+        .ofNullable(term.getNullOrder())
+        .orElse(NullOrder.DEFAULT);
+      final var value = cursorValues.get(i);
+
+      String afterExpr = null;
+      String equalExpr = null;
+      if(null == value)
+      {
+        // With the DBMS default policy, the position of NULLs is unknown, so nothing is sought after them.
+        if(NullOrder.FIRST.equals(nullOrder))
+        {
+          afterExpr = String.format("%s IS NOT NULL", path);
+        }
+        equalExpr = String.format("%s IS NULL", path);
+      }
+      else
+      {
+        final var paramName = paramMap.issueParameterName(
+          MqlParameterSlot.Kind.VALUE,
+          rootSubQueryContext.findJavaTypeOf(term.getPath()),
+          value);
+        afterExpr = String.format("%s %s :%s", path, (term.isDescending() ? "<" : ">"), paramName);
+        if(NullOrder.LAST.equals(nullOrder))
+        {
+          afterExpr = String.format("(%s OR %s IS NULL)", afterExpr, path);
+        }
+        equalExpr = String.format("%s = :%s", path, paramName);
+      }
+
+      if(null != afterExpr)
+      {
+        final var conjuncts = new ArrayList<>(equalities);
+        conjuncts.add(afterExpr);
+        disjuncts.add(String.format("(%s)", String.join(" AND ", conjuncts)));
+      }
+      equalities.add(equalExpr);
+    }
+
+    return (disjuncts.isEmpty() ? "1 = 0" : String.join(" OR ", disjuncts));
+  }
+
+  /**
+   * Replaces the single-valued associations on the paths of the root alias with aliases left joined to the root query,
+   * which are shared by the paths of the same association.
+   *
+   * @param joinClauses
+   *          The {@code LEFT JOIN} clauses to which the new joins are added.
+   * @param joinAliases
+   *          The join aliases by joined path.
+   * @param joinedEntityTypes
+   *          The entity types of the join aliases.
+   */
+  private void leftJoinAssociationPaths(
+    MqlQueryBuilderContext queryBuilderCtxt,
+    List<String> joinClauses,
+    Map<String, String> joinAliases,
+    Map<String, EntityType<?>> joinedEntityTypes
+  )
+  {
+    final var rootAlias = config.getEntityAlias();
+    final var metamodelIndex = queryBuilderCtxt.getMetamodelIndex();
+    final var nodeIter = queryBuilderCtxt
+      .getRootNode()
+      .postOrderIterator();
+    while(nodeIter.hasNext())
+    {
+      final var node = nodeIter.next();
+      if(!(node.getValue() instanceof JpaEntityAttributePath))
+      {
+        continue;
+      }
+
+      final var path = (JpaEntityAttributePath)node.getValue();
+      if(path.size() < 3 || !rootAlias.equals(path.get(0)))
+      {
+        continue;
+      }
+
+      List<Attribute<?, ?>> attrs = null;
+      try
+      {
+        attrs = metamodelIndex.findAttributesOrThrow(
+          config.getEntityType(),
+          String.join(".", path.subList(1, path.size())));
+      }
+      catch(final InvalidAttributePathException iape)
+      {
+        // Reported when the path is emitted.
+        continue;
+      }
+
+      var expr = rootAlias;
+      String joinAlias = null;
+      var joinedLength = 0;
+      for(var i = 0; i < attrs.size() - 1; ++i)
+      {
+        final var attr = attrs.get(i);
+        if(attr.isCollection() || !(attr instanceof SingularAttribute))
+        {
+          break;
+        }
+
+        final var joinPath = String.format("%s.%s", expr, path.get(i + 1));
+        if(attr.isAssociation())
+        {
+          final var joinedType = ((SingularAttribute<?, ?>)attr).getType();
+          if(!(joinedType instanceof EntityType))
+          {
+            break;
+          }
+
+          expr = joinAliases.computeIfAbsent(joinPath, (k) ->
+          {
+            final var newJoinAlias = FACET_JOIN_ALIAS_PREFIX + (joinAliases.size() + 1);
+            joinClauses.add(String.format("LEFT JOIN %s %s", joinPath, newJoinAlias));
+            joinedEntityTypes.put(newJoinAlias, (EntityType<?>)joinedType);
+
+            return newJoinAlias;
+          });
+          joinAlias = expr;
+          joinedLength = i + 2;
+        }
+        else
+        {
+          expr = joinPath;
+        }
+      }
+
+      if(null != joinAlias)
+      {
+        final var rewrittenPath = new ArrayList<String>();
+        rewrittenPath.add(joinAlias);
+        rewrittenPath.addAll(path.subList(joinedLength, path.size()));
+        node.setValue(new JpaEntityAttributePath(String.join(".", rewrittenPath)));
+      }
+    }
+  }
+
+  /**
+   * Adds the entity types of the associations on the path to the entity types that the query refers to.
+   */
+  private void addTouchedEntityJavaTypes(
+    MqlSubQueryContext subQueryContext,
+    JpaEntityAttributePath path
+  )
+  {
+    List<Attribute<?, ?>> attrs = null;
+    try
+    {
+      attrs = subQueryContext.findAttributesOf(path);
+    }
+    catch(final MqlSyntaxException mse)
+    {
+      // Not every path is resolved by the emitter, and an invalid one is reported by the persistence provider.
+      return;
     }
-    rootNode.removeChild(queryNode);
 
-    return new MqlQueryBuildResult<>(
-      itemQuery,
-      countQuery);
+    for(final var attr : attrs)
+    {
+      if(attr.isAssociation())
+      {
+        touchedEntityJavaTypes.add((attr instanceof PluralAttribute
+          ? ((PluralAttribute<?, ?, ?>)attr).getElementType().getJavaType()
+          : attr.getJavaType()));
+      }
+    }
   }
 
-  private String buildOrderByClause()
+  private String buildOrderByClause(List<Sort.Order> orderByTerms)
   {
     var expr = "";
 
     final var termExprs = new LinkedList<String>();
-    for(final var term : config.getOrderByTerms())
+    for(final var term : orderByTerms)
     {
       final var attrPath = term.getPath();
       final var path = String.format("%s", attrPath);
@@ -683,9 +1309,44 @@ class MqlQueryEmitter<E>
 
   private static final String NULL_LITERAL = "NULL";
 
-  private final MqlQueryEmitterConfig<E> config;
+  private static final String FACET_JOIN_ALIAS_PREFIX = "__facet";
 
-  private final Map<String, MqlSubQueryContext> subQueryContextMap;
+  private final MqlQueryEmitterConfig<E> config;
 
   private final LinkedList<MqlSubQueryContext> subQueryContextQueue;
+
+  /**
+   * The java types of the entities that the filter, its sub queries and the order by terms refer to.
+   */
+  private final LinkedHashSet<Class<?>> touchedEntityJavaTypes;
+
+  private List<Sort.Order> keysetOrderByTerms;
+
+  private List<MqlKeysetKey> keysetKeys;
+
+  private boolean emptyResult;
+
+  private String selectClause;
+
+  private String itemFromClause;
+
+  /**
+   * The from clause of the root query without the keyset seek predicate.
+   */
+  private String countFromClause;
+
+  private List<String> rootJoinClauses;
+
+  /**
+   * The number of the leading parameters that the count queries take, which excludes the parameters of the cursor.
+   */
+  private int countParameterCount;
+
+  private List<String> fetchJoinClauses;
+
+  private boolean collectionFetched;
+
+  private String idPath;
+
+  private String rootWhereClauseExpr;
 }
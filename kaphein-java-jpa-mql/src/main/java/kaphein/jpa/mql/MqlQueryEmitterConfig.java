@@ -7,8 +7,8 @@ import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.helpers.NOPLogger;
 
-import jakarta.persistence.EntityManager;
 import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.Metamodel;
 import kaphein.jpa.core.AssertArg;
 import kaphein.jpa.core.Sort;
 
@@ -21,7 +21,7 @@ class MqlQueryEmitterConfig<E>
   {
     private Logger logger;
 
-    private EntityManager entityManager;
+    private Metamodel metamodel;
 
     private EntityType<? extends E> entityType;
 
@@ -35,16 +35,58 @@ class MqlQueryEmitterConfig<E>
 
     private MqlTypeConverter typeConverter;
 
+    private Boolean keysetPagination;
+
+    private MqlKeysetCursor keysetCursor;
+
+    private Boolean countQueryEnabled;
+
+    private Boolean inListPadding;
+
+    private Integer inListChunkSize;
+
+    private Boolean semiJoinRewrite;
+
+    private MqlProjection<?> projection;
+
+    private MqlFetchPlan fetchPlan;
+
+    private Boolean idFirstPagination;
+
+    private Boolean hasNextProbe;
+
+    private MqlCountStrategy countStrategy;
+
+    private Integer parallelThreshold;
+
+    private Boolean predicateClassGeneration;
+
+    private MqlResultCache resultCache;
+
     protected MqlQueryEmitterConfigBuilder()
     {
       logger(null);
-      entityManager(null);
+      metamodel(null);
       entityType(null);
       entityAlias(null);
       orderByTerms(null);
       limit(null);
       offset(null);
       typeConverter(null);
+      keysetPagination(null);
+      keysetCursor(null);
+      countQueryEnabled(null);
+      inListPadding(null);
+      inListChunkSize(null);
+      semiJoinRewrite(null);
+      projection(null);
+      fetchPlan(null);
+      idFirstPagination(null);
+      hasNextProbe(null);
+      countStrategy(null);
+      parallelThreshold(null);
+      predicateClassGeneration(null);
+      resultCache(null);
     }
 
     public B logger(Logger logger)
@@ -55,9 +97,9 @@ class MqlQueryEmitterConfig<E>
       return self();
     }
 
-    public B entityManager(EntityManager entityManager)
+    public B metamodel(Metamodel metamodel)
     {
-      this.entityManager = entityManager;
+      this.metamodel = metamodel;
       return self();
     }
 
@@ -110,6 +152,110 @@ class MqlQueryEmitterConfig<E>
       return self();
     }
 
+    public B keysetPagination(Boolean keysetPagination)
+    {
+      this.keysetPagination = Optional
+        .ofNullable(keysetPagination)
+        .orElse(false);
+      return self();
+    }
+
+    public B keysetCursor(MqlKeysetCursor keysetCursor)
+    {
+      this.keysetCursor = keysetCursor;
+      return self();
+    }
+
+    public B countQueryEnabled(Boolean countQueryEnabled)
+    {
+      this.countQueryEnabled = Optional
+        .ofNullable(countQueryEnabled)
+        .orElse(true);
+      return self();
+    }
+
+    public B inListPadding(Boolean inListPadding)
+    {
+      this.inListPadding = Optional
+        .ofNullable(inListPadding)
+        .orElse(false);
+      return self();
+    }
+
+    public B inListChunkSize(Integer inListChunkSize)
+    {
+      this.inListChunkSize = Optional
+        .ofNullable(inListChunkSize)
+        .orElse(Integer.MAX_VALUE);
+      return self();
+    }
+
+    public B semiJoinRewrite(Boolean semiJoinRewrite)
+    {
+      this.semiJoinRewrite = Optional
+        .ofNullable(semiJoinRewrite)
+        .orElse(false);
+      return self();
+    }
+
+    public B projection(MqlProjection<?> projection)
+    {
+      this.projection = projection;
+      return self();
+    }
+
+    public B fetchPlan(MqlFetchPlan fetchPlan)
+    {
+      this.fetchPlan = fetchPlan;
+      return self();
+    }
+
+    public B idFirstPagination(Boolean idFirstPagination)
+    {
+      this.idFirstPagination = Optional
+        .ofNullable(idFirstPagination)
+        .orElse(false);
+      return self();
+    }
+
+    public B hasNextProbe(Boolean hasNextProbe)
+    {
+      this.hasNextProbe = Optional
+        .ofNullable(hasNextProbe)
+        .orElse(false);
+      return self();
+    }
+
+    public B countStrategy(MqlCountStrategy countStrategy)
+    {
+      this.countStrategy = Optional
+        .ofNullable(countStrategy)
+        .orElse(MqlCountStrategy.exact());
+      return self();
+    }
+
+    public B parallelThreshold(Integer parallelThreshold)
+    {
+      this.parallelThreshold = Optional
+        .ofNullable(parallelThreshold)
+        .orElse(MqlCollectionQuery.DEFAULT_PARALLEL_THRESHOLD);
+      return self();
+    }
+
+    public B predicateClassGeneration(Boolean predicateClassGeneration)
+    {
+      this.predicateClassGeneration = Optional
+        .ofNullable(predicateClassGeneration)
+        .orElse(false);
+      return self();
+    }
+
+    public B resultCache(MqlResultCache resultCache)
+    {
+      this.resultCache = resultCache;
+      return self();
+    }
+
     public abstract B self();
 
     public abstract C build();
@@ -133,12 +279,27 @@ class MqlQueryEmitterConfig<E>
     protected MqlQueryEmitterConfigBuilderImpl<E> $fillValuesFrom(final MqlQueryEmitterConfig<E> instance)
     {
       logger(instance.getLogger());
-      entityManager(instance.getEntityManager());
+      metamodel(instance.getMetamodel());
+      entityType(instance.getEntityType());
       entityAlias(instance.getEntityAlias());
       orderByTerms(instance.getOrderByTerms());
       limit(instance.getLimit());
       offset(instance.getOffset());
       typeConverter(instance.getTypeConverter());
+      keysetPagination(instance.isKeysetPagination());
+      keysetCursor(instance.getKeysetCursor());
+      countQueryEnabled(instance.isCountQueryEnabled());
+      inListPadding(instance.isInListPadding());
+      inListChunkSize(instance.getInListChunkSize());
+      semiJoinRewrite(instance.isSemiJoinRewrite());
+      projection(instance.getProjection());
+      fetchPlan(instance.getFetchPlan());
+      idFirstPagination(instance.isIdFirstPagination());
+      hasNextProbe(instance.isHasNextProbe());
+      countStrategy(instance.getCountStrategy());
+      parallelThreshold(instance.getParallelThreshold());
+      predicateClassGeneration(instance.isPredicateClassGeneration());
+      resultCache(instance.getResultCache());
       return this.self();
     }
   }
@@ -151,13 +312,55 @@ class MqlQueryEmitterConfig<E>
   protected MqlQueryEmitterConfig(MqlQueryEmitterConfigBuilder<E, ?, ?> b)
   {
     this.logger = AssertArg.isNotNull(b.logger, "logger");
-    this.entityManager = AssertArg.isNotNull(b.entityManager, "entityManager");
+    this.metamodel = AssertArg.isNotNull(b.metamodel, "metamodel");
     this.entityType = AssertArg.isNotNull(b.entityType, "entityType");
     this.entityAlias = AssertArg.isNotBlank(b.entityAlias, "entityAlias");
     this.orderByTerms = AssertArg.isNotNull(b.orderByTerms, "orderByTerms");
     this.limit = AssertArg.isNotNull(b.limit, "limit");
     this.offset = AssertArg.isNotNull(b.offset, "offset");
     this.typeConverter = AssertArg.isNotNull(b.typeConverter, "typeConverter");
+    this.keysetPagination = AssertArg.isNotNull(b.keysetPagination, "keysetPagination");
+    this.keysetCursor = b.keysetCursor;
+    this.countQueryEnabled = AssertArg.isNotNull(b.countQueryEnabled, "countQueryEnabled");
+    this.inListPadding = AssertArg.isNotNull(b.inListPadding, "inListPadding");
+    this.inListChunkSize = AssertArg.isNotNull(b.inListChunkSize, "inListChunkSize");
+    if(inListChunkSize < 1)
+    {
+      throw new IllegalArgumentException("inListChunkSize must be positive");
+    }
+    this.semiJoinRewrite = AssertArg.isNotNull(b.semiJoinRewrite, "semiJoinRewrite");
+    this.projection = b.projection;
+    if(null != projection && keysetPagination)
+    {
+      throw new IllegalArgumentException("Keyset pagination cannot be combined with a projection");
+    }
+    this.fetchPlan = b.fetchPlan;
+    if(null != fetchPlan && null != projection)
+    {
+      throw new IllegalArgumentException("A fetch plan cannot be combined with a projection");
+    }
+    this.idFirstPagination = AssertArg.isNotNull(b.idFirstPagination, "idFirstPagination");
+    if(idFirstPagination && null != projection)
+    {
+      throw new IllegalArgumentException("Id-first pagination cannot be combined with a projection");
+    }
+    this.hasNextProbe = AssertArg.isNotNull(b.hasNextProbe, "hasNextProbe");
+    if(hasNextProbe && countQueryEnabled)
+    {
+      throw new IllegalArgumentException("Has-next probing cannot be combined with the count query");
+    }
+    this.countStrategy = AssertArg.isNotNull(b.countStrategy, "countStrategy");
+    this.parallelThreshold = AssertArg.isNotNull(b.parallelThreshold, "parallelThreshold");
+    if(parallelThreshold < 1)
+    {
+      throw new IllegalArgumentException("parallelThreshold must be positive");
+    }
+    this.predicateClassGeneration = AssertArg.isNotNull(b.predicateClassGeneration, "predicateClassGeneration");
+    this.resultCache = b.resultCache;
+    if(null != resultCache && null != projection)
+    {
+      throw new IllegalArgumentException("A result cache cannot be combined with a projection");
+    }
   }
 
   public Logger getLogger()
@@ -165,9 +368,9 @@ class MqlQueryEmitterConfig<E>
     return logger;
   }
 
-  public EntityManager getEntityManager()
+  public Metamodel getMetamodel()
   {
-    return entityManager;
+    return metamodel;
   }
 
   public EntityType<? extends E> getEntityType()
@@ -200,6 +403,110 @@ class MqlQueryEmitterConfig<E>
     return typeConverter;
   }
 
+  public Boolean isKeysetPagination()
+  {
+    return keysetPagination;
+  }
+
+  /**
+   * @return The cursor to seek after, or {@code null} for the first page.
+   */
+  public MqlKeysetCursor getKeysetCursor()
+  {
+    return keysetCursor;
+  }
+
+  public Boolean isCountQueryEnabled()
+  {
+    return countQueryEnabled;
+  }
+
+  /**
+   * @return {@code true} if the values of a {@code $in} list are padded to a power of two by repeating the last value.
+   */
+  public Boolean isInListPadding()
+  {
+    return inListPadding;
+  }
+
+  /**
+   * @return The maximum number of values bound to a parameter of a {@code $in} list.
+   */
+  public Integer getInListChunkSize()
+  {
+    return inListChunkSize;
+  }
+
+  /**
+   * @return {@code true} if sub queries correlated by the id of their entity are emitted as joins instead of
+   *         {@code EXISTS}.
+   */
+  public Boolean isSemiJoinRewrite()
+  {
+    return semiJoinRewrite;
+  }
+
+  /**
+   * @return The attribute paths selected instead of the entity, or {@code null} to select the entity.
+   */
+  public MqlProjection<?> getProjection()
+  {
+    return projection;
+  }
+
+  /**
+   * @return The associations fetched with the entities, or {@code null} to fetch them as mapped.
+   */
+  public MqlFetchPlan getFetchPlan()
+  {
+    return fetchPlan;
+  }
+
+  /**
+   * @return {@code true} if a page is fetched by selecting the ids of the page first.
+   */
+  public Boolean isIdFirstPagination()
+  {
+    return idFirstPagination;
+  }
+
+  /**
+   * @return {@code true} if one row more than the limit is fetched to tell whether a next page exists.
+   */
+  public Boolean isHasNextProbe()
+  {
+    return hasNextProbe;
+  }
+
+  public MqlCountStrategy getCountStrategy()
+  {
+    return countStrategy;
+  }
+
+  /**
+   * @return The minimum size of a collection that {@link MqlCollectionQuery} filters by parallel streams.
+   */
+  public Integer getParallelThreshold()
+  {
+    return parallelThreshold;
+  }
+
+  /**
+   * @return {@code true} if in-memory predicates are compiled into generated classes where possible.
+   */
+  public Boolean isPredicateClassGeneration()
+  {
+    return predicateClassGeneration;
+  }
+
+  /**
+   * @return The cache of the ids of pages and the counts, or {@code null} if the results are not cached.
+   */
+  public MqlResultCache getResultCache()
+  {
+    return resultCache;
+  }
+
   public MqlQueryEmitterConfigBuilder<E, ?, ?> toBuilder()
   {
     final var b = new MqlQueryEmitterConfigBuilderImpl<E>();
@@ -209,7 +516,7 @@ class MqlQueryEmitterConfig<E>
 
   private final Logger logger;
 
-  private final EntityManager entityManager;
+  private final Metamodel metamodel;
 
   private final EntityType<? extends E> entityType;
 
@@ -222,4 +529,32 @@ class MqlQueryEmitterConfig<E>
   private final Integer offset;
 
   private final MqlTypeConverter typeConverter;
+
+  private final Boolean keysetPagination;
+
+  private final MqlKeysetCursor keysetCursor;
+
+  private final Boolean countQueryEnabled;
+
+  private final Boolean inListPadding;
+
+  private final Integer inListChunkSize;
+
+  private final Boolean semiJoinRewrite;
+
+  private final MqlProjection<?> projection;
+
+  private final MqlFetchPlan fetchPlan;
+
+  private final Boolean idFirstPagination;
+
+  private final Boolean hasNextProbe;
+
+  private final MqlCountStrategy countStrategy;
+
+  private final Integer parallelThreshold;
+
+  private final Boolean predicateClassGeneration;
+
+  private final MqlResultCache resultCache;
 }
@@ -0,0 +1,133 @@
+package kaphein.jpa.mql;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe cache of emitted queries keyed by the shape of MQL expressions.
+ * <p>
+ * Expressions that differ only in their literal values share a cache entry, so a cache hit skips the emission and
+ * only binds the new values. Least recently used entries are evicted first.
+ * <p>
+ * Entity types are resolved by their names, so a cache instance must not be shared between persistence units.
+ */
+public class MqlQueryPlanCache
+{
+  public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+  public MqlQueryPlanCache()
+  {
+    this(DEFAULT_MAXIMUM_SIZE);
+  }
+
+  public MqlQueryPlanCache(int maximumSize)
+  {
+    if(maximumSize < 1)
+    {
+      throw new IllegalArgumentException("maximumSize must be greater than 0");
+    }
+
+    this.maximumSize = maximumSize;
+    hitCount = new LongAdder();
+    missCount = new LongAdder();
+    evictionCount = new LongAdder();
+    entries = new LinkedHashMap<>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, MqlCompiledQuery<?>> eldest)
+      {
+        final var evicting = size() > MqlQueryPlanCache.this.maximumSize;
+        if(evicting)
+        {
+          evictionCount.increment();
+        }
+
+        return evicting;
+      }
+
+      private static final long serialVersionUID = 1L;
+    };
+  }
+
+  public int getMaximumSize()
+  {
+    return maximumSize;
+  }
+
+  public int size()
+  {
+    synchronized(entries)
+    {
+      return entries.size();
+    }
+  }
+
+  public long getHitCount()
+  {
+    return hitCount.sum();
+  }
+
+  public long getMissCount()
+  {
+    return missCount.sum();
+  }
+
+  public long getEvictionCount()
+  {
+    return evictionCount.sum();
+  }
+
+  /**
+   * Removes all entries. The counters are not reset.
+   */
+  public void clear()
+  {
+    synchronized(entries)
+    {
+      entries.clear();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  <E> MqlCompiledQuery<E> get(String key)
+  {
+    MqlCompiledQuery<?> compiledQuery = null;
+    synchronized(entries)
+    {
+      compiledQuery = entries.get(key);
+    }
+
+    if(null == compiledQuery)
+    {
+      missCount.increment();
+    }
+    else
+    {
+      hitCount.increment();
+    }
+
+    return (MqlCompiledQuery<E>)compiledQuery;
+  }
+
+  void put(
+    String key,
+    MqlCompiledQuery<?> compiledQuery
+  )
+  {
+    synchronized(entries)
+    {
+      entries.put(key, compiledQuery);
+    }
+  }
+
+  private final int maximumSize;
+
+  private final LongAdder hitCount;
+
+  private final LongAdder missCount;
+
+  private final LongAdder evictionCount;
+
+  private final LinkedHashMap<String, MqlCompiledQuery<?>> entries;
+}
@@ -0,0 +1,354 @@
+package kaphein.jpa.mql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import kaphein.jpa.core.AssertArg;
+import kaphein.jpa.core.Sort;
+
+/**
+ * A canonical fingerprint of a parsed MQL expression with its literals stripped.
+ * <p>
+ * Two expressions that have the same shape are emitted to the same JPQL text and the same parameter slots.
+ * The stripped literals are collected in the order that {@link MqlQueryEmitter} issues parameter names, so they can
+ * be bound directly into the slots of a {@link MqlCompiledQuery} emitted from any expression of the same shape.
+ * <p>
+ * The fingerprint must be taken before the emission because {@link MqlQueryEmitter} consumes the AST.
+ */
+class MqlQueryShape
+{
+  public static MqlQueryShape of(
+    MqlAstNode rootNode,
+    MqlQueryEmitterConfig<?> config
+  )
+  {
+    AssertArg.isNotNull(rootNode, "rootNode");
+    AssertArg.isNotNull(config, "config");
+
+    final var entityType = config.getEntityType();
+    final var orderByTerms = config.getOrderByTerms();
+
+    final var keyBuilder = new StringBuilder();
+    appendToken(keyBuilder, entityType.getJavaType().getName());
+    appendToken(keyBuilder, entityType.getName());
+    appendToken(keyBuilder, config.getEntityAlias());
+    keyBuilder.append(orderByTerms.size());
+    for(final var term : orderByTerms)
+    {
+      appendToken(keyBuilder, term.getPath().toString());
+      keyBuilder.append(term.isDescending() ? 'D' : 'A');
+      keyBuilder.append(Optional
+        .ofNullable(term.getNullOrder())
+        .orElse(Sort.NullOrder.DEFAULT)
+        .ordinal());
+    }
+    // The seek predicate depends on which cursor values are null.
+    final var keysetCursor = config.getKeysetCursor();
+    if(config.isKeysetPagination())
+    {
+      keyBuilder.append('K');
+      if(null != keysetCursor)
+      {
+        for(final var value : keysetCursor.getValues())
+        {
+          keyBuilder.append(null == value ? 'N' : '?');
+        }
+      }
+    }
+    // The slots of $in lists depend on the list strategy.
+    final var inListChunkSize = config.getInListChunkSize();
+    keyBuilder.append(config.isInListPadding() ? 'P' : 'U').append(inListChunkSize);
+    if(config.isSemiJoinRewrite())
+    {
+      keyBuilder.append('J');
+    }
+    if(null != config.getProjection())
+    {
+      keyBuilder.append(config.getProjection());
+    }
+    if(null != config.getFetchPlan())
+    {
+      keyBuilder.append(config.getFetchPlan());
+    }
+    if(config.isIdFirstPagination())
+    {
+      keyBuilder.append('I');
+    }
+    if(MqlCountStrategy.Mode.CAPPED.equals(config.getCountStrategy().getMode()))
+    {
+      keyBuilder.append('C');
+    }
+    keyBuilder.append('|');
+
+    // Parameters are issued per sub query in the post-order of sub query root nodes.
+    final var subQueryRootNodes = new ArrayList<MqlAstNode>();
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    final List<Object>[] valuesBySubQueryRootNodeId = new List[rootNode.getNodeRegistry().size()];
+
+    final var nodeIter = rootNode.postOrderIterator();
+    while(nodeIter.hasNext())
+    {
+      final var node = nodeIter.next();
+
+      switch(node.getKind())
+      {
+      case ROOT:
+        keyBuilder.append('R').append(node.getChildCount());
+        break;
+      case CLAUSE:
+        keyBuilder.append('C');
+        appendToken(keyBuilder, node.getLabel());
+        keyBuilder.append(node.getChildCount());
+        if(isSubQueryRootNode(node))
+        {
+          subQueryRootNodes.add(node);
+        }
+        break;
+      case TERM:
+        keyBuilder.append('T');
+        appendToken(keyBuilder, node.getLabel());
+        appendToken(keyBuilder, (null == node.getValue() ? null : node.getValue().toString()));
+        keyBuilder.append(node.getChildCount());
+        break;
+      case VALUE_OPERATOR:
+        keyBuilder.append('V');
+        appendToken(keyBuilder, node.getLabel());
+        appendValueOperands(
+          keyBuilder,
+          node,
+          findValues(valuesBySubQueryRootNodeId, node),
+          inListChunkSize);
+        break;
+      case ATTRIBUTE_PATH:
+        keyBuilder.append('P');
+        appendToken(keyBuilder, node.getValue().toString());
+        break;
+      case LITERAL:
+        // Literals are fingerprinted by their operators.
+        break;
+      default:
+        throw new MqlSyntaxException("");
+      }
+    }
+
+    final var parameterValues = new ArrayList<Object>();
+    for(final var subQueryRootNode : subQueryRootNodes)
+    {
+      Optional
+        .ofNullable(valuesBySubQueryRootNodeId[subQueryRootNode.getId()])
+        .ifPresent(parameterValues::addAll);
+    }
+
+    // The seek predicate is emitted after the where clause of the root query.
+    if(config.isKeysetPagination() && null != keysetCursor)
+    {
+      keysetCursor
+        .getValues()
+        .stream()
+        .filter(Objects::nonNull)
+        .forEach(parameterValues::add);
+    }
+
+    return new MqlQueryShape(
+      keyBuilder.toString(),
+      parameterValues);
+  }
+
+  private MqlQueryShape(
+    String key,
+    List<Object> parameterValues
+  )
+  {
+    this.key = key;
+    this.parameterValues = Collections.unmodifiableList(parameterValues);
+  }
+
+  public String getKey()
+  {
+    return key;
+  }
+
+  /**
+   * @return The stripped literals in the order of parameter slots.
+   */
+  public List<Object> getParameterValues()
+  {
+    return parameterValues;
+  }
+
+  private static boolean isSubQueryRootNode(MqlAstNode node)
+  {
+    return MqlAstNode.Kind.CLAUSE.equals(node.getKind())
+      && ("jpqlExists".equals(node.getLabel())
+        || "nJpqlExists".equals(node.getLabel()));
+  }
+
+  private static List<Object> findValues(
+    List<Object>[] valuesBySubQueryRootNodeId,
+    MqlAstNode node
+  )
+  {
+    var subQueryRootNode = node.getParent();
+    while(null != subQueryRootNode && !isSubQueryRootNode(subQueryRootNode))
+    {
+      subQueryRootNode = subQueryRootNode.getParent();
+    }
+    if(null == subQueryRootNode)
+    {
+      throw new MqlSyntaxException("A value operator must be placed in a query");
+    }
+
+    final var id = subQueryRootNode.getId();
+    if(null == valuesBySubQueryRootNodeId[id])
+    {
+      valuesBySubQueryRootNodeId[id] = new ArrayList<>();
+    }
+
+    return valuesBySubQueryRootNodeId[id];
+  }
+
+  private static void appendValueOperands(
+    StringBuilder keyBuilder,
+    MqlAstNode opNode,
+    List<Object> values,
+    int inListChunkSize
+  )
+  {
+    final var opName = opNode.getLabel();
+    final var n = opNode.getChildCount();
+
+    keyBuilder.append('(');
+    switch(opName)
+    {
+    case "nin":
+    case "in":
+    {
+      // The cardinality of the list does not change the emitted query up to the chunk size.
+      appendOperandKind(keyBuilder, opNode.getChildNodeAt(0));
+      if(2 == n && opNode.getChildNodeAt(1).getValue() instanceof MqlParameterReference)
+      {
+        appendPlaceholder(keyBuilder, opNode.getChildNodeAt(1), values);
+      }
+      else
+      {
+        // Only the number of chunks changes the emitted query.
+        final var listSize = n - 1;
+        var chunkStart = 0;
+        do
+        {
+          final var chunkEnd = (int)Math.min((long)chunkStart + inListChunkSize, listSize);
+          final var listValues = new ArrayList<Object>(chunkEnd - chunkStart);
+          for(var i = chunkStart; i < chunkEnd; ++i)
+          {
+            listValues.add(opNode.getChildNodeAt(1 + i).getValue());
+          }
+          values.add(listValues);
+          chunkStart = chunkEnd;
+        }
+        while(chunkStart < listSize);
+        keyBuilder.append("?*");
+        if(listSize > inListChunkSize)
+        {
+          keyBuilder.append((listSize + inListChunkSize - 1) / inListChunkSize);
+        }
+      }
+    }
+      break;
+    default:
+      for(var i = 0; i < n; ++i)
+      {
+        final var operandNode = opNode.getChildNodeAt(i);
+        if(!MqlAstNode.Kind.LITERAL.equals(operandNode.getKind()))
+        {
+          appendOperandKind(keyBuilder, operandNode);
+        }
+        else if(isShapeLiteral(opName, i))
+        {
+          keyBuilder.append('L');
+          appendToken(keyBuilder, (null == operandNode.getValue() ? null : operandNode.getValue().toString()));
+        }
+        else if(null == operandNode.getValue())
+        {
+          keyBuilder.append('N');
+        }
+        else if(operandNode.getValue() instanceof MqlParameterReference)
+        {
+          appendPlaceholder(keyBuilder, operandNode, values);
+        }
+        else
+        {
+          keyBuilder.append('?');
+          values.add(operandNode.getValue());
+        }
+      }
+    }
+    keyBuilder.append(')');
+  }
+
+  /**
+   * Determines whether a literal operand changes the emitted query text rather than being bound as a parameter.
+   */
+  private static boolean isShapeLiteral(
+    String opName,
+    int operandIndex
+  )
+  {
+    switch(opName)
+    {
+    case "attrPath":
+      return 0 == operandIndex;
+    case "isNull":
+      return 1 == operandIndex;
+    case "nlike":
+    case "like":
+      return 2 == operandIndex;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Placeholder names are part of the key because parameter slots refer to them.
+   */
+  private static void appendPlaceholder(
+    StringBuilder keyBuilder,
+    MqlAstNode operandNode,
+    List<Object> values
+  )
+  {
+    final var paramRef = (MqlParameterReference)operandNode.getValue();
+    keyBuilder.append('$');
+    appendToken(keyBuilder, paramRef.getName());
+    values.add(paramRef);
+  }
+
+  private static void appendOperandKind(
+    StringBuilder keyBuilder,
+    MqlAstNode operandNode
+  )
+  {
+    keyBuilder.append('@').append(operandNode.getKind().ordinal());
+  }
+
+  private static void appendToken(
+    StringBuilder keyBuilder,
+    String token
+  )
+  {
+    if(null == token)
+    {
+      keyBuilder.append('~');
+    }
+    else
+    {
+      keyBuilder.append(token.length()).append(':').append(token);
+    }
+  }
+
+  private final String key;
+
+  private final List<Object> parameterValues;
+}
@@ -0,0 +1,318 @@
+package kaphein.jpa.mql;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import kaphein.jpa.core.AssertArg;
+
+/**
+ * A bounded, thread-safe cache of the ids of pages and the counts of compiled queries, keyed by the query text, the
+ * bound parameter values, limit and offset.
+ * <p>
+ * An entry expires after the time to live, and is invalidated by {@link #invalidate(Class)} with any entity type that
+ * the filter, its sub queries or the order by terms refer to. Register the cache to {@link MqlResultCacheListener} to
+ * invalidate the entries on the changes made through JPA. With Hibernate, {@link MqlResultCacheIntegrator} also
+ * invalidates them after the transaction completes, and values loaded while a transaction that changed an entity type
+ * is in progress are not cached. Changes made by bulk or native queries must be invalidated explicitly. Least recently
+ * used entries are evicted first.
+ * <p>
+ * A cache instance must not be shared between persistence units.
+ */
+public class MqlResultCache
+{
+  public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+  public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(1);
+
+  public MqlResultCache()
+  {
+    this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE);
+  }
+
+  public MqlResultCache(
+    int maximumSize,
+    Duration timeToLive
+  )
+  {
+    if(maximumSize < 1)
+    {
+      throw new IllegalArgumentException("maximumSize must be greater than 0");
+    }
+    AssertArg.isNotNull(timeToLive, "timeToLive");
+    if(timeToLive.isNegative() || timeToLive.isZero())
+    {
+      throw new IllegalArgumentException("timeToLive must be positive");
+    }
+
+    this.maximumSize = maximumSize;
+    this.timeToLive = timeToLive;
+    timeToLiveNanos = toNanos(timeToLive);
+    hitCount = new LongAdder();
+    missCount = new LongAdder();
+    evictionCount = new LongAdder();
+    generations = new ConcurrentHashMap<>();
+    pendingWriteCounts = new ConcurrentHashMap<>();
+    entries = new LinkedHashMap<>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<List<?>, Entry> eldest)
+      {
+        final var evicting = size() > MqlResultCache.this.maximumSize;
+        if(evicting)
+        {
+          evictionCount.increment();
+        }
+
+        return evicting;
+      }
+
+      private static final long serialVersionUID = 1L;
+    };
+  }
+
+  public int getMaximumSize()
+  {
+    return maximumSize;
+  }
+
+  public Duration getTimeToLive()
+  {
+    return timeToLive;
+  }
+
+  public int size()
+  {
+    synchronized(entries)
+    {
+      return entries.size();
+    }
+  }
+
+  public long getHitCount()
+  {
+    return hitCount.sum();
+  }
+
+  public long getMissCount()
+  {
+    return missCount.sum();
+  }
+
+  public long getEvictionCount()
+  {
+    return evictionCount.sum();
+  }
+
+  /**
+   * Invalidates the entries of the queries that refer to the entity type or any of its super types.
+   * <p>
+   * The entries are dropped lazily on their next lookup or by eviction.
+   *
+   * @param entityJavaType
+   *          The java type of a changed entity.
+   */
+  public void invalidate(Class<?> entityJavaType)
+  {
+    AssertArg.isNotNull(entityJavaType, "entityJavaType");
+
+    Class<?> javaType = entityJavaType;
+    while(null != javaType && Object.class != javaType)
+    {
+      getGeneration(javaType).incrementAndGet();
+      javaType = javaType.getSuperclass();
+    }
+  }
+
+  /**
+   * Invalidates the entries of the entity type as {@link #invalidate(Class)}, and keeps values that refer to it from
+   * being cached until {@link #endWrite(Class)} is called with the same type.
+   */
+  void beginWrite(Class<?> entityJavaType)
+  {
+    Class<?> javaType = entityJavaType;
+    while(null != javaType && Object.class != javaType)
+    {
+      getPendingWriteCount(javaType).incrementAndGet();
+      getGeneration(javaType).incrementAndGet();
+      javaType = javaType.getSuperclass();
+    }
+  }
+
+  /**
+   * Invalidates the entries of the entity type again when the transaction of {@link #beginWrite(Class)} has completed,
+   * as values loaded since then may be from before its commit or from its rolled back changes.
+   */
+  void endWrite(Class<?> entityJavaType)
+  {
+    Class<?> javaType = entityJavaType;
+    while(null != javaType && Object.class != javaType)
+    {
+      getGeneration(javaType).incrementAndGet();
+      getPendingWriteCount(javaType).decrementAndGet();
+      javaType = javaType.getSuperclass();
+    }
+  }
+
+  /**
+   * Removes all entries. The counters are not reset.
+   */
+  public void clear()
+  {
+    synchronized(entries)
+    {
+      entries.clear();
+    }
+  }
+
+  /**
+   * Returns the cached value of the key, or loads and caches it if the entry is missing, expired or invalidated.
+   *
+   * @param entityJavaTypes
+   *          The java types of the entities that the value is computed from.
+   */
+  @SuppressWarnings("unchecked")
+  <T> T get(
+    List<?> key,
+    Collection<Class<?>> entityJavaTypes,
+    Supplier<T> loader
+  )
+  {
+    final var now = System.nanoTime();
+
+    Entry entry = null;
+    synchronized(entries)
+    {
+      entry = entries.get(key);
+      if(null != entry && !isValid(entry, now))
+      {
+        entries.remove(key);
+        entry = null;
+      }
+    }
+
+    if(null != entry)
+    {
+      hitCount.increment();
+
+      return (T)entry.value;
+    }
+    missCount.increment();
+
+    // Taken before loading, so a change made while loading invalidates the new entry.
+    final var javaTypes = entityJavaTypes.toArray(new Class<?>[0]);
+    final var loadedGenerations = new long[javaTypes.length];
+    for(var i = 0; i < javaTypes.length; ++i)
+    {
+      loadedGenerations[i] = getGeneration(javaTypes[i]).get();
+    }
+
+    final var value = loader.get();
+    for(final var javaType : javaTypes)
+    {
+      if(getPendingWriteCount(javaType).get() > 0)
+      {
+        return value;
+      }
+    }
+
+    synchronized(entries)
+    {
+      entries.put(key, new Entry(value, javaTypes, loadedGenerations, now + timeToLiveNanos));
+    }
+
+    return value;
+  }
+
+  private boolean isValid(
+    Entry entry,
+    long now
+  )
+  {
+    if(now - entry.expirationTime >= 0)
+    {
+      return false;
+    }
+
+    for(var i = 0; i < entry.javaTypes.length; ++i)
+    {
+      if(getGeneration(entry.javaTypes[i]).get() != entry.generations[i])
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private AtomicLong getGeneration(Class<?> javaType)
+  {
+    return generations.computeIfAbsent(javaType, (key) -> new AtomicLong());
+  }
+
+  private AtomicInteger getPendingWriteCount(Class<?> javaType)
+  {
+    return pendingWriteCounts.computeIfAbsent(javaType, (key) -> new AtomicInteger());
+  }
+
+  private static long toNanos(Duration duration)
+  {
+    try
+    {
+      return duration.toNanos();
+    }
+    catch(final ArithmeticException ae)
+    {
+      return Long.MAX_VALUE / 2;
+    }
+  }
+
+  private static final class Entry
+  {
+    Entry(
+      Object value,
+      Class<?>[] javaTypes,
+      long[] generations,
+      long expirationTime
+    )
+    {
+      this.value = value;
+      this.javaTypes = javaTypes;
+      this.generations = generations;
+      this.expirationTime = expirationTime;
+    }
+
+    private final Object value;
+
+    private final Class<?>[] javaTypes;
+
+    private final long[] generations;
+
+    private final long expirationTime;
+  }
+
+  private final int maximumSize;
+
+  private final Duration timeToLive;
+
+  private final long timeToLiveNanos;
+
+  private final LongAdder hitCount;
+
+  private final LongAdder missCount;
+
+  private final LongAdder evictionCount;
+
+  private final ConcurrentHashMap<Class<?>, AtomicLong> generations;
+
+  private final ConcurrentHashMap<Class<?>, AtomicInteger> pendingWriteCounts;
+
+  private final LinkedHashMap<List<?>, Entry> entries;
+}
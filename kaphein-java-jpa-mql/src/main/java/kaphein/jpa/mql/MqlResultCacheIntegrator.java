@@ -0,0 +1,112 @@
+package kaphein.jpa.mql;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * A Hibernate integrator that invalidates the entries of the {@link MqlResultCache}s registered to
+ * {@link MqlResultCacheListener} when the changes of entities are flushed, and again after the transaction commits or
+ * rolls back.
+ * <p>
+ * Until the transaction completes, values that refer to the changed entity types are loaded but not cached, so neither
+ * the rows before the commit nor the uncommitted rows are served from the caches. It is registered by the service
+ * loader of Hibernate and applies to all entity types.
+ */
+public class MqlResultCacheIntegrator implements Integrator
+{
+  @Override
+  public void integrate(
+    Metadata metadata,
+    BootstrapContext bootstrapContext,
+    SessionFactoryImplementor sessionFactory
+  )
+  {
+    final var listener = new Listener();
+    final var eventListenerRegistry = sessionFactory
+      .getServiceRegistry()
+      .getService(EventListenerRegistry.class);
+    eventListenerRegistry.appendListeners(EventType.POST_INSERT, listener);
+    eventListenerRegistry.appendListeners(EventType.POST_UPDATE, listener);
+    eventListenerRegistry.appendListeners(EventType.POST_DELETE, listener);
+  }
+
+  @Override
+  public void disintegrate(
+    SessionFactoryImplementor sessionFactory,
+    SessionFactoryServiceRegistry serviceRegistry
+  )
+  {
+    // Does nothing.
+  }
+
+  private static final class Listener
+    implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener
+  {
+    @Override
+    public void onPostInsert(PostInsertEvent event)
+    {
+      onChanged(event, event.getEntity());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event)
+    {
+      onChanged(event, event.getEntity());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event)
+    {
+      onChanged(event, event.getEntity());
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister)
+    {
+      return false;
+    }
+
+    private void onChanged(
+      AbstractEvent event,
+      Object entity
+    )
+    {
+      final var resultCaches = MqlResultCacheListener.getResultCaches();
+      if(resultCaches.isEmpty())
+      {
+        return;
+      }
+
+      final var entityJavaType = entity.getClass();
+      for(final var resultCache : resultCaches)
+      {
+        resultCache.beginWrite(entityJavaType);
+      }
+
+      // Runs after a commit and a rollback alike.
+      event
+        .getSession()
+        .getActionQueue()
+        .registerProcess((success, session) ->
+        {
+          for(final var resultCache : resultCaches)
+          {
+            resultCache.endWrite(entityJavaType);
+          }
+        });
+    }
+  }
+}
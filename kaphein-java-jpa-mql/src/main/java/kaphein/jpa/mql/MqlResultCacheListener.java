@@ -0,0 +1,53 @@
+package kaphein.jpa.mql;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import kaphein.jpa.core.AssertArg;
+
+/**
+ * An entity listener that invalidates the entries of the registered {@link MqlResultCache}s that refer to the entity
+ * types of persisted, updated and removed entities.
+ * <p>
+ * Declare it by {@code @EntityListeners(MqlResultCacheListener.class)} on the entity classes that filters refer to,
+ * or as a default entity listener in {@code orm.xml}. The callbacks are invoked when the changes are flushed, before
+ * the transaction commits, so a query in between may cache the previous results or the uncommitted ones until they
+ * expire. With Hibernate, {@link MqlResultCacheIntegrator} closes the gap without this listener.
+ */
+public class MqlResultCacheListener
+{
+  public static void register(MqlResultCache resultCache)
+  {
+    RESULT_CACHES.addIfAbsent(AssertArg.isNotNull(resultCache, "resultCache"));
+  }
+
+  public static void unregister(MqlResultCache resultCache)
+  {
+    RESULT_CACHES.remove(resultCache);
+  }
+
+  @PostPersist
+  @PostUpdate
+  @PostRemove
+  public void onChanged(Object entity)
+  {
+    for(final var resultCache : RESULT_CACHES)
+    {
+      resultCache.invalidate(entity.getClass());
+    }
+  }
+
+  /**
+   * @return The caches registered at the moment, to which {@link MqlResultCache#endWrite(Class)} is called after
+   *         {@link MqlResultCache#beginWrite(Class)}.
+   */
+  static List<MqlResultCache> getResultCaches()
+  {
+    return List.copyOf(RESULT_CACHES);
+  }
+
+  private static final CopyOnWriteArrayList<MqlResultCache> RESULT_CACHES = new CopyOnWriteArrayList<>();
+}
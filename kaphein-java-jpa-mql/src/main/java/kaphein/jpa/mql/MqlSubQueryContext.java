@@ -8,6 +8,7 @@ import java.util.Optional;
 
 import jakarta.persistence.metamodel.Attribute;
 import jakarta.persistence.metamodel.EntityType;
+import kaphein.jpa.core.InvalidAttributePathException;
 import kaphein.jpa.core.JpaEntityAttributePath;
 import kaphein.jpa.core.MetamodelUtils;
 
@@ -24,9 +25,9 @@ class MqlSubQueryContext
 
     this.subQueryRootNode = subQueryRootNode;
     entityTypeByAliasMap = new HashMap<>();
+    joinClauses = new ArrayList<>();
 
     final var metamodel = queryBuilderContext.getMetamodel();
-    final var entityTypeByEntityName = queryBuilderContext.getEntityTypeByEntityNameMap();
 
     final var entityNameNode = subQueryRootNode.getChildNodeAt(0);
     if(!"entityName".equals(entityNameNode.getLabel()))
@@ -34,9 +35,7 @@ class MqlSubQueryContext
       throw new MqlSyntaxException("entityName must be specified");
     }
     final var entityName = (String)entityNameNode.getValue();
-    final var entityType = (entityTypeByEntityName.containsKey(entityName)
-      ? entityTypeByEntityName.get(entityName)
-      : MetamodelUtils.findEntityTypeByEntityNameOrThrow(metamodel, entityName));
+    final var entityType = MetamodelUtils.findEntityTypeByEntityNameOrThrow(metamodel, entityName);
     this.entityNameNode = entityNameNode;
     this.entityType = entityType;
 
@@ -61,8 +60,6 @@ class MqlSubQueryContext
     this.queryNode = queryNode;
 
     putEntityTypeByAlias(alias, entityType);
-
-    entityTypeByEntityName.putIfAbsent(entityName, entityType);
   }
 
   public MqlQueryBuilderContext getQueryBuilderContext()
@@ -202,6 +199,12 @@ class MqlSubQueryContext
     {
       entityType = subQueryContext.entityTypeByAliasMap.get(alias);
     }
+    if(null == entityType)
+    {
+      entityType = queryBuilderContext
+        .getJoinedEntityTypeByAlias()
+        .get(alias);
+    }
 
     return Optional.ofNullable(entityType);
   }
@@ -216,59 +219,55 @@ class MqlSubQueryContext
     entityTypeByAliasMap.put(alias, entityType);
   }
 
+  /**
+   * @return The join clauses of the sub queries rewritten into joins, emitted after the alias of this query.
+   */
+  List<String> getJoinClauses()
+  {
+    return joinClauses;
+  }
+
+  void addJoinClause(String joinClause)
+  {
+    joinClauses.add(joinClause);
+  }
+
   public Class<?> findJavaTypeOf(JpaEntityAttributePath path)
   {
-    final var metamodel = queryBuilderContext.getMetamodel();
+    final var attrs = findAttributesOf(path);
 
-    Class<?> javaType = Object.class;
-    EntityType<?> entityType = null;
-    Attribute<?, ?> attr = null;
-    var tokenIndex = 0;
-    do
-    {
-      final var token = path.get(tokenIndex);
-
-      if(0 == tokenIndex)
-      {
-        entityType = getEntityTypeByAlias(token)
-          .orElseThrow(() -> new MqlSyntaxException(String.format(
-            "Cannot determine the entity type of alias %s",
-            token)));
-      }
-      else
-      {
-        try
-        {
-          if(1 == tokenIndex)
-          {
-            attr = entityType.getAttribute(token);
-          }
-          else
-          {
-            final var attrJavaType = attr.getJavaType();
-            final var managedType = metamodel.managedType(attrJavaType);
-            attr = managedType.getAttribute(token);
-          }
-        }
-        catch(final IllegalArgumentException iae)
-        {
-          throw new MqlSyntaxException(iae.getMessage());
-        }
-      }
-
-      ++tokenIndex;
-    }
-    while(tokenIndex < path.size());
+    return attrs
+      .get(attrs.size() - 1)
+      .getJavaType();
+  }
 
-    if(null == attr)
+  /**
+   * @return The attributes on the path from the entity type of the alias, in order.
+   */
+  public List<Attribute<?, ?>> findAttributesOf(JpaEntityAttributePath path)
+  {
+    final var alias = path.get(0);
+    final var entityType = getEntityTypeByAlias(alias)
+      .orElseThrow(() -> new MqlSyntaxException(String.format(
+        "Cannot determine the entity type of alias %s",
+        alias)));
+    if(path.size() < 2)
     {
       throw new MqlSyntaxException(String.format(
         "Cannot determine the java type of attribute path %s",
         path.toString()));
     }
-    javaType = attr.getJavaType();
 
-    return javaType;
+    try
+    {
+      return queryBuilderContext
+        .getMetamodelIndex()
+        .findAttributesOrThrow(entityType, String.join(".", path.subList(1, path.size())));
+    }
+    catch(final InvalidAttributePathException iape)
+    {
+      throw new MqlSyntaxException(iape.getMessage());
+    }
   }
 
   private final MqlQueryBuilderContext queryBuilderContext;
@@ -290,4 +289,6 @@ class MqlSubQueryContext
   private final MqlAstNode queryNode;
 
   private final Map<String, EntityType<?>> entityTypeByAliasMap;
+
+  private final List<String> joinClauses;
 }
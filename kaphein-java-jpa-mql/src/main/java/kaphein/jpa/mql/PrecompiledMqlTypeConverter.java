@@ -0,0 +1,493 @@
+package kaphein.jpa.mql;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import kaphein.jpa.core.AssertArg;
+
+/**
+ * Converts literals with a converter that is resolved once per target type.
+ * <p>
+ * Common scalar types are converted directly. Values that the direct converters do not handle and the other types are
+ * converted by the {@link ObjectMapper} with a {@link com.fasterxml.jackson.databind.JavaType} that is also resolved
+ * once, so the results are the same as {@link Jackson2ObjectMapperMqlTypeConverter}, except that offset date times are
+ * adjusted to the offset of the context time zone at their instant rather than at their local date time, which differs
+ * around daylight saving time transitions.
+ */
+class PrecompiledMqlTypeConverter implements MqlTypeConverter
+{
+  public static PrecompiledMqlTypeConverter getDefault()
+  {
+    return DEFAULT;
+  }
+
+  public PrecompiledMqlTypeConverter(ObjectMapper objectMapper)
+  {
+    this.objectMapper = AssertArg.isNotNull(objectMapper, "objectMapper");
+    converters = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T convertType(
+    Object src,
+    Type type
+  )
+  {
+    AssertArg.isNotNull(type, "type");
+
+    return (T)findConverter(type).apply(src);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <E> List<E> convertElementType(
+    List<?> list,
+    Type elementType
+  )
+  {
+    AssertArg.isNotNull(list, "list");
+    AssertArg.isNotNull(elementType, "elementType");
+
+    final var converter = findConverter(elementType);
+    final var converted = new ArrayList<E>(list.size());
+    for(final var element : list)
+    {
+      converted.add((E)converter.apply(element));
+    }
+
+    return converted;
+  }
+
+  private Function<Object, Object> findConverter(Type type)
+  {
+    var converter = converters.get(type);
+    if(null == converter)
+    {
+      converter = createConverter(type);
+      converters.putIfAbsent(type, converter);
+    }
+
+    return converter;
+  }
+
+  private Function<Object, Object> createConverter(Type type)
+  {
+    final var fallback = createJacksonConverter(type);
+    if(!(type instanceof Class<?>))
+    {
+      return fallback;
+    }
+
+    final var javaType = BOXED_TYPES.getOrDefault(type, (Class<?>)type);
+
+    Function<Object, Object> converter = null;
+    if(Object.class == javaType)
+    {
+      converter = (v) -> ((v instanceof String || v instanceof Number || v instanceof Boolean)
+        ? v
+        : fallback.apply(v));
+    }
+    else if(String.class == javaType)
+    {
+      converter = (v) -> ((v instanceof String || v instanceof Number || v instanceof Boolean)
+        ? v.toString()
+        : fallback.apply(v));
+    }
+    else if(Boolean.class == javaType)
+    {
+      converter = (v) -> (v instanceof Boolean ? v : fallback.apply(v));
+    }
+    else if(Number.class.isAssignableFrom(javaType))
+    {
+      converter = createNumberConverter(javaType, fallback);
+    }
+    else if(Instant.class == javaType)
+    {
+      converter = createParsingConverter(
+        Instant.class,
+        (s) ->
+        {
+          final var instant = parseCanonicalInstant(s);
+
+          return (null == instant ? Instant.parse(s) : instant);
+        },
+        fallback);
+    }
+    else if(LocalDate.class == javaType)
+    {
+      converter = createParsingConverter(
+        LocalDate.class,
+        (s) ->
+        {
+          final var date = (10 == s.length() ? parseCanonicalLocalDate(s) : null);
+
+          return (null == date ? LocalDate.parse(s) : date);
+        },
+        fallback);
+    }
+    else if(LocalDateTime.class == javaType)
+    {
+      converter = createParsingConverter(
+        LocalDateTime.class,
+        (s) ->
+        {
+          final var dateTime = parseCanonicalLocalDateTime(s, s.length());
+
+          return (null == dateTime ? LocalDateTime.parse(s) : dateTime);
+        },
+        fallback);
+    }
+    else if(OffsetDateTime.class == javaType)
+    {
+      converter = createParsingConverter(OffsetDateTime.class, createOffsetDateTimeParser(), fallback);
+    }
+    else if(UUID.class == javaType)
+    {
+      // UUID.fromString accepts shortened forms that Jackson rejects.
+      converter = createParsingConverter(
+        UUID.class,
+        (s) -> (36 == s.length() ? UUID.fromString(s) : null),
+        fallback);
+    }
+    else if(
+      javaType.isEnum()
+        && !objectMapper.isEnabled(DeserializationFeature.READ_ENUMS_USING_TO_STRING)
+    )
+    {
+      converter = createEnumConverter(javaType, fallback);
+    }
+
+    if(null == converter)
+    {
+      return fallback;
+    }
+
+    final var directConverter = converter;
+    // Jackson converts null to the default value of a primitive type.
+    final var primitive = ((Class<?>)type).isPrimitive();
+
+    return (v) -> (null == v ? (primitive ? fallback.apply(null) : null) : directConverter.apply(v));
+  }
+
+  private Function<Object, Object> createJacksonConverter(Type type)
+  {
+    final var jacksonJavaType = objectMapper
+      .getTypeFactory()
+      .constructType(type);
+
+    return (v) -> objectMapper.convertValue(v, jacksonJavaType);
+  }
+
+  private static Function<Object, Object> createNumberConverter(
+    Class<?> javaType,
+    Function<Object, Object> fallback
+  )
+  {
+    Function<Number, Object> numberConverter = null;
+    if(Integer.class == javaType)
+    {
+      numberConverter = (n) -> (isIntegral(n) && n.longValue() == n.intValue() ? (Object)n.intValue() : null);
+    }
+    else if(Long.class == javaType)
+    {
+      numberConverter = (n) -> (isIntegral(n) ? (Object)n.longValue() : null);
+    }
+    else if(Short.class == javaType)
+    {
+      numberConverter = (n) -> (isIntegral(n) && n.longValue() == n.shortValue() ? (Object)n.shortValue() : null);
+    }
+    else if(Byte.class == javaType)
+    {
+      numberConverter = (n) -> (isIntegral(n) && n.longValue() == n.byteValue() ? (Object)n.byteValue() : null);
+    }
+    else if(Double.class == javaType)
+    {
+      numberConverter = (n) -> (n instanceof Double || isIntegral(n) ? (Object)n.doubleValue() : null);
+    }
+    else if(Float.class == javaType)
+    {
+      numberConverter = (n) -> (n instanceof Float ? n : null);
+    }
+    else if(BigDecimal.class == javaType)
+    {
+      numberConverter = (n) -> (isIntegral(n) ? BigDecimal.valueOf(n.longValue()) : null);
+    }
+    else if(BigInteger.class == javaType)
+    {
+      numberConverter = (n) -> (isIntegral(n) ? BigInteger.valueOf(n.longValue()) : null);
+    }
+    else
+    {
+      return fallback;
+    }
+
+    final var directNumberConverter = numberConverter;
+
+    return (v) ->
+    {
+      if(javaType.isInstance(v))
+      {
+        return v;
+      }
+
+      // Out of range, fractional and textual values are left to Jackson for the same coercion rules.
+      final var converted = (v instanceof Number ? directNumberConverter.apply((Number)v) : null);
+
+      return (null == converted ? fallback.apply(v) : converted);
+    };
+  }
+
+  private static boolean isIntegral(Number n)
+  {
+    return n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte;
+  }
+
+  private static Function<Object, Object> createParsingConverter(
+    Class<?> javaType,
+    Function<String, Object> parser,
+    Function<Object, Object> fallback
+  )
+  {
+    return (v) ->
+    {
+      if(javaType.isInstance(v))
+      {
+        return v;
+      }
+
+      Object converted = null;
+      if(v instanceof String)
+      {
+        try
+        {
+          converted = parser.apply((String)v);
+        }
+        catch(final DateTimeException | IllegalArgumentException e)
+        {
+          // Leaves lenient formats to Jackson.
+        }
+      }
+
+      return (null == converted ? fallback.apply(v) : converted);
+    };
+  }
+
+  private Function<String, Object> createOffsetDateTimeParser()
+  {
+    final Function<String, OffsetDateTime> parser = (s) ->
+    {
+      final var instant = parseCanonicalInstant(s);
+
+      return (null == instant ? OffsetDateTime.parse(s) : OffsetDateTime.ofInstant(instant, ZoneOffset.UTC));
+    };
+
+    final var deserConfig = objectMapper.getDeserializationConfig();
+    if(!deserConfig.isEnabled(DeserializationFeature.ADJUST_DATES_TO_CONTEXT_TIME_ZONE))
+    {
+      return parser::apply;
+    }
+
+    // Jackson adjusts offset date times to the time zone of the context. The offset is looked up by the instant, as a
+    // local date time is ambiguous in an overlap.
+    final var zoneRules = deserConfig
+      .getTimeZone()
+      .toZoneId()
+      .getRules();
+
+    return (s) ->
+    {
+      final var dateTime = parser.apply(s);
+
+      return dateTime.withOffsetSameInstant(zoneRules.getOffset(dateTime.toInstant()));
+    };
+  }
+
+  /**
+   * Parses {@code yyyy-MM-ddTHH:mm:ss[.S]Z} without a {@link java.time.format.DateTimeFormatter}.
+   *
+   * @return {@code null} if the text is in another format.
+   */
+  private static Instant parseCanonicalInstant(String s)
+  {
+    final var n = s.length();
+    if(n < 20 || 'Z' != s.charAt(n - 1))
+    {
+      return null;
+    }
+
+    final var dateTime = parseCanonicalLocalDateTime(s, n - 1);
+    if(null == dateTime)
+    {
+      return null;
+    }
+
+    return dateTime
+      .atOffset(ZoneOffset.UTC)
+      .toInstant();
+  }
+
+  /**
+   * Parses {@code yyyy-MM-ddTHH:mm:ss[.S]} in {@code [0, end)} without a {@link java.time.format.DateTimeFormatter}.
+   *
+   * @return {@code null} if the text is in another format.
+   */
+  private static LocalDateTime parseCanonicalLocalDateTime(
+    String s,
+    int end
+  )
+  {
+    if(
+      end < 19
+        || 'T' != s.charAt(10)
+        || ':' != s.charAt(13)
+        || ':' != s.charAt(16)
+    )
+    {
+      return null;
+    }
+
+    final var date = parseCanonicalLocalDate(s);
+    final var hour = parseDigits(s, 11, 13);
+    final var minute = parseDigits(s, 14, 16);
+    final var second = parseDigits(s, 17, 19);
+    if(null == date || hour < 0 || minute < 0 || second < 0)
+    {
+      return null;
+    }
+
+    var nanos = 0;
+    if(end > 19)
+    {
+      final var fractionDigitCount = end - 20;
+      if('.' != s.charAt(19) || fractionDigitCount < 1 || fractionDigitCount > 9)
+      {
+        return null;
+      }
+
+      nanos = parseDigits(s, 20, end);
+      if(nanos < 0)
+      {
+        return null;
+      }
+      for(var i = fractionDigitCount; i < 9; ++i)
+      {
+        nanos *= 10;
+      }
+    }
+
+    return date.atTime(hour, minute, second, nanos);
+  }
+
+  /**
+   * Parses {@code yyyy-MM-dd} at the beginning of the text without a {@link java.time.format.DateTimeFormatter}.
+   *
+   * @return {@code null} if the text is in another format.
+   */
+  private static LocalDate parseCanonicalLocalDate(String s)
+  {
+    if(s.length() < 10 || '-' != s.charAt(4) || '-' != s.charAt(7))
+    {
+      return null;
+    }
+
+    final var year = parseDigits(s, 0, 4);
+    final var month = parseDigits(s, 5, 7);
+    final var day = parseDigits(s, 8, 10);
+
+    return ((year < 0 || month < 0 || day < 0) ? null : LocalDate.of(year, month, day));
+  }
+
+  /**
+   * @return {@code -1} if there is a non-digit character.
+   */
+  private static int parseDigits(
+    String s,
+    int start,
+    int end
+  )
+  {
+    var value = 0;
+    for(var i = start; i < end; ++i)
+    {
+      final var c = s.charAt(i);
+      if(c < '0' || c > '9')
+      {
+        return -1;
+      }
+
+      value = value * 10 + (c - '0');
+    }
+
+    return value;
+  }
+
+  private Function<Object, Object> createEnumConverter(
+    Class<?> javaType,
+    Function<Object, Object> fallback
+  )
+  {
+    // Keyed by the serialized forms so that Jackson annotations on the constants are honored.
+    final var constantsByName = new HashMap<String, Object>();
+    for(final var constant : javaType.getEnumConstants())
+    {
+      final var name = objectMapper.convertValue(constant, String.class);
+      if(null != name)
+      {
+        constantsByName.putIfAbsent(name, constant);
+      }
+    }
+
+    return (v) ->
+    {
+      if(javaType.isInstance(v))
+      {
+        return v;
+      }
+
+      final var constant = (v instanceof String ? constantsByName.get(v) : null);
+
+      return (null == constant ? fallback.apply(v) : constant);
+    };
+  }
+
+  static final Map<Class<?>, Class<?>> BOXED_TYPES = Map.of(
+    boolean.class,
+    Boolean.class,
+    byte.class,
+    Byte.class,
+    short.class,
+    Short.class,
+    int.class,
+    Integer.class,
+    long.class,
+    Long.class,
+    float.class,
+    Float.class,
+    double.class,
+    Double.class);
+
+  private static final PrecompiledMqlTypeConverter DEFAULT = new PrecompiledMqlTypeConverter(Jackson2ObjectMapperUtils
+    .getDefaultObjectMapper());
+
+  private final ObjectMapper objectMapper;
+
+  private final ConcurrentHashMap<Type, Function<Object, Object>> converters;
+}